@@ -0,0 +1,109 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk.benchmarks;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Creates the ontologies used by the benchmarks.
+ * <p>
+ * The ontologies are generated by {@link SyntheticOntologyGenerator} from a
+ * fixed seed, so that a given size and shape always yield exactly the same
+ * ontology.
+ */
+public class BenchmarkOntologies {
+
+    public static final String PREFIX = SyntheticOntologyGenerator.CLASS_PREFIX;
+    public static final String SUBSET_PREFIX = SyntheticOntologyGenerator.SUBSET_PREFIX;
+    public static final IRI SUBSET_IRI = SyntheticOntologyGenerator.getSubsetIRI(0);
+    public static final String SUBSET_NAME = "slim0";
+
+    private static final long SEED = 42;
+    private static final int N_PROPERTIES = 10;
+
+    /**
+     * The overall shape of the class hierarchy.
+     */
+    public enum Shape {
+        /** A binary tree, with one existential restriction per class. */
+        DEEP(2, 0, 1),
+        /** A shallow tree with a high branching factor. */
+        WIDE(50, 0, 1),
+        /** A polyhierarchy with many existential restrictions per class. */
+        DENSE(5, 1, 3);
+
+        private int branching;
+        private int extraParents;
+        private int restrictions;
+
+        Shape(int branching, int extraParents, int restrictions) {
+            this.branching = branching;
+            this.extraParents = extraParents;
+            this.restrictions = restrictions;
+        }
+    }
+
+    /**
+     * Creates an ontology.
+     * <p>
+     * Every class has a label, an exact synonym (annotated with a synonym type),
+     * and one or more parents and existential restrictions. One class out of ten
+     * is tagged as belonging to the {@link #SUBSET_IRI} subset, and there is one
+     * GCI per hundred classes. Subclass axioms are asserted twice, with
+     * different annotations, so that they can be merged.
+     * 
+     * @param nClasses The number of classes.
+     * @param shape    The shape of the class hierarchy.
+     * @return The new ontology, in its own manager.
+     * @throws OWLOntologyCreationException If the ontology cannot be created.
+     */
+    public static OWLOntology create(int nClasses, Shape shape) throws OWLOntologyCreationException {
+        SyntheticOntologyGenerator generator = new SyntheticOntologyGenerator();
+        generator.setSeed(SEED);
+        generator.setClasses(nClasses);
+        generator.setBranching(shape.branching);
+        generator.setExtraParents(shape.extraParents);
+        generator.setRestrictions(shape.restrictions);
+        generator.setObjectProperties(N_PROPERTIES);
+        generator.setGCIs(nClasses / 100);
+        generator.setSubsets(1);
+        generator.setSubsetRatio(0.1);
+        generator.setDuplicateRatio(1);
+        return generator.generate();
+    }
+
+    /**
+     * Creates a copy of an ontology, in its own manager. This is intended for
+     * benchmarks of operations that modify the ontology they work on.
+     * 
+     * @param ontology The ontology to copy.
+     * @return The copy.
+     * @throws OWLOntologyCreationException If the copy cannot be created.
+     */
+    public static OWLOntology copy(OWLOntology ontology) throws OWLOntologyCreationException {
+        OWLOntologyManager mgr = OWLManager.createConcurrentOWLOntologyManager();
+        OWLOntology copy = mgr.createOntology();
+        mgr.addAxioms(copy, ontology.getAxioms());
+        return copy;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.incenp.obofoundry.odk.NormalizeCommand;
+import org.incenp.obofoundry.odk.benchmarks.BenchmarkOntologies.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * Benchmarks for {@link NormalizeCommand#mergeAxioms(OWLOntology)} and
+ * {@link NormalizeCommand#injectDeclarations(OWLOntology, java.util.Set, boolean, boolean)}.
+ * <p>
+ * Both operations modify the ontology they work on, so each invocation works
+ * on a fresh copy of the ontology (the copy is not included in the measured
+ * time).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NormalizeBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    private int classes;
+
+    @Param({ "DEEP", "WIDE", "DENSE" })
+    private Shape shape;
+
+    private OWLOntology template;
+    private OWLOntology ontology;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OWLOntologyCreationException {
+        template = BenchmarkOntologies.create(classes, shape);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyOntology() throws OWLOntologyCreationException {
+        ontology = BenchmarkOntologies.copy(template);
+    }
+
+    @Benchmark
+    public OWLOntology mergeAxioms() {
+        NormalizeCommand.mergeAxioms(ontology);
+        return ontology;
+    }
+
+    @Benchmark
+    public OWLOntology injectDeclarations() {
+        NormalizeCommand.injectDeclarations(ontology, Collections.singleton(BenchmarkOntologies.SUBSET_PREFIX), true,
+                true);
+        return ontology;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.incenp.obofoundry.odk.SubsetExtractor;
+import org.incenp.obofoundry.odk.benchmarks.BenchmarkOntologies.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+/**
+ * Benchmarks for {@link SubsetExtractor#getSubset(org.semanticweb.owlapi.model.IRI)}
+ * and {@link SubsetExtractor#getSubset(String)}.
+ * <p>
+ * Each invocation uses a new extractor, so the cost of building the subset
+ * index is always included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SubsetLookupBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    private int classes;
+
+    @Param({ "DEEP", "WIDE", "DENSE" })
+    private Shape shape;
+
+    private OWLOntology ontology;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OWLOntologyCreationException {
+        ontology = BenchmarkOntologies.create(classes, shape);
+    }
+
+    @Benchmark
+    public Set<OWLClass> getSubsetByIRI() {
+        // The reasoner is never needed to look up a subset
+        return new SubsetExtractor(ontology, (OWLReasoner) null)
+                .getSubset(BenchmarkOntologies.SUBSET_IRI);
+    }
+
+    @Benchmark
+    public Set<OWLClass> getSubsetByName() {
+        return new SubsetExtractor(ontology, (OWLReasoner) null)
+                .getSubset(BenchmarkOntologies.SUBSET_NAME);
+    }
+}
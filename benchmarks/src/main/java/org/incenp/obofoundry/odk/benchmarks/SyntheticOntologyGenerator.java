@@ -0,0 +1,510 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.incenp.obofoundry.odk.Constants;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * A generator of synthetic ontologies of controlled size and shape.
+ * <p>
+ * The generated ontologies exercise all the features the commands of the
+ * plugin care about: a class hierarchy of tunable depth and branching factor
+ * (optionally a polyhierarchy), existential restrictions over a hierarchy of
+ * object properties, property chains, GCIs, classes tagged with
+ * {@code oboInOwl:inSubset}, synonyms annotated with a synonym type, subclass
+ * axioms asserted twice with different annotations, dangling classes, obsolete
+ * classes, and a chain of imported ontologies.
+ * <p>
+ * Generation is entirely determined by the parameters and the seed: the same
+ * parameters always yield exactly the same ontologies.
+ * <p>
+ * The classes are numbered in breadth-first order, so that the classes at the
+ * top of the hierarchy always have the lowest numbers. When imports are
+ * requested, the classes are split into contiguous blocks: the first blocks
+ * (the upper part of the hierarchy) go into the imported ontologies, together
+ * with the object properties, and the last block goes into the main ontology.
+ * The main ontology imports the last imported ontology, which imports the
+ * previous one, and so on.
+ */
+public class SyntheticOntologyGenerator {
+
+    public static final String CLASS_PREFIX = "http://purl.obolibrary.org/obo/BENCH_";
+    public static final String SUBSET_PREFIX = "http://purl.obolibrary.org/obo/bench#";
+    public static final String DEFAULT_BASE_IRI = "http://purl.obolibrary.org/obo/bench";
+
+    private static final int BATCH_SIZE = 100000;
+
+    private long seed = 0;
+    private int nClasses = 1000;
+    private int branching = 3;
+    private int maxDepth = 0;
+    private int extraParents = 0;
+    private int nProperties = 10;
+    private int restrictions = 1;
+    private int nChains = 0;
+    private int nGCIs = 0;
+    private int nSubsets = 1;
+    private double subsetRatio = 0.1;
+    private double duplicateRatio = 0;
+    private int nDangling = 0;
+    private int nObsolete = 0;
+    private int nImports = 0;
+    private String baseIRI = DEFAULT_BASE_IRI;
+    private String extension = "owl";
+
+    private OWLDataFactory factory;
+    private Random random;
+
+    /**
+     * Sets the seed of the random number generator.
+     * 
+     * @param seed The seed. Default is 0.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of classes in the hierarchy (excluding dangling and
+     * obsolete classes).
+     * 
+     * @param n The number of classes. Default is 1000.
+     */
+    public void setClasses(int n) {
+        nClasses = n;
+    }
+
+    /**
+     * Sets the number of children of each class in the hierarchy.
+     * 
+     * @param n The branching factor. Default is 3.
+     */
+    public void setBranching(int n) {
+        branching = Math.max(1, n);
+    }
+
+    /**
+     * Sets the maximal depth of the hierarchy. When the tree defined by the
+     * branching factor is full at that depth, the remaining classes are attached
+     * to random classes above that depth.
+     * 
+     * @param n The maximal depth, or 0 for no limit. Default is 0.
+     */
+    public void setMaxDepth(int n) {
+        maxDepth = n;
+    }
+
+    /**
+     * Sets the number of additional, randomly chosen, parents of each class.
+     * 
+     * @param n The number of additional parents. Default is 0 (the hierarchy is a
+     *          tree).
+     */
+    public void setExtraParents(int n) {
+        extraParents = n;
+    }
+
+    /**
+     * Sets the number of object properties.
+     * 
+     * @param n The number of object properties. Default is 10.
+     */
+    public void setObjectProperties(int n) {
+        nProperties = Math.max(1, n);
+    }
+
+    /**
+     * Sets the number of existential restrictions on each class.
+     * 
+     * @param n The number of restrictions per class. Default is 1.
+     */
+    public void setRestrictions(int n) {
+        restrictions = n;
+    }
+
+    /**
+     * Sets the number of property chain axioms.
+     * 
+     * @param n The number of property chains. Default is 0.
+     */
+    public void setPropertyChains(int n) {
+        nChains = n;
+    }
+
+    /**
+     * Sets the number of GCI axioms.
+     * 
+     * @param n The number of GCIs. Default is 0.
+     */
+    public void setGCIs(int n) {
+        nGCIs = n;
+    }
+
+    /**
+     * Sets the number of distinct subsets classes may be tagged with.
+     * 
+     * @param n The number of subsets. Default is 1.
+     */
+    public void setSubsets(int n) {
+        nSubsets = n;
+    }
+
+    /**
+     * Sets the proportion of classes tagged with a subset.
+     * 
+     * @param ratio The proportion, between 0 and 1. Default is 0.1.
+     */
+    public void setSubsetRatio(double ratio) {
+        subsetRatio = ratio;
+    }
+
+    /**
+     * Sets the proportion of subclass axioms that are asserted a second time,
+     * with an annotation.
+     * 
+     * @param ratio The proportion, between 0 and 1. Default is 0.
+     */
+    public void setDuplicateRatio(double ratio) {
+        duplicateRatio = ratio;
+    }
+
+    /**
+     * Sets the number of dangling classes. Dangling classes have no axioms of
+     * their own; they are only referenced as the filler of an existential
+     * restriction on another class.
+     * 
+     * @param n The number of dangling classes. Default is 0.
+     */
+    public void setDanglingClasses(int n) {
+        nDangling = n;
+    }
+
+    /**
+     * Sets the number of obsolete classes.
+     * 
+     * @param n The number of obsolete classes. Default is 0.
+     */
+    public void setObsoleteClasses(int n) {
+        nObsolete = n;
+    }
+
+    /**
+     * Sets the number of imported ontologies.
+     * 
+     * @param n The number of imported ontologies. Default is 0.
+     */
+    public void setImports(int n) {
+        nImports = n;
+    }
+
+    /**
+     * Sets the base IRI of the generated ontologies. The main ontology has that
+     * IRI, followed by the extension (e.g. {@code .owl}); the imported ontologies
+     * have that IRI, followed by {@code -importN} and the extension.
+     * 
+     * @param iri The base IRI. Default is {@link #DEFAULT_BASE_IRI}.
+     */
+    public void setBaseIRI(String iri) {
+        baseIRI = iri;
+    }
+
+    /**
+     * Sets the extension used in the IRIs of the generated ontologies.
+     * 
+     * @param extension The extension, without the leading dot. Default is
+     *                  {@code owl}.
+     */
+    public void setExtension(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the IRI of a class of the hierarchy.
+     * 
+     * @param n The number of the class (starting from 0, for the root class).
+     * @return The IRI of the class.
+     */
+    public static IRI getClassIRI(int n) {
+        return IRI.create(String.format("%s%07d", CLASS_PREFIX, n));
+    }
+
+    /**
+     * Gets the IRI of a subset.
+     * 
+     * @param n The number of the subset (starting from 0).
+     * @return The IRI of the subset.
+     */
+    public static IRI getSubsetIRI(int n) {
+        return IRI.create(SUBSET_PREFIX + "slim" + n);
+    }
+
+    /**
+     * Generates the ontologies.
+     * 
+     * @return The main ontology, in its own manager. If imports were requested,
+     *         the imported ontologies are in the same manager.
+     * @throws OWLOntologyCreationException If the ontologies cannot be created.
+     */
+    public OWLOntology generate() throws OWLOntologyCreationException {
+        OWLOntologyManager mgr = OWLManager.createConcurrentOWLOntologyManager();
+        factory = mgr.getOWLDataFactory();
+        random = new Random(seed);
+
+        // Create the ontologies, from the most upstream to the main one
+        List<OWLOntology> ontologies = new ArrayList<>();
+        for ( int i = 0; i <= nImports; i++ ) {
+            String suffix = i < nImports ? String.format("-import%d.%s", i + 1, extension) : "." + extension;
+            OWLOntology ontology = mgr.createOntology(IRI.create(baseIRI + suffix));
+            if ( i > 0 ) {
+                IRI imported = ontologies.get(i - 1).getOntologyID().getOntologyIRI().get();
+                mgr.applyChange(new AddImport(ontology, factory.getOWLImportsDeclaration(imported)));
+            }
+            ontologies.add(ontology);
+        }
+        OWLOntology main = ontologies.get(nImports);
+        List<List<OWLAxiom>> pending = new ArrayList<>();
+        for ( int i = 0; i <= nImports; i++ ) {
+            pending.add(new ArrayList<>());
+        }
+
+        List<OWLObjectProperty> properties = generateProperties(pending.get(0));
+        List<OWLClass> classes = new ArrayList<>();
+        int[] depths = new int[nClasses];
+        List<Integer> attachable = new ArrayList<>();
+
+        OWLAnnotationProperty inSubset = factory.getOWLAnnotationProperty(Constants.IN_SUBSET);
+        OWLAnnotationProperty exactSynonym = factory
+                .getOWLAnnotationProperty(IRI.create(Constants.OIO_PREFIX + "hasExactSynonym"));
+        OWLAnnotationProperty xref = factory.getOWLAnnotationProperty(IRI.create(Constants.OIO_PREFIX + "hasDbXref"));
+        OWLAnnotation synonymType = factory.getOWLAnnotation(
+                factory.getOWLAnnotationProperty(Constants.HAS_SYNONYM_TYPE),
+                IRI.create(SUBSET_PREFIX + "abbreviation"));
+
+        for ( int i = 0; i < nClasses; i++ ) {
+            int block = (int) ((long) i * (nImports + 1) / nClasses);
+            List<OWLAxiom> axioms = pending.get(block);
+            OWLClass klass = factory.getOWLClass(getClassIRI(i));
+            classes.add(klass);
+
+            axioms.add(factory.getOWLDeclarationAxiom(klass));
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(klass.getIRI(),
+                    factory.getOWLAnnotation(factory.getRDFSLabel(), factory.getOWLLiteral("class " + i))));
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(exactSynonym, klass.getIRI(),
+                    factory.getOWLLiteral("C" + i), Collections.singleton(synonymType)));
+            if ( nSubsets > 0 && random.nextDouble() < subsetRatio ) {
+                axioms.add(factory.getOWLAnnotationAssertionAxiom(inSubset, klass.getIRI(),
+                        getSubsetIRI(random.nextInt(nSubsets))));
+            }
+
+            if ( i > 0 ) {
+                // Breadth-first filling of the tree, unless that would exceed the maximal depth
+                int parent = (i - 1) / branching;
+                if ( maxDepth > 0 && depths[parent] >= maxDepth ) {
+                    parent = attachable.get(random.nextInt(attachable.size()));
+                }
+                depths[i] = depths[parent] + 1;
+                addSubClassOf(axioms, klass, classes.get(parent), xref);
+                for ( int j = 0; j < extraParents; j++ ) {
+                    addSubClassOf(axioms, klass, classes.get(random.nextInt(i)), xref);
+                }
+                for ( int j = 0; j < restrictions; j++ ) {
+                    axioms.add(factory.getOWLSubClassOfAxiom(klass, factory.getOWLObjectSomeValuesFrom(
+                            properties.get(random.nextInt(nProperties)), classes.get(random.nextInt(i)))));
+                }
+            }
+            if ( maxDepth == 0 || depths[i] < maxDepth ) {
+                attachable.add(i);
+            }
+
+            if ( axioms.size() >= BATCH_SIZE ) {
+                flush(ontologies.get(block), axioms);
+            }
+        }
+
+        List<OWLAxiom> axioms = pending.get(nImports);
+        for ( int i = 0; i < nGCIs && nClasses > 0; i++ ) {
+            axioms.add(factory.getOWLSubClassOfAxiom(
+                    factory.getOWLObjectIntersectionOf(randomClass(classes), factory.getOWLObjectSomeValuesFrom(
+                            properties.get(random.nextInt(nProperties)), randomClass(classes))),
+                    randomClass(classes)));
+        }
+        for ( int i = 0; i < nDangling && nClasses > 0; i++ ) {
+            OWLClass dangling = factory.getOWLClass(IRI.create(String.format("%sD%07d", CLASS_PREFIX, i)));
+            axioms.add(factory.getOWLSubClassOfAxiom(randomClass(classes),
+                    factory.getOWLObjectSomeValuesFrom(properties.get(random.nextInt(nProperties)), dangling)));
+        }
+        for ( int i = 0; i < nObsolete; i++ ) {
+            OWLClass obsolete = factory.getOWLClass(IRI.create(String.format("%sO%07d", CLASS_PREFIX, i)));
+            axioms.add(factory.getOWLDeclarationAxiom(obsolete));
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(obsolete.getIRI(),
+                    factory.getOWLAnnotation(factory.getRDFSLabel(), factory.getOWLLiteral("obsolete class " + i))));
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(obsolete.getIRI(),
+                    factory.getOWLAnnotation(factory.getOWLDeprecated(), factory.getOWLLiteral(true))));
+        }
+
+        for ( int i = 0; i <= nImports; i++ ) {
+            flush(ontologies.get(i), pending.get(i));
+        }
+        return main;
+    }
+
+    /*
+     * Generates the object properties, organised as a binary tree, and the
+     * property chains.
+     */
+    private List<OWLObjectProperty> generateProperties(List<OWLAxiom> axioms) {
+        List<OWLObjectProperty> properties = new ArrayList<>();
+        for ( int i = 0; i < nProperties; i++ ) {
+            OWLObjectProperty property = factory.getOWLObjectProperty(IRI.create(CLASS_PREFIX + "P" + i));
+            properties.add(property);
+            axioms.add(factory.getOWLDeclarationAxiom(property));
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(property.getIRI(),
+                    factory.getOWLAnnotation(factory.getRDFSLabel(), factory.getOWLLiteral("property " + i))));
+            if ( i > 0 ) {
+                axioms.add(factory.getOWLSubObjectPropertyOfAxiom(property, properties.get((i - 1) / 2)));
+            }
+        }
+        for ( int i = 0; i < nChains; i++ ) {
+            List<OWLObjectPropertyExpression> chain = new ArrayList<>();
+            chain.add(properties.get(random.nextInt(nProperties)));
+            chain.add(properties.get(random.nextInt(nProperties)));
+            axioms.add(factory.getOWLSubPropertyChainOfAxiom(chain, properties.get(random.nextInt(nProperties))));
+        }
+        return properties;
+    }
+
+    private void addSubClassOf(List<OWLAxiom> axioms, OWLClass klass, OWLClass parent, OWLAnnotationProperty xref) {
+        OWLAxiom ax = factory.getOWLSubClassOfAxiom(klass, parent);
+        axioms.add(ax);
+        if ( duplicateRatio > 0 && random.nextDouble() < duplicateRatio ) {
+            axioms.add(ax.getAnnotatedAxiom(Collections.singleton(
+                    factory.getOWLAnnotation(xref, factory.getOWLLiteral("BENCH:" + random.nextInt(1000))))));
+        }
+    }
+
+    private OWLClass randomClass(List<OWLClass> classes) {
+        return classes.get(random.nextInt(classes.size()));
+    }
+
+    private void flush(OWLOntology ontology, List<OWLAxiom> axioms) {
+        ontology.getOWLOntologyManager().addAxioms(ontology, new HashSet<>(axioms));
+        axioms.clear();
+    }
+
+    /**
+     * Generates ontologies and writes them to files in OWL Functional Syntax.
+     * <p>
+     * The main ontology is written to the file given as the only non-option
+     * argument; the imported ontologies, if any, are written next to it, with a
+     * {@code -importN.ofn} suffix. The IRIs of the ontologies are the
+     * {@code file:} IRIs of the files, so that the imports can be resolved
+     * without a catalog.
+     * 
+     * @param args The command line arguments.
+     * @throws Exception If any error occurs.
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(null, "seed", true, "seed of the random number generator");
+        options.addOption(null, "classes", true, "number of classes");
+        options.addOption(null, "branching", true, "number of children per class");
+        options.addOption(null, "max-depth", true, "maximal depth of the hierarchy");
+        options.addOption(null, "extra-parents", true, "number of additional parents per class");
+        options.addOption(null, "object-properties", true, "number of object properties");
+        options.addOption(null, "restrictions", true, "number of existential restrictions per class");
+        options.addOption(null, "property-chains", true, "number of property chains");
+        options.addOption(null, "gcis", true, "number of GCI axioms");
+        options.addOption(null, "subsets", true, "number of subsets");
+        options.addOption(null, "subset-ratio", true, "proportion of classes tagged with a subset");
+        options.addOption(null, "duplicate-ratio", true, "proportion of subclass axioms asserted twice");
+        options.addOption(null, "dangling", true, "number of dangling classes");
+        options.addOption(null, "obsolete", true, "number of obsolete classes");
+        options.addOption(null, "imports", true, "number of imported ontologies");
+
+        CommandLine line;
+        try {
+            line = new DefaultParser().parse(options, args);
+            if ( line.getArgs().length != 1 ) {
+                throw new ParseException("Missing output file");
+            }
+        } catch ( ParseException e ) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("SyntheticOntologyGenerator [OPTIONS] OUTPUT.ofn", options);
+            System.exit(1);
+            return;
+        }
+
+        SyntheticOntologyGenerator generator = new SyntheticOntologyGenerator();
+        generator.setSeed(Long.parseLong(line.getOptionValue("seed", "0")));
+        generator.setClasses(Integer.parseInt(line.getOptionValue("classes", "1000")));
+        generator.setBranching(Integer.parseInt(line.getOptionValue("branching", "3")));
+        generator.setMaxDepth(Integer.parseInt(line.getOptionValue("max-depth", "0")));
+        generator.setExtraParents(Integer.parseInt(line.getOptionValue("extra-parents", "0")));
+        generator.setObjectProperties(Integer.parseInt(line.getOptionValue("object-properties", "10")));
+        generator.setRestrictions(Integer.parseInt(line.getOptionValue("restrictions", "1")));
+        generator.setPropertyChains(Integer.parseInt(line.getOptionValue("property-chains", "0")));
+        generator.setGCIs(Integer.parseInt(line.getOptionValue("gcis", "0")));
+        generator.setSubsets(Integer.parseInt(line.getOptionValue("subsets", "1")));
+        generator.setSubsetRatio(Double.parseDouble(line.getOptionValue("subset-ratio", "0.1")));
+        generator.setDuplicateRatio(Double.parseDouble(line.getOptionValue("duplicate-ratio", "0")));
+        generator.setDanglingClasses(Integer.parseInt(line.getOptionValue("dangling", "0")));
+        generator.setObsoleteClasses(Integer.parseInt(line.getOptionValue("obsolete", "0")));
+        int nImports = Integer.parseInt(line.getOptionValue("imports", "0"));
+        generator.setImports(nImports);
+
+        String output = new File(line.getArgs()[0]).getAbsolutePath();
+        String base = output.endsWith(".ofn") ? output.substring(0, output.length() - 4) : output;
+        generator.setBaseIRI(new File(base).toURI().toString());
+        generator.setExtension("ofn");
+
+        OWLOntology main = generator.generate();
+        OWLOntologyManager mgr = main.getOWLOntologyManager();
+        for ( OWLOntology ontology : mgr.getOntologies() ) {
+            // The IRI of each ontology is the IRI of the file it is written to
+            mgr.saveOntology(ontology, new FunctionalSyntaxDocumentFormat(),
+                    ontology.getOntologyID().getOntologyIRI().get());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk.benchmarks;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.incenp.obofoundry.odk.EntityHierarchy;
+import org.incenp.obofoundry.odk.InferredHierarchies;
+import org.incenp.obofoundry.odk.PrefixMatcher;
+import org.incenp.obofoundry.odk.ValidateCommand;
+import org.incenp.obofoundry.odk.benchmarks.BenchmarkOntologies.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+/**
+ * Benchmarks for the alignment check of the validate command
+ * ({@link ValidateCommand#findUnalignedClasses(OWLOntology, Set, EntityHierarchy, PrefixMatcher, boolean)}).
+ * <p>
+ * The first few classes of the generated ontology play the role of the upper
+ * ontology. The ontology is classified once for all, but each invocation uses
+ * a new class hierarchy, preloaded with the parents of all classes, so that the
+ * measured time includes the computation of the ancestors but not the calls to
+ * the reasoner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ValidateBenchmark {
+
+    private static final int N_UPPER_CLASSES = 10;
+
+    @Param({ "1000", "10000", "100000" })
+    private int classes;
+
+    @Param({ "DEEP", "WIDE", "DENSE" })
+    private Shape shape;
+
+    private OWLOntology ontology;
+    private OWLReasoner reasoner;
+    private Set<OWLClass> upperClasses;
+    private PrefixMatcher basePrefixes;
+    private EntityHierarchy<OWLClass> hierarchy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OWLOntologyCreationException {
+        ontology = BenchmarkOntologies.create(classes, shape);
+        reasoner = new ElkReasonerFactory().createReasoner(ontology);
+        reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
+
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        upperClasses = new HashSet<>();
+        for ( int i = 1; i <= N_UPPER_CLASSES; i++ ) {
+            upperClasses.add(factory.getOWLClass(IRI.create(String.format("%s%07d", BenchmarkOntologies.PREFIX, i))));
+        }
+        basePrefixes = new PrefixMatcher();
+        basePrefixes.add(BenchmarkOntologies.PREFIX);
+    }
+
+    @Setup(Level.Invocation)
+    public void createHierarchy() {
+        hierarchy = InferredHierarchies.fromReasoner(() -> reasoner).getClassHierarchy();
+        hierarchy.preload(ontology.getClassesInSignature(Imports.INCLUDED));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        reasoner.dispose();
+    }
+
+    @Benchmark
+    public Set<OWLClass> findUnalignedClasses() {
+        return ValidateCommand.findUnalignedClasses(ontology, upperClasses, hierarchy, basePrefixes, false);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.incenp.obofoundry.odk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A normalization step that merges logically equivalent axioms, that is axioms
+ * that differ only by their annotations.
+ * <p>
+ * Only the axioms that actually need to be merged are removed from the
+ * ontology (and replaced by their merged version); all the other axioms are
+ * left untouched. Axioms of different types can never be equivalent, so the
+ * axioms of each type are grouped independently of the others.
+ */
+public class AxiomMerger implements NormalizationPass.Step {
+
+    private static final Logger logger = LoggerFactory.getLogger(AxiomMerger.class);
+
+    private List<TypeMerger> mergers = new ArrayList<>();
+    private int groups;
+
+    @Override
+    public NormalizationPass.Visitor getVisitor(AxiomType<?> type) {
+        TypeMerger merger = new TypeMerger();
+        mergers.add(merger);
+        return merger;
+    }
+
+    @Override
+    public void finish(OWLOntology ontology, Set<OWLAxiom> removed, Set<OWLAxiom> added) {
+        int nRemoved = 0;
+        groups = 0;
+        for ( TypeMerger merger : mergers ) {
+            removed.addAll(merger.removed);
+            added.addAll(merger.added);
+            nRemoved += merger.removed.size();
+            groups += merger.groups;
+        }
+        mergers.clear();
+
+        logger.info("Merged {} groups of equivalent axioms ({} axioms removed)", groups, nRemoved);
+    }
+
+    /**
+     * Gets the number of groups of equivalent axioms that have been merged.
+     * 
+     * @return The number of merged groups, once the pass has been run.
+     */
+    public int getMergedGroups() {
+        return groups;
+    }
+
+    /*
+     * Finds the groups of equivalent axioms among the axioms of a single type, and
+     * computes the changes needed to merge them.
+     */
+    private static class TypeMerger implements NormalizationPass.Visitor {
+        // Most axioms have no equivalent, so we only remember the first axiom seen
+        // for any given unannotated form, and only create a group when a second
+        // one shows up
+        Map<OWLAxiom, OWLAxiom> firstSeen = new HashMap<>();
+        Map<OWLAxiom, List<OWLAxiom>> groupsMap = new HashMap<>();
+        Set<OWLAxiom> removed = new HashSet<>();
+        Set<OWLAxiom> added = new HashSet<>();
+        int groups = 0;
+
+        @Override
+        public void visit(OWLAxiom axiom) {
+            OWLAxiom key = axiom.getAxiomWithoutAnnotations();
+            OWLAxiom first = firstSeen.putIfAbsent(key, axiom);
+            if ( first != null ) {
+                groupsMap.computeIfAbsent(key, k -> {
+                    List<OWLAxiom> group = new ArrayList<>();
+                    group.add(first);
+                    return group;
+                }).add(axiom);
+            }
+        }
+
+        @Override
+        public void end() {
+            firstSeen = null;
+            for ( Map.Entry<OWLAxiom, List<OWLAxiom>> entry : groupsMap.entrySet() ) {
+                Set<OWLAnnotation> annotations = new HashSet<>();
+                for ( OWLAxiom ax : entry.getValue() ) {
+                    annotations.addAll(ax.getAnnotations());
+                }
+                OWLAxiom merged = entry.getKey().getAnnotatedAxiom(annotations);
+                for ( OWLAxiom ax : entry.getValue() ) {
+                    if ( !ax.equals(merged) ) {
+                        removed.add(ax);
+                    }
+                }
+                if ( !entry.getValue().contains(merged) ) {
+                    added.add(merged);
+                }
+            }
+            groups = groupsMap.size();
+            groupsMap = null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.util.List;
+
+/**
+ * Thrown when the extraction of a subset exceeds one of the limits set on the
+ * {@link SubsetExtractor}.
+ * <p>
+ * The exception message describes the limit that has been reached and lists the
+ * entities that contributed the most to the growth of the subset, which are
+ * usually the ones to look at to fix a misconfigured extraction (e.g. with a
+ * <code>--follow-property</code> or <code>--not-follow-in</code> option).
+ */
+public class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private SubsetClosure partialClosure;
+    private List<String> topContributors;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param reason          A description of the limit that has been reached.
+     * @param partialClosure  The closure of the subset, as far as it had been
+     *                        computed when the limit was reached.
+     * @param topContributors The entities that contributed the most to the growth
+     *                        of the subset, with the number of classes they
+     *                        brought in, by decreasing order of contribution.
+     */
+    public BudgetExceededException(String reason, SubsetClosure partialClosure, List<String> topContributors) {
+        super(formatMessage(reason, topContributors));
+        this.partialClosure = partialClosure;
+        this.topContributors = topContributors;
+    }
+
+    /**
+     * Gets the closure of the subset as far as it had been computed.
+     * <p>
+     * The closure only contains the rounds that were complete when the limit was
+     * reached. It is not the closure of the subset, and must not be used to
+     * produce a subset or as the basis for an incremental extraction.
+     *
+     * @return The partial closure.
+     */
+    public SubsetClosure getPartialClosure() {
+        return partialClosure;
+    }
+
+    /**
+     * Gets the entities that contributed the most to the growth of the subset.
+     *
+     * @return A list of descriptions of the form “IRI (type): N classes”, by
+     *         decreasing order of contribution.
+     */
+    public List<String> getTopContributors() {
+        return topContributors;
+    }
+
+    private static String formatMessage(String reason, List<String> topContributors) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Subset extraction aborted: ").append(reason);
+        if ( !topContributors.isEmpty() ) {
+            sb.append("\nBiggest contributors to the growth of the subset:");
+            for ( String contributor : topContributors ) {
+                sb.append("\n  ").append(contributor);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+/**
+ * A cache of the “status” (dangling or obsolete) of classes in an ontology.
+ * <p>
+ * This class provides the same checks as
+ * {@link Util#isDangling(OWLOntology, OWLClass)} and
+ * {@link Util#isObsolete(OWLOntology, OWLClass)}, but remembers the result so
+ * that a given class is only ever looked up once. Both statuses are determined
+ * at the same time, the first time any of them is requested for a class.
+ * <p>
+ * The cache assumes the ontology is not modified during its lifetime. It may be
+ * shared between several threads; lookups are done without holding any lock, so
+ * two threads may occasionally both look up the same class, in which case the
+ * first result to be published is kept.
+ */
+public class ClassStatusCache {
+
+    private static final byte DANGLING = 0x01;
+    private static final byte OBSOLETE = 0x02;
+
+    private OWLOntology ontology;
+    private Map<OWLClass, Byte> cache = new ConcurrentHashMap<>();
+    private AtomicInteger hits = new AtomicInteger();
+    private AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param ontology The ontology the classes to check belong to.
+     */
+    public ClassStatusCache(OWLOntology ontology) {
+        this.ontology = ontology;
+    }
+
+    /**
+     * Checks whether a class is dangling.
+     * 
+     * @param klass The class to check.
+     * @return {@code true} if the class is dangling, {@code false} otherwise.
+     * @see Util#isDangling(OWLOntology, OWLClass)
+     */
+    public boolean isDangling(OWLClass klass) {
+        return (getStatus(klass) & DANGLING) != 0;
+    }
+
+    /**
+     * Checks whether a class is marked as obsolete.
+     * 
+     * @param klass The class to check.
+     * @return {@code true} if the class is obsolete, {@code false} otherwise.
+     * @see Util#isObsolete(OWLOntology, OWLClass)
+     */
+    public boolean isObsolete(OWLClass klass) {
+        return (getStatus(klass) & OBSOLETE) != 0;
+    }
+
+    /**
+     * Gets the number of checks that could be answered from the cache.
+     * 
+     * @return The number of cache hits.
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of checks that required looking up the ontology.
+     * 
+     * @return The number of cache misses.
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private byte getStatus(OWLClass klass) {
+        Byte status = cache.get(klass);
+        if ( status != null ) {
+            hits.incrementAndGet();
+            return status;
+        }
+
+        misses.incrementAndGet();
+        byte newStatus = 0;
+        Set<OWLAnnotationAssertionAxiom> annotations = ontology.getAnnotationAssertionAxioms(klass.getIRI());
+        if ( annotations.isEmpty() && !Util.hasDefiningAxioms(ontology, klass) ) {
+            newStatus |= DANGLING;
+        }
+        if ( Util.isObsolete(annotations) ) {
+            newStatus |= OBSOLETE;
+        }
+        status = cache.putIfAbsent(klass, newStatus);
+
+        return status != null ? status : newStatus;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+/**
+ * Evaluates DL queries against a class hierarchy and a reasoner.
+ * <p>
+ * Queries are evaluated in batches on a pool of threads, and the result of each
+ * query is remembered, so that a query that appears several times (for example
+ * in several subset definitions of a batch file) is only ever evaluated once.
+ * <p>
+ * Queries that are simply named classes are answered from a snapshot of the
+ * class hierarchy (see {@link EntityHierarchy}), which can be queried by
+ * several threads at the same time. Reasoners are not required to be
+ * thread-safe, so calls to the reasoner are always made while holding its lock
+ * (one query at a time, with all the calls needed by that query made at once);
+ * this is only needed for anonymous class expressions, and to get the classes
+ * equivalent to a named class. If the hierarchy has been built from asserted
+ * axioms, no reasoner is used at all, and only named classes can be queried.
+ * The evaluator itself may be shared between several threads.
+ */
+public class DLQueryEvaluator {
+
+    private OWLOntology ontology;
+    private Supplier<OWLReasoner> reasoner;
+    private InferredHierarchies hierarchies;
+    private int nThreads;
+    private volatile boolean preloaded;
+    private Map<OWLClassExpression, Result> results = new ConcurrentHashMap<>();
+    private Map<OWLClassExpression, Set<OWLClass>> ancestors = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param ontology    The ontology to query. All its classes are loaded into
+     *                    the class hierarchy the first time a named class is
+     *                    queried.
+     * @param reasoner    The supplier of the reasoner to query. It is only called
+     *                    when a query actually needs the reasoner.
+     * @param hierarchies The hierarchies of the ontology, as obtained from the
+     *                    same reasoner (directly or through a cache).
+     * @param nThreads    The number of threads to use to evaluate a batch of
+     *                    queries.
+     */
+    public DLQueryEvaluator(OWLOntology ontology, Supplier<OWLReasoner> reasoner, InferredHierarchies hierarchies,
+            int nThreads) {
+        this.ontology = ontology;
+        this.reasoner = reasoner;
+        this.hierarchies = hierarchies;
+        this.nThreads = Math.max(1, nThreads);
+    }
+
+    /**
+     * Creates a new instance that evaluates queries without a reasoner.
+     * 
+     * @param hierarchies The hierarchies to query. They must have been built from
+     *                    asserted axioms.
+     * @param nThreads    The number of threads to use to evaluate a batch of
+     *                    queries.
+     */
+    public DLQueryEvaluator(InferredHierarchies hierarchies, int nThreads) {
+        this.hierarchies = hierarchies;
+        this.nThreads = Math.max(1, nThreads);
+        preloaded = true;
+    }
+
+    /**
+     * Evaluates a batch of queries. Queries that have already been evaluated are
+     * skipped.
+     * 
+     * @param queries       The queries to evaluate.
+     * @param withAncestors If {@code true}, also retrieve the superclasses of the
+     *                      queries.
+     * @throws InterruptedException If the thread is interrupted while waiting for
+     *                              the queries to be evaluated.
+     */
+    public void evaluate(Collection<OWLClassExpression> queries, boolean withAncestors)
+            throws InterruptedException {
+        Set<OWLClassExpression> pending = new LinkedHashSet<>();
+        boolean hasNamedQueries = false;
+        for ( OWLClassExpression query : queries ) {
+            if ( !results.containsKey(query) || (withAncestors && !ancestors.containsKey(query)) ) {
+                pending.add(query);
+                hasNamedQueries |= !query.isAnonymous();
+            }
+        }
+        if ( hasNamedQueries && !preloaded ) {
+            // Descendants can only be looked up once all classes are in the hierarchy
+            hierarchies.getClassHierarchy().preload(ontology.getClassesInSignature(Imports.INCLUDED));
+            preloaded = true;
+        }
+
+        if ( pending.size() < 2 || nThreads == 1 ) {
+            for ( OWLClassExpression query : pending ) {
+                evaluate(query, withAncestors);
+            }
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for ( OWLClassExpression query : pending ) {
+            tasks.add(() -> {
+                evaluate(query, withAncestors);
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(nThreads, pending.size()));
+        try {
+            for ( Future<Void> result : executor.invokeAll(tasks) ) {
+                try {
+                    result.get();
+                } catch ( ExecutionException e ) {
+                    if ( e.getCause() instanceof RuntimeException ) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the subclasses of a query.
+     * 
+     * @param query The query whose results are requested.
+     * @return All the named subclasses of the query, excluding
+     *         <code>owl:Nothing</code>.
+     * @throws InterruptedException If the thread is interrupted while waiting for
+     *                              the query to be evaluated.
+     */
+    public Set<OWLClass> getSubClasses(OWLClassExpression query) throws InterruptedException {
+        evaluate(Collections.singleton(query), false);
+        return results.get(query).subClasses;
+    }
+
+    /**
+     * Gets the classes that are equivalent to a query.
+     * 
+     * @param query The query whose results are requested.
+     * @return All the named classes equivalent to the query, excluding
+     *         <code>owl:Thing</code> and <code>owl:Nothing</code>.
+     * @throws InterruptedException If the thread is interrupted while waiting for
+     *                              the query to be evaluated.
+     */
+    public Set<OWLClass> getEquivalentClasses(OWLClassExpression query) throws InterruptedException {
+        evaluate(Collections.singleton(query), false);
+        return results.get(query).equivalentClasses;
+    }
+
+    /**
+     * Gets the superclasses of a query.
+     * 
+     * @param query The query whose results are requested.
+     * @return All the named superclasses of the query, excluding
+     *         <code>owl:Thing</code>.
+     * @throws InterruptedException If the thread is interrupted while waiting for
+     *                              the query to be evaluated.
+     */
+    public Set<OWLClass> getSuperClasses(OWLClassExpression query) throws InterruptedException {
+        evaluate(Collections.singleton(query), true);
+        return ancestors.get(query);
+    }
+
+    private void evaluate(OWLClassExpression query, boolean withAncestors) {
+        boolean needResult = !results.containsKey(query);
+        boolean needAncestors = withAncestors && !ancestors.containsKey(query);
+
+        if ( !query.isAnonymous() ) {
+            evaluateNamed(query.asOWLClass(), needResult, needAncestors);
+            return;
+        } else if ( hierarchies.isAsserted() ) {
+            throw new IllegalArgumentException("Cannot evaluate a class expression without a reasoner: " + query);
+        }
+
+        Set<OWLClass> subClasses = null;
+        Set<OWLClass> equivalentClasses = null;
+        Set<OWLClass> superClasses = null;
+        OWLReasoner r = reasoner.get();
+        synchronized ( r ) {
+            if ( needResult ) {
+                subClasses = r.getSubClasses(query, false).getFlattened();
+                equivalentClasses = r.getEquivalentClasses(query).getEntities();
+            }
+            if ( needAncestors ) {
+                superClasses = r.getSuperClasses(query, false).getFlattened();
+            }
+        }
+
+        if ( needResult ) {
+            results.put(query, new Result(filter(subClasses), filter(equivalentClasses)));
+        }
+        if ( needAncestors ) {
+            ancestors.put(query, filter(superClasses));
+        }
+    }
+
+    /*
+     * Evaluates a query that is a named class, using the class hierarchy. The
+     * reasoner, if any, is only needed to get the equivalent classes.
+     */
+    private void evaluateNamed(OWLClass klass, boolean needResult, boolean needAncestors) {
+        EntityHierarchy<OWLClass> classHierarchy = hierarchies.getClassHierarchy();
+        if ( needResult ) {
+            Set<OWLClass> equivalentClasses;
+            if ( hierarchies.isAsserted() ) {
+                equivalentClasses = hierarchies.getAssertedEquivalentClasses(klass);
+            } else {
+                OWLReasoner r = reasoner.get();
+                synchronized ( r ) {
+                    equivalentClasses = r.getEquivalentClasses(klass).getEntities();
+                }
+            }
+            Set<OWLClass> subClasses = new HashSet<>();
+            for ( OWLClass equivalent : equivalentClasses ) {
+                subClasses.addAll(classHierarchy.getDescendants(equivalent));
+            }
+            results.put(klass, new Result(filter(subClasses), filter(equivalentClasses)));
+        }
+        if ( needAncestors ) {
+            ancestors.put(klass, filter(classHierarchy.getAncestors(klass)));
+        }
+    }
+
+    private Set<OWLClass> filter(Set<OWLClass> classes) {
+        Set<OWLClass> filtered = new LinkedHashSet<>();
+        for ( OWLClass klass : classes ) {
+            if ( !klass.isTopEntity() && !klass.isBottomEntity() ) {
+                filtered.add(klass);
+            }
+        }
+        return Collections.unmodifiableSet(filtered);
+    }
+
+    private static class Result {
+        Set<OWLClass> subClasses;
+        Set<OWLClass> equivalentClasses;
+
+        Result(Set<OWLClass> subClasses, Set<OWLClass> equivalentClasses) {
+            this.subClasses = subClasses;
+            this.equivalentClasses = equivalentClasses;
+        }
+    }
+}
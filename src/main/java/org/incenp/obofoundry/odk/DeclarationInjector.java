@@ -0,0 +1,226 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.incenp.obofoundry.odk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+/**
+ * A normalization step that injects <em>SubAnnotationPropertyOf</em> axioms for
+ * IRIs representing subsets or synonym types.
+ * <p>
+ * The IRIs are collected from the values of {@code oboInOwl:inSubset} and
+ * {@code oboInOwl:hasSynonymType} annotations, whether they are found in
+ * annotation assertion axioms or in the annotations of any axiom.
+ * <p>
+ * By default, the only axioms looked at are those found in the index of the
+ * axioms that reference those two properties, so the step does not need to
+ * visit all the axioms of the ontology. When no such index is available (e.g.
+ * when the axioms are streamed rather than stored in an ontology), the step can
+ * be made to visit all the axioms instead.
+ */
+public class DeclarationInjector implements NormalizationPass.Step {
+
+    private PrefixMatcher matcher;
+    private boolean forSubsets;
+    private boolean forSynonyms;
+    private boolean useIndex = true;
+    private List<Collector> collectors = new ArrayList<>();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param prefixes    A set of IRI prefixes; axioms will only be injected for
+     *                    IRIs that start with one of the given prefixes. May be
+     *                    {@code null} to force injecting axioms for all IRIs
+     *                    regardless of their namespace.
+     * @param forSubsets  If {@code true}, inject axioms to declare subset
+     *                    properties.
+     * @param forSynonyms If {@code true}, inject axioms to declare synonym type
+     *                    properties.
+     */
+    public DeclarationInjector(Set<String> prefixes, boolean forSubsets, boolean forSynonyms) {
+        matcher = prefixes != null ? new PrefixMatcher(prefixes) : null;
+        this.forSubsets = forSubsets;
+        this.forSynonyms = forSynonyms;
+    }
+
+    /**
+     * Sets whether the step should rely on the index of the ontology rather than
+     * visiting all the axioms.
+     * 
+     * @param useIndex If {@code true} (the default), the IRIs are collected from
+     *                 the ontology's index of referencing axioms when the step is
+     *                 finished; otherwise, they are collected by visiting all the
+     *                 axioms.
+     */
+    public void setUseIndex(boolean useIndex) {
+        this.useIndex = useIndex;
+    }
+
+    /**
+     * Injects the declarations into an ontology, without going through a
+     * {@link NormalizationPass}. This only looks at the axioms that reference the
+     * {@code oboInOwl:inSubset} and {@code oboInOwl:hasSynonymType} properties.
+     * 
+     * @param ontology The ontology in which axioms should be injected.
+     */
+    public void inject(OWLOntology ontology) {
+        Collector collector = new Collector();
+        visitReferencingAxioms(ontology, Collections.singletonList(collector));
+        Set<OWLAxiom> added = new HashSet<>();
+        addDeclarations(ontology.getOWLOntologyManager().getOWLDataFactory(), collector.subsets,
+                collector.synonyms, added);
+
+        if ( !added.isEmpty() ) {
+            ontology.getOWLOntologyManager().addAxioms(ontology, added);
+        }
+    }
+
+    @Override
+    public NormalizationPass.Visitor getVisitor(AxiomType<?> type) {
+        if ( useIndex || (!forSubsets && !forSynonyms) ) {
+            return null;
+        }
+        Collector collector = new Collector();
+        collectors.add(collector);
+        return collector;
+    }
+
+    @Override
+    public void finish(OWLOntology ontology, Set<OWLAxiom> removed, Set<OWLAxiom> added) {
+        if ( useIndex ) {
+            collectors.add(new Collector());
+            visitReferencingAxioms(ontology, collectors);
+        }
+
+        Set<IRI> subsets = new HashSet<>();
+        Set<IRI> synonyms = new HashSet<>();
+        for ( Collector collector : collectors ) {
+            subsets.addAll(collector.subsets);
+            synonyms.addAll(collector.synonyms);
+        }
+        collectors.clear();
+
+        addDeclarations(ontology.getOWLOntologyManager().getOWLDataFactory(), subsets, synonyms, added);
+    }
+
+    /*
+     * Visits all the axioms that use the inSubset and/or hasSynonymType
+     * properties, either as the property of an annotation assertion or in an
+     * axiom annotation, as found in the ontology's index of referencing axioms.
+     * Each axiom is handed to all the given collectors.
+     */
+    private void visitReferencingAxioms(OWLOntology ontology, List<Collector> collectors) {
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        List<IRI> properties = new ArrayList<>();
+        if ( forSubsets ) {
+            properties.add(Constants.IN_SUBSET);
+        }
+        if ( forSynonyms ) {
+            properties.add(Constants.HAS_SYNONYM_TYPE);
+        }
+        for ( IRI property : properties ) {
+            for ( OWLAxiom axiom : ontology.getReferencingAxioms(factory.getOWLAnnotationProperty(property),
+                    Imports.EXCLUDED) ) {
+                for ( Collector collector : collectors ) {
+                    collector.visit(axiom);
+                }
+            }
+        }
+    }
+
+    /*
+     * Creates the SubAnnotationPropertyOf axioms for the collected IRIs.
+     */
+    private void addDeclarations(OWLDataFactory factory, Set<IRI> subsets, Set<IRI> synonyms,
+            Set<OWLAxiom> added) {
+        if ( forSubsets ) {
+            OWLAnnotationProperty parent = factory.getOWLAnnotationProperty(Constants.SUBSET_PROPERTY);
+            for ( IRI subset : subsets ) {
+                added.add(factory.getOWLSubAnnotationPropertyOfAxiom(factory.getOWLAnnotationProperty(subset), parent));
+            }
+        }
+        if ( forSynonyms ) {
+            OWLAnnotationProperty parent = factory.getOWLAnnotationProperty(Constants.SYNONYM_TYPE_PROPERTY);
+            for ( IRI synonym : synonyms ) {
+                added.add(
+                        factory.getOWLSubAnnotationPropertyOfAxiom(factory.getOWLAnnotationProperty(synonym), parent));
+            }
+        }
+    }
+
+    /*
+     * Collects the subset and synonym type IRIs found in the axioms of a single
+     * type.
+     */
+    private class Collector implements NormalizationPass.Visitor {
+        Set<IRI> subsets = new HashSet<>();
+        Set<IRI> synonyms = new HashSet<>();
+
+        @Override
+        public void visit(OWLAxiom axiom) {
+            if ( axiom instanceof OWLAnnotationAssertionAxiom ) {
+                collectPropertyIRI(((OWLAnnotationAssertionAxiom) axiom).getAnnotation());
+            }
+            for ( OWLAnnotation annot : axiom.getAnnotations() ) {
+                collectPropertyIRI(annot);
+            }
+        }
+
+        /*
+         * Given an annotation, checks if it declares a subset or a synonym type and
+         * collects its value in the appropriate set.
+         */
+        private void collectPropertyIRI(OWLAnnotation annotation) {
+            if ( annotation.getValue().isIRI() ) {
+                IRI propIRI = annotation.getProperty().getIRI();
+                if ( propIRI.equals(Constants.IN_SUBSET) ) {
+                    collectIRI(subsets, annotation.getValue().asIRI().get());
+                } else if ( propIRI.equals(Constants.HAS_SYNONYM_TYPE) ) {
+                    collectIRI(synonyms, annotation.getValue().asIRI().get());
+                }
+            }
+        }
+
+        /*
+         * Checks if the value starts with one of the prefixes, and if so adds it to
+         * the collection.
+         */
+        private void collectIRI(Set<IRI> collection, IRI value) {
+            if ( matcher == null || matcher.matches(value) ) {
+                collection.add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+/**
+ * A compact snapshot of a hierarchy of entities.
+ * <p>
+ * Entities are interned into integer identifiers (see {@link EntityIndex}).
+ * The hierarchy stores, for each entity, the identifiers of its direct parents
+ * as an array of integers. The set of all ancestors of an entity is computed as
+ * a bitset when it is requested, from the ancestors of its parents; only the
+ * ancestors of entities that are known to have children are remembered, so that
+ * querying the ancestors of every leaf of a large hierarchy does not require to
+ * keep one bitset per leaf.
+ * <p>
+ * The direct parents of an entity are obtained from a {@link ParentProvider}
+ * (typically backed by a reasoner), the first time they are needed. Once
+ * obtained, they are never requested again, so the provider is queried at most
+ * once per entity for the entire lifetime of the hierarchy.
+ * <p>
+ * The hierarchy can be shared between several threads. Calls to the provider
+ * are always made while holding the lock of the hierarchy, so a provider that
+ * is not itself thread-safe is never called concurrently by the hierarchy.
+ * Descendants are looked up without holding the lock, so several threads can
+ * look them up at the same time.
+ *
+ * @param <T> The type of entities in the hierarchy.
+ */
+public class EntityHierarchy<T extends OWLEntity> {
+
+    private static final int[] NO_PARENTS = new int[0];
+
+    private EntityIndex<T> index = new EntityIndex<>();
+    private ParentProvider<T> provider;
+    private int[][] parents = new int[256][];
+    private BitSet[] ancestors = new BitSet[256];
+    private BitSet internal = new BitSet();
+    private int[][] children;
+    private int providerCalls = 0;
+
+    /**
+     * Creates a new hierarchy.
+     * 
+     * @param provider The object to query for the direct parents of an entity.
+     */
+    public EntityHierarchy(ParentProvider<T> provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Creates a new hierarchy using an existing index.
+     * <p>
+     * This allows the hierarchy to use the same identifiers as another hierarchy
+     * (or any other structure) sharing the same index.
+     * 
+     * @param index    The index to use to assign identifiers to entities.
+     * @param provider The object to query for the direct parents of an entity.
+     */
+    public EntityHierarchy(EntityIndex<T> index, ParentProvider<T> provider) {
+        this.index = index;
+        this.provider = provider;
+    }
+
+    /**
+     * Creates a class hierarchy backed by a reasoner.
+     * <p>
+     * The reasoner is only queried while holding its lock, so that it may safely
+     * be used by other threads that synchronize on it as well.
+     * 
+     * @param reasoner The reasoner to query for the direct superclasses of a
+     *                 class.
+     * @return The new hierarchy.
+     */
+    public static EntityHierarchy<OWLClass> fromReasoner(OWLReasoner reasoner) {
+        return new EntityHierarchy<>(klass -> {
+            synchronized ( reasoner ) {
+                return reasoner.getSuperClasses(klass, true).getFlattened();
+            }
+        });
+    }
+
+    /**
+     * Gets the index used to assign identifiers to the entities of this
+     * hierarchy.
+     * 
+     * @return The entity index.
+     */
+    public EntityIndex<T> getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the number of times the parent provider (e.g., the reasoner) has been
+     * queried.
+     * 
+     * @return The number of calls to the parent provider.
+     */
+    public synchronized int getProviderCalls() {
+        return providerCalls;
+    }
+
+    /**
+     * Gets the direct parents of an entity.
+     * 
+     * @param id The identifier of the entity.
+     * @return The identifiers of the direct parents. The returned array must not
+     *         be modified.
+     */
+    public synchronized int[] getParents(int id) {
+        ensureCapacity(id);
+        if ( parents[id] == null ) {
+            Collection<T> entityParents = provider.getParents(index.get(id));
+            providerCalls += 1;
+            if ( entityParents.isEmpty() ) {
+                parents[id] = NO_PARENTS;
+            } else {
+                int[] ids = new int[entityParents.size()];
+                int i = 0;
+                for ( T parent : entityParents ) {
+                    ids[i] = index.getId(parent);
+                    internal.set(ids[i++]);
+                }
+                parents[id] = ids;
+            }
+        }
+        return parents[id];
+    }
+
+    /**
+     * Gets all the ancestors of an entity.
+     * 
+     * @param id The identifier of the entity.
+     * @return A bitset where the bit corresponding to each ancestor of the entity
+     *         is set. The returned bitset must not be modified.
+     */
+    public synchronized BitSet getAncestors(int id) {
+        ensureCapacity(id);
+        if ( ancestors[id] != null ) {
+            return ancestors[id];
+        }
+
+        // Depth-first traversal of the parents graph, so that the ancestors of every
+        // parent are computed (and remembered) before the ancestors of its children
+        Deque<int[]> stack = new ArrayDeque<>();
+        BitSet onStack = new BitSet();
+        stack.push(new int[] { id, 0 });
+        onStack.set(id);
+        BitSet result = null;
+        while ( !stack.isEmpty() ) {
+            int[] frame = stack.peek();
+            int[] entityParents = getParents(frame[0]);
+            if ( frame[1] < entityParents.length ) {
+                int parent = entityParents[frame[1]++];
+                ensureCapacity(parent);
+                if ( ancestors[parent] == null && !onStack.get(parent) ) {
+                    stack.push(new int[] { parent, 0 });
+                    onStack.set(parent);
+                }
+                continue;
+            }
+
+            stack.pop();
+            onStack.clear(frame[0]);
+            result = new BitSet();
+            boolean complete = true;
+            for ( int parent : entityParents ) {
+                result.set(parent);
+                if ( ancestors[parent] != null ) {
+                    result.or(ancestors[parent]);
+                } else {
+                    // The parent is still on the stack, so we are in a cycle
+                    complete = false;
+                }
+            }
+            if ( !complete ) {
+                result = traverseAncestors(frame[0]);
+            }
+            result.clear(frame[0]);
+            if ( internal.get(frame[0]) ) {
+                ancestors[frame[0]] = result;
+            }
+        }
+
+        return result;
+    }
+
+    /*
+     * Computes the ancestors of an entity by a breadth-first traversal of the
+     * parents graph, reusing the ancestors that are already known. Contrary to
+     * getAncestors(int), this does not assume that the ancestors of the parents
+     * of an entity can be computed before those of the entity itself, which is
+     * not the case if the entity is part of a cycle.
+     */
+    private BitSet traverseAncestors(int id) {
+        BitSet result = new BitSet();
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(id);
+        while ( !queue.isEmpty() ) {
+            for ( int parent : getParents(queue.poll()) ) {
+                if ( !result.get(parent) ) {
+                    result.set(parent);
+                    if ( ancestors[parent] != null ) {
+                        result.or(ancestors[parent]);
+                    } else {
+                        queue.add(parent);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets all the ancestors of an entity.
+     * 
+     * @param entity The entity whose ancestors should be retrieved.
+     * @return The set of all ancestors of the entity.
+     */
+    public synchronized Set<T> getAncestors(T entity) {
+        return index.getEntities(getAncestors(index.getId(entity)));
+    }
+
+    /**
+     * Gets all the descendants of an entity.
+     * <p>
+     * Only the entities that are already known to the hierarchy (and their
+     * ancestors) are considered, so this is only meaningful for a hierarchy whose
+     * entities have all been preloaded (or read from a file).
+     * 
+     * @param id The identifier of the entity.
+     * @return A bitset where the bit corresponding to each descendant of the
+     *         entity is set.
+     */
+    public BitSet getDescendants(int id) {
+        int[][] allChildren = getChildren();
+        BitSet result = new BitSet();
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(id);
+        while ( !queue.isEmpty() ) {
+            int current = queue.poll();
+            if ( current < allChildren.length ) {
+                for ( int child : allChildren[current] ) {
+                    if ( !result.get(child) ) {
+                        result.set(child);
+                        queue.add(child);
+                    }
+                }
+            }
+        }
+        result.clear(id);
+
+        return result;
+    }
+
+    /**
+     * Gets all the descendants of any of the given entities, in a single
+     * traversal of the hierarchy.
+     * <p>
+     * As for {@link #getDescendants(int)}, only the entities that are already
+     * known to the hierarchy are considered.
+     * 
+     * @param ids A bitset where the bit corresponding to each entity whose
+     *            descendants should be retrieved is set.
+     * @return A bitset where the bit corresponding to each descendant of any of
+     *         the entities is set. An entity in the original set is only included
+     *         if it is a descendant of another entity.
+     */
+    public BitSet getDescendants(BitSet ids) {
+        int[][] allChildren = getChildren();
+        BitSet result = new BitSet();
+        Deque<Integer> queue = new ArrayDeque<>();
+        for ( int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1) ) {
+            queue.add(id);
+        }
+        while ( !queue.isEmpty() ) {
+            int current = queue.poll();
+            if ( current < allChildren.length ) {
+                for ( int child : allChildren[current] ) {
+                    if ( !result.get(child) ) {
+                        result.set(child);
+                        queue.add(child);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets all the descendants of an entity.
+     * 
+     * @param entity The entity whose descendants should be retrieved.
+     * @return The set of all descendants of the entity.
+     * @see #getDescendants(int)
+     */
+    public Set<T> getDescendants(T entity) {
+        return index.getEntities(getDescendants(index.getId(entity)));
+    }
+
+    /**
+     * Ensures that the direct parents of the given entities, and of all their
+     * ancestors, are known to the hierarchy. After this method has been called,
+     * the parent provider will never be queried for any of those entities.
+     * 
+     * @param entities The entities whose parents should be obtained.
+     */
+    public synchronized void preload(Collection<T> entities) {
+        for ( T entity : entities ) {
+            index.getId(entity);
+        }
+        // The index grows as new parents are discovered
+        for ( int id = 0; id < index.size(); id++ ) {
+            getParents(id);
+        }
+    }
+
+    /**
+     * Writes the hierarchy to a binary stream.
+     * <p>
+     * This writes the IRIs of all the entities known to the hierarchy, followed by
+     * the identifiers of the direct parents of each entity. The parents of all
+     * entities are obtained first, if needed.
+     * 
+     * @param out The stream to write to.
+     * @throws IOException If any I/O error occurs.
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        for ( int id = 0; id < index.size(); id++ ) {
+            getParents(id);
+        }
+
+        int n = index.size();
+        out.writeInt(n);
+        for ( int id = 0; id < n; id++ ) {
+            byte[] bytes = index.get(id).getIRI().toString().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        for ( int id = 0; id < n; id++ ) {
+            out.writeInt(parents[id].length);
+            for ( int parent : parents[id] ) {
+                out.writeInt(parent);
+            }
+        }
+    }
+
+    /**
+     * Reads a hierarchy previously written with {@link #write(DataOutput)}.
+     * <p>
+     * The parents of all the entities in the returned hierarchy are already known,
+     * so the provider is only queried for entities that were not known to the
+     * hierarchy when it was written.
+     * 
+     * @param <T>      The type of entities in the hierarchy.
+     * @param buffer   The buffer to read from.
+     * @param creator  The function to create an entity from its IRI.
+     * @param provider The object to query for the direct parents of entities that
+     *                 are not in the hierarchy.
+     * @return The hierarchy.
+     */
+    public static <T extends OWLEntity> EntityHierarchy<T> read(ByteBuffer buffer, Function<IRI, T> creator,
+            ParentProvider<T> provider) {
+        EntityHierarchy<T> hierarchy = new EntityHierarchy<>(provider);
+        int n = readCount(buffer);
+        for ( int id = 0; id < n; id++ ) {
+            byte[] bytes = new byte[readCount(buffer, 1)];
+            buffer.get(bytes);
+            hierarchy.index.getId(creator.apply(IRI.create(new String(bytes, StandardCharsets.UTF_8))));
+        }
+        hierarchy.ensureCapacity(n);
+        for ( int id = 0; id < n; id++ ) {
+            int[] ids = new int[readCount(buffer)];
+            for ( int i = 0; i < ids.length; i++ ) {
+                ids[i] = buffer.getInt();
+                if ( ids[i] < 0 || ids[i] >= n ) {
+                    throw new IllegalArgumentException("Invalid entity identifier: " + ids[i]);
+                }
+            }
+            hierarchy.parents[id] = ids.length > 0 ? ids : NO_PARENTS;
+            for ( int parent : ids ) {
+                hierarchy.internal.set(parent);
+            }
+        }
+        return hierarchy;
+    }
+
+    /*
+     * Reads the number of items in a list, checking that the buffer is large
+     * enough to contain them, so that a corrupted count cannot cause a huge
+     * allocation.
+     */
+    private static int readCount(ByteBuffer buffer) {
+        return readCount(buffer, 4);
+    }
+
+    private static int readCount(ByteBuffer buffer, int itemSize) {
+        int n = buffer.getInt();
+        if ( n < 0 || n > buffer.remaining() / itemSize ) {
+            throw new BufferUnderflowException();
+        }
+        return n;
+    }
+
+    /*
+     * Inverts the parents graph of all the entities known to the hierarchy.
+     */
+    /*
+     * Gets the children of all the entities, building them if needed. Once built,
+     * the arrays are never modified (they are replaced if new entities are added
+     * to the hierarchy), so they can be traversed without holding the lock.
+     */
+    private synchronized int[][] getChildren() {
+        if ( children == null || children.length != index.size() ) {
+            buildChildren();
+        }
+        return children;
+    }
+
+    private void buildChildren() {
+        // The index grows as new parents are discovered
+        for ( int id = 0; id < index.size(); id++ ) {
+            getParents(id);
+        }
+
+        int n = index.size();
+        int[] counts = new int[n];
+        for ( int id = 0; id < n; id++ ) {
+            for ( int parent : parents[id] ) {
+                counts[parent] += 1;
+            }
+        }
+        children = new int[n][];
+        for ( int id = 0; id < n; id++ ) {
+            children[id] = counts[id] > 0 ? new int[counts[id]] : NO_PARENTS;
+            counts[id] = 0;
+        }
+        for ( int id = 0; id < n; id++ ) {
+            for ( int parent : parents[id] ) {
+                children[parent][counts[parent]++] = id;
+            }
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if ( id >= parents.length ) {
+            int newSize = Math.max(parents.length * 2, id + 1);
+            parents = Arrays.copyOf(parents, newSize);
+            ancestors = Arrays.copyOf(ancestors, newSize);
+        }
+    }
+
+    /**
+     * An object that can provide the direct parents of an entity.
+     *
+     * @param <T> The type of entities.
+     */
+    public interface ParentProvider<T> {
+
+        /**
+         * Gets the direct parents of an entity.
+         * 
+         * @param entity The entity whose parents are requested.
+         * @return The direct parents of the entity.
+         */
+        Collection<T> getParents(T entity);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLEntity;
+
+/**
+ * Assigns dense integer identifiers to OWL entities.
+ * <p>
+ * Entities are given identifiers in the order in which they are first seen,
+ * starting from zero. This allows to represent sets of entities as bitsets and
+ * relations between entities as arrays of integers.
+ * <p>
+ * All methods are synchronized, so that an index can be shared between
+ * several threads.
+ *
+ * @param <T> The type of entities to index.
+ */
+public class EntityIndex<T extends OWLEntity> {
+
+    private Map<T, Integer> ids = new HashMap<>();
+    private List<T> entities = new ArrayList<>();
+
+    /**
+     * Gets the identifier of an entity, assigning a new one if the entity has
+     * never been seen before.
+     * 
+     * @param entity The entity to look up.
+     * @return The identifier of the entity.
+     */
+    public synchronized int getId(T entity) {
+        Integer id = ids.get(entity);
+        if ( id == null ) {
+            id = entities.size();
+            ids.put(entity, id);
+            entities.add(entity);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the identifier of an entity, without assigning a new one.
+     * 
+     * @param entity The entity to look up.
+     * @return The identifier of the entity, or -1 if the entity is unknown.
+     */
+    public synchronized int findId(T entity) {
+        Integer id = ids.get(entity);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Gets the entity with the given identifier.
+     * 
+     * @param id The identifier to look up.
+     * @return The corresponding entity.
+     * @throws IndexOutOfBoundsException If no entity has been assigned the given
+     *                                   identifier.
+     */
+    public synchronized T get(int id) {
+        return entities.get(id);
+    }
+
+    /**
+     * Gets the number of entities in the index.
+     * 
+     * @return The number of entities (and the next identifier to be assigned).
+     */
+    public synchronized int size() {
+        return entities.size();
+    }
+
+    /**
+     * Gets the identifiers of a set of entities, as a bitset. Identifiers are
+     * assigned to entities that have never been seen before.
+     * 
+     * @param entities The entities to look up.
+     * @return A bitset where the bit corresponding to the identifier of each
+     *         entity is set.
+     */
+    public synchronized BitSet getIds(Set<T> entities) {
+        BitSet bits = new BitSet();
+        for ( T entity : entities ) {
+            bits.set(getId(entity));
+        }
+        return bits;
+    }
+
+    /**
+     * Gets the entities corresponding to a set of identifiers.
+     * 
+     * @param bits A bitset where each set bit is the identifier of an entity.
+     * @return The set of entities.
+     */
+    public synchronized Set<T> getEntities(BitSet bits) {
+        Set<T> result = new HashSet<>();
+        for ( int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1) ) {
+            result.add(entities.get(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A helper class to sort and deduplicate an arbitrarily large number of
+ * strings with a bounded amount of memory.
+ * <p>
+ * Strings are accumulated in memory up to a given number. When that number is
+ * reached, the strings in memory are sorted, deduplicated, and written to a
+ * temporary file (a “run”). Once all the strings have been added, the runs and
+ * the remaining strings in memory are merged to yield all the distinct strings
+ * in order.
+ */
+public class ExternalSorter implements Closeable {
+
+    private int maxBuffered;
+    private List<String> buffer = new ArrayList<>();
+    private List<File> runs = new ArrayList<>();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param maxBuffered The maximal number of strings to keep in memory.
+     */
+    public ExternalSorter(int maxBuffered) {
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Adds a string to sort.
+     * 
+     * @param item The string to add.
+     * @throws IOException If an I/O error occurs when writing a run to disk.
+     */
+    public void add(String item) throws IOException {
+        buffer.add(item);
+        if ( buffer.size() >= maxBuffered ) {
+            spill();
+        }
+    }
+
+    /**
+     * Gets the number of runs that have been written to disk so far.
+     * 
+     * @return The number of runs.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Passes all the distinct strings that have been added, in sorted order, to the
+     * given handler.
+     * 
+     * @param handler The object to pass the sorted strings to.
+     * @throws IOException If an I/O error occurs when reading the runs, or any
+     *                     error thrown by the handler.
+     */
+    public void drain(ItemHandler handler) throws IOException {
+        Collections.sort(buffer);
+        PriorityQueue<Source> queue = new PriorityQueue<>();
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for ( File run : runs ) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                Source src = new Source(reader);
+                if ( src.advance() ) {
+                    queue.add(src);
+                }
+            }
+            Source src = new Source(buffer.iterator());
+            if ( src.advance() ) {
+                queue.add(src);
+            }
+
+            String last = null;
+            while ( !queue.isEmpty() ) {
+                src = queue.poll();
+                if ( last == null || !last.equals(src.head) ) {
+                    handler.handle(src.head);
+                    last = src.head;
+                }
+                if ( src.advance() ) {
+                    queue.add(src);
+                }
+            }
+        } finally {
+            for ( RunReader reader : readers ) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes all the temporary files.
+     */
+    @Override
+    public void close() {
+        for ( File run : runs ) {
+            run.delete();
+        }
+        runs.clear();
+        buffer.clear();
+    }
+
+    /*
+     * Sorts the strings currently in memory and writes them to a new run.
+     */
+    private void spill() throws IOException {
+        Collections.sort(buffer);
+        File run = File.createTempFile("odk-sort", ".run");
+        run.deleteOnExit();
+        runs.add(run);
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+        String last = null;
+        for ( String item : buffer ) {
+            if ( last == null || !last.equals(item) ) {
+                byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+                last = item;
+            }
+        }
+        output.close();
+        buffer.clear();
+    }
+
+    /**
+     * An object that can receive the sorted strings.
+     */
+    public interface ItemHandler {
+
+        /**
+         * Processes a string.
+         * 
+         * @param item The string to process.
+         * @throws IOException If any I/O error occurs.
+         */
+        void handle(String item) throws IOException;
+    }
+
+    /*
+     * Reads back the strings written to a run.
+     */
+    private static class RunReader implements Closeable {
+        private DataInputStream input;
+
+        RunReader(File file) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        String next() throws IOException {
+            int length;
+            try {
+                length = input.readInt();
+            } catch ( EOFException eof ) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /*
+     * A source of sorted strings (either a run or the in-memory buffer) during the
+     * merge.
+     */
+    private static class Source implements Comparable<Source> {
+        private RunReader reader;
+        private Iterator<String> iterator;
+        String head;
+
+        Source(RunReader reader) {
+            this.reader = reader;
+        }
+
+        Source(Iterator<String> iterator) {
+            this.iterator = iterator;
+        }
+
+        boolean advance() throws IOException {
+            if ( reader != null ) {
+                head = reader.next();
+            } else {
+                head = iterator.hasNext() ? iterator.next() : null;
+            }
+            return head != null;
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            return head.compareTo(o.head);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A directory of cached files, identified by keys.
+ * <p>
+ * Keys are derived from arbitrary strings describing what the cached data
+ * depends on (typically, the fingerprint of an ontology and some settings), so
+ * that a cached file is automatically ignored if anything it depends on has
+ * changed. Files are always written to a temporary file first and then moved
+ * into place, so that a cached file is never seen half-written, even by
+ * concurrent processes.
+ */
+public class FileCache {
+
+    private File directory;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param directory The directory where cached files are stored. It will be
+     *                  created if needed.
+     */
+    public FileCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Computes a key from a list of strings.
+     * 
+     * @param parts The strings that uniquely describe the contents of a cached
+     *              file.
+     * @return The key, as a string of hexadecimal digits.
+     */
+    public static String makeKey(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for ( String part : parts ) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            for ( byte b : digest.digest() ) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch ( NoSuchAlgorithmException e ) {
+            // Should not happen, all Java platforms are required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the cached file for the given key.
+     * 
+     * @param key       The key of the cached data.
+     * @param extension The extension identifying the type of cached data.
+     * @return The cached file, or {@code null} if there is no such file in the
+     *         cache.
+     */
+    public File find(String key, String extension) {
+        File file = getFile(key, extension);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Stores a file in the cache.
+     * 
+     * @param key       The key of the cached data.
+     * @param extension The extension identifying the type of cached data.
+     * @param writer    The object that will write the data to be cached.
+     * @throws IOException If any I/O error occurs.
+     */
+    public void store(String key, String extension, ContentWriter writer) throws IOException {
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+        File tmpFile = File.createTempFile(key, ".tmp", directory);
+        try {
+            writer.write(tmpFile);
+            Files.move(tmpFile.toPath(), getFile(key, extension).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    private File getFile(String key, String extension) {
+        return new File(directory, key + "." + extension);
+    }
+
+    /**
+     * An object that writes data to a file.
+     */
+    public interface ContentWriter {
+
+        /**
+         * Writes the data to the specified file.
+         * 
+         * @param file The file to write to.
+         * @throws IOException If any I/O error occurs.
+         */
+        void write(File file) throws IOException;
+    }
+}
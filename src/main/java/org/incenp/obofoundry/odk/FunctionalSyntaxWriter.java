@@ -0,0 +1,142 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.functional.renderer.FunctionalSyntaxObjectRenderer;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+
+/**
+ * A helper class to write axioms to a file in OWL Functional Syntax, without
+ * building an ontology object.
+ * <p>
+ * Axioms are rendered as soon as they are received, and the rendered axioms
+ * are sorted and deduplicated with a bounded amount of memory (using
+ * {@link ExternalSorter}) before being written, so that the same axiom may
+ * safely be passed several times. Declaration axioms are written before all
+ * other axioms.
+ */
+public class FunctionalSyntaxWriter implements Consumer<OWLAxiom>, Closeable {
+
+    private File file;
+    private IRI ontologyIRI;
+    private FunctionalSyntaxDocumentFormat format = new FunctionalSyntaxDocumentFormat();
+    private StringWriter buffer = new StringWriter();
+    private FunctionalSyntaxObjectRenderer renderer;
+    private ExternalSorter sorter;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param file        The file to write to.
+     * @param ontologyIRI The IRI of the ontology to write; may be {@code null}.
+     * @param maxBuffered The maximal number of rendered axioms to keep in memory
+     *                    before they are written to a temporary file.
+     * @throws OWLOntologyCreationException If the OWLAPI cannot create the
+     *                                      ontology object needed by the
+     *                                      renderer.
+     */
+    public FunctionalSyntaxWriter(File file, IRI ontologyIRI, int maxBuffered) throws OWLOntologyCreationException {
+        this.file = file;
+        this.ontologyIRI = ontologyIRI;
+        // The renderer needs an ontology, but does not use it when rendering axioms
+        renderer = new FunctionalSyntaxObjectRenderer(OWLManager.createOWLOntologyManager().createOntology(),
+                format, buffer);
+        sorter = new ExternalSorter(maxBuffered);
+    }
+
+    /**
+     * Renders an axiom and queues it for writing.
+     * 
+     * @param axiom The axiom to write.
+     * @throws UncheckedIOException If an I/O error occurs when the queue needs to
+     *                              be written to a temporary file.
+     */
+    @Override
+    public void accept(OWLAxiom axiom) {
+        buffer.getBuffer().setLength(0);
+        // Prefix every axiom with a sort key, so that declarations come first
+        buffer.append(axiom.isOfType(AxiomType.DECLARATION) ? '0' : '1');
+        axiom.accept(renderer);
+        try {
+            sorter.add(buffer.toString());
+        } catch ( IOException ioe ) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Writes all the axioms to the file. If anything goes wrong while writing,
+     * the incomplete file is deleted.
+     * 
+     * @throws IOException If any I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean done = false;
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for ( Map.Entry<String, String> prefix : format.getPrefixName2PrefixMap().entrySet() ) {
+                writer.write(String.format("Prefix(%s=<%s>)\n", prefix.getKey(), prefix.getValue()));
+            }
+            writer.write("\n\nOntology(");
+            if ( ontologyIRI != null ) {
+                writer.write(ontologyIRI.toQuotedString());
+            }
+            writer.write('\n');
+            sorter.drain(item -> {
+                writer.write(item, 1, item.length() - 1);
+                writer.write('\n');
+            });
+            writer.write(")\n");
+            done = true;
+        } finally {
+            sorter.close();
+            if ( !done ) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Discards all the axioms without writing anything, and deletes the temporary
+     * files. This is intended to be called instead of {@link #close()} when the
+     * production of the axioms has failed.
+     */
+    public void discard() {
+        sorter.close();
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.incenp.obofoundry.odk.EntityHierarchy.ParentProvider;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The inferred class and object property hierarchies of an ontology.
+ * <p>
+ * This class bundles the two {@link EntityHierarchy} objects that the commands
+ * of this plugin need from a reasoner, and allows to save them to a binary
+ * file, so that they can be loaded on a subsequent run instead of classifying
+ * the ontology again.
+ */
+public class InferredHierarchies {
+
+    private static final Logger logger = LoggerFactory.getLogger(InferredHierarchies.class);
+
+    private static final int MAGIC = 0x4f444b48; // "ODKH"
+    private static final int VERSION = 1;
+
+    private EntityHierarchy<OWLClass> classes;
+    private EntityHierarchy<OWLObjectProperty> objectProperties;
+    private boolean cachedObjectProperties = true;
+    private Map<OWLClass, Set<OWLClass>> equivalentClasses;
+
+    private InferredHierarchies(EntityHierarchy<OWLClass> classes,
+            EntityHierarchy<OWLObjectProperty> objectProperties) {
+        this.classes = classes;
+        this.objectProperties = objectProperties;
+    }
+
+    /**
+     * Creates hierarchies backed by a reasoner.
+     * <p>
+     * The reasoner is only obtained from the supplier when it is first needed, and
+     * is only queried while holding its lock.
+     * 
+     * @param reasoner The supplier of the reasoner to query. It is called every
+     *                 time the reasoner is needed, so it should always return the
+     *                 same instance.
+     * @return The new hierarchies.
+     */
+    public static InferredHierarchies fromReasoner(Supplier<OWLReasoner> reasoner) {
+        return new InferredHierarchies(new EntityHierarchy<>(getClassProvider(reasoner)),
+                new EntityHierarchy<>(getObjectPropertyProvider(reasoner)));
+    }
+
+    /**
+     * Creates hierarchies from the asserted axioms of an ontology, without any
+     * reasoning.
+     * <p>
+     * This is intended for ontologies that have already been classified (e.g. with
+     * <code>robot reason</code>). The parents of a class are the named classes it
+     * is asserted to be a subclass of, either directly or as an operand of an
+     * intersection, in a <code>SubClassOf</code> or <code>EquivalentClasses</code>
+     * axiom; classes that are asserted to be equivalent share the same parents.
+     * The parents of an object property are the named properties it is asserted to
+     * be a sub-property of. As with a reasoner, an entity without any asserted
+     * parent is given the top entity as its parent.
+     * <p>
+     * All the classes and object properties of the ontology (including its
+     * imports) are loaded at once, so the returned hierarchies never need a
+     * reasoner.
+     * 
+     * @param ontology The ontology whose hierarchies are requested.
+     * @return The hierarchies.
+     */
+    public static InferredHierarchies fromAssertedAxioms(OWLOntology ontology) {
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        Map<OWLClass, Set<OWLClass>> classParents = new HashMap<>();
+        Map<OWLClass, Set<OWLClass>> equivalents = new HashMap<>();
+
+        for ( OWLSubClassOfAxiom ax : ontology.getAxioms(AxiomType.SUBCLASS_OF, Imports.INCLUDED) ) {
+            if ( !ax.getSubClass().isAnonymous() ) {
+                addNamedConjuncts(classParents, ax.getSubClass().asOWLClass(), ax.getSuperClass());
+            }
+        }
+        for ( OWLEquivalentClassesAxiom ax : ontology.getAxioms(AxiomType.EQUIVALENT_CLASSES, Imports.INCLUDED) ) {
+            Set<OWLClass> named = ax.getNamedClasses();
+            for ( OWLClass klass : named ) {
+                for ( OWLClassExpression expr : ax.getClassExpressions() ) {
+                    if ( expr.isAnonymous() ) {
+                        addNamedConjuncts(classParents, klass, expr);
+                    }
+                }
+            }
+            if ( named.size() > 1 ) {
+                // Merge the sets of all the classes already known to be equivalent to any
+                // of the classes in this axiom
+                Set<OWLClass> group = new HashSet<>(named);
+                for ( OWLClass klass : named ) {
+                    Set<OWLClass> known = equivalents.get(klass);
+                    if ( known != null ) {
+                        group.addAll(known);
+                    }
+                }
+                for ( OWLClass klass : group ) {
+                    equivalents.put(klass, group);
+                }
+            }
+        }
+
+        // Equivalent classes share the parents of all the classes in their group
+        Set<Set<OWLClass>> groups = Collections.newSetFromMap(new IdentityHashMap<>());
+        groups.addAll(equivalents.values());
+        for ( Set<OWLClass> group : groups ) {
+            Set<OWLClass> parents = new HashSet<>();
+            for ( OWLClass klass : group ) {
+                parents.addAll(classParents.getOrDefault(klass, Collections.emptySet()));
+            }
+            parents.removeAll(group);
+            for ( OWLClass klass : group ) {
+                classParents.put(klass, parents);
+            }
+        }
+
+        Map<OWLObjectProperty, Set<OWLObjectProperty>> propertyParents = new HashMap<>();
+        for ( OWLSubObjectPropertyOfAxiom ax : ontology.getAxioms(AxiomType.SUB_OBJECT_PROPERTY, Imports.INCLUDED) ) {
+            if ( !ax.getSubProperty().isAnonymous() && !ax.getSuperProperty().isAnonymous() ) {
+                propertyParents.computeIfAbsent(ax.getSubProperty().asOWLObjectProperty(), k -> new HashSet<>())
+                        .add(ax.getSuperProperty().asOWLObjectProperty());
+            }
+        }
+
+        OWLClass thing = factory.getOWLThing();
+        OWLObjectProperty topProperty = factory.getOWLTopObjectProperty();
+        InferredHierarchies hierarchies = new InferredHierarchies(
+                new EntityHierarchy<>(klass -> getAssertedParents(classParents, klass, thing)),
+                new EntityHierarchy<>(property -> getAssertedParents(propertyParents, property, topProperty)));
+        hierarchies.classes.preload(ontology.getClassesInSignature(Imports.INCLUDED));
+        hierarchies.objectProperties.preload(ontology.getObjectPropertiesInSignature(Imports.INCLUDED));
+        hierarchies.equivalentClasses = equivalents;
+        logger.info("Built asserted hierarchy of {} classes and {} object properties",
+                hierarchies.classes.getIndex().size(), hierarchies.objectProperties.getIndex().size());
+        return hierarchies;
+    }
+
+    /**
+     * Gets the hierarchies for an ontology, from a cache if possible.
+     * <p>
+     * If the cache contains hierarchies for the given key, they are loaded from
+     * there. Otherwise, the hierarchies are obtained from the reasoner for all the
+     * classes and object properties of the ontology (including its imports), and
+     * stored into the cache.
+     * 
+     * @param cache    The cache to use.
+     * @param key      The key identifying the hierarchies in the cache. It should
+     *                 be derived at least from a fingerprint of the ontology and
+     *                 the name of the reasoner.
+     * @param ontology The ontology whose hierarchies are requested.
+     * @param reasoner The supplier of the reasoner to use if the hierarchies are
+     *                 not in the cache (or if they are incomplete).
+     * @param rebuild  If {@code true}, ignore any cached hierarchies and always
+     *                 obtain them from the reasoner.
+     * @return The hierarchies.
+     * @throws IOException If any I/O error occurs when writing the hierarchies to
+     *                     the cache.
+     */
+    public static InferredHierarchies fromCache(FileCache cache, String key, OWLOntology ontology,
+            Supplier<OWLReasoner> reasoner, boolean rebuild) throws IOException {
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        File cached = rebuild ? null : cache.find(key, "hierarchy");
+        if ( cached != null ) {
+            try {
+                InferredHierarchies hierarchies = read(cached, factory, reasoner);
+                logger.info("Using cached hierarchies {}", cached);
+                return hierarchies;
+            } catch ( IOException e ) {
+                logger.warn("Ignoring invalid cached hierarchies {}: {}", cached, e.getMessage());
+            }
+        }
+
+        InferredHierarchies hierarchies = fromReasoner(reasoner);
+        hierarchies.classes.preload(ontology.getClassesInSignature(Imports.INCLUDED));
+        try {
+            hierarchies.objectProperties.preload(ontology.getObjectPropertiesInSignature(Imports.INCLUDED));
+        } catch ( UnsupportedOperationException uoe ) {
+            // Not all reasoners can provide the object property hierarchy
+            logger.info("Reasoner cannot provide the object property hierarchy, it will not be cached");
+            hierarchies.objectProperties = new EntityHierarchy<>(getObjectPropertyProvider(reasoner));
+            hierarchies.cachedObjectProperties = false;
+        }
+        cache.store(key, "hierarchy", hierarchies::write);
+        return hierarchies;
+    }
+
+    /**
+     * Gets the class hierarchy.
+     * 
+     * @return The class hierarchy.
+     */
+    public EntityHierarchy<OWLClass> getClassHierarchy() {
+        return classes;
+    }
+
+    /**
+     * Gets the object property hierarchy.
+     * 
+     * @return The object property hierarchy.
+     */
+    public EntityHierarchy<OWLObjectProperty> getObjectPropertyHierarchy() {
+        return objectProperties;
+    }
+
+    /**
+     * Indicates whether the hierarchies have been built from asserted axioms only.
+     * 
+     * @return {@code true} if the hierarchies have been created with
+     *         {@link #fromAssertedAxioms(OWLOntology)}, {@code false} if they come
+     *         from a reasoner (directly or through a cache).
+     */
+    public boolean isAsserted() {
+        return equivalentClasses != null;
+    }
+
+    /**
+     * Gets the classes that are asserted to be equivalent to a class.
+     * 
+     * @param klass The class whose equivalents are requested.
+     * @return The set of classes equivalent to the class, including the class
+     *         itself.
+     * @throws IllegalStateException If the hierarchies have not been built from
+     *                               asserted axioms.
+     */
+    public Set<OWLClass> getAssertedEquivalentClasses(OWLClass klass) {
+        if ( equivalentClasses == null ) {
+            throw new IllegalStateException("Equivalent classes are only available from asserted hierarchies");
+        }
+        Set<OWLClass> group = equivalentClasses.get(klass);
+        return group != null ? Collections.unmodifiableSet(group) : Collections.singleton(klass);
+    }
+
+    /**
+     * Writes the hierarchies to a file.
+     * 
+     * @param file The file to write to.
+     * @throws IOException If any I/O error occurs.
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(cachedObjectProperties);
+            classes.write(out);
+            if ( cachedObjectProperties ) {
+                objectProperties.write(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads hierarchies from a file.
+     * 
+     * @param file     The file to read from.
+     * @param factory  The data factory to use to create the entities.
+     * @param reasoner The supplier of the reasoner to query for any entity that
+     *                 is not in the file. It is never called if all the entities
+     *                 that are looked up are found in the file.
+     * @return The hierarchies.
+     * @throws IOException If any I/O error occurs, or if the file is not a valid
+     *                     hierarchies file.
+     */
+    public static InferredHierarchies read(File file, OWLDataFactory factory, Supplier<OWLReasoner> reasoner)
+            throws IOException {
+        try ( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != VERSION ) {
+                throw new IOException("Invalid or unsupported hierarchies file: " + file);
+            }
+
+            boolean cachedObjectProperties = buffer.get() != 0;
+            EntityHierarchy<OWLClass> classes = EntityHierarchy.read(buffer, factory::getOWLClass,
+                    getClassProvider(reasoner));
+            EntityHierarchy<OWLObjectProperty> properties;
+            if ( cachedObjectProperties ) {
+                properties = EntityHierarchy.read(buffer, factory::getOWLObjectProperty,
+                        getObjectPropertyProvider(reasoner));
+            } else {
+                // We already know the reasoner does not support object properties, so no
+                // need to create it only to find that out again
+                properties = new EntityHierarchy<>(property -> {
+                    throw new UnsupportedOperationException();
+                });
+            }
+            InferredHierarchies hierarchies = new InferredHierarchies(classes, properties);
+            hierarchies.cachedObjectProperties = cachedObjectProperties;
+            return hierarchies;
+        } catch ( RuntimeException e ) {
+            // Most likely a BufferUnderflowException from a truncated file
+            throw new IOException("Invalid hierarchies file: " + file, e);
+        }
+    }
+
+    private static void addNamedConjuncts(Map<OWLClass, Set<OWLClass>> parents, OWLClass klass,
+            OWLClassExpression expr) {
+        for ( OWLClassExpression conjunct : expr.asConjunctSet() ) {
+            if ( !conjunct.isAnonymous() && !conjunct.equals(klass) ) {
+                parents.computeIfAbsent(klass, k -> new HashSet<>()).add(conjunct.asOWLClass());
+            }
+        }
+    }
+
+    private static <T extends OWLEntity> Collection<T> getAssertedParents(Map<T, Set<T>> parents, T entity, T top) {
+        if ( entity.equals(top) ) {
+            return Collections.emptySet();
+        }
+        Set<T> entityParents = parents.get(entity);
+        if ( entityParents == null || entityParents.isEmpty() ) {
+            return Collections.singleton(top);
+        }
+        return entityParents;
+    }
+
+    private static ParentProvider<OWLClass> getClassProvider(Supplier<OWLReasoner> reasoner) {
+        return klass -> {
+            OWLReasoner r = reasoner.get();
+            synchronized ( r ) {
+                return r.getSuperClasses(klass, true).getFlattened();
+            }
+        };
+    }
+
+    private static ParentProvider<OWLObjectProperty> getObjectPropertyProvider(Supplier<OWLReasoner> reasoner) {
+        return property -> {
+            Set<OWLObjectPropertyExpression> supers;
+            OWLReasoner r = reasoner.get();
+            synchronized ( r ) {
+                supers = r.getSuperObjectProperties(property, true).getFlattened();
+            }
+            // We are only interested in named properties; for an inverse property
+            // expression, we take the property it is the inverse of
+            Set<OWLObjectProperty> parents = new HashSet<>();
+            for ( OWLObjectPropertyExpression expr : supers ) {
+                parents.addAll(expr.getObjectPropertiesInSignature());
+            }
+            return parents;
+        };
+    }
+}
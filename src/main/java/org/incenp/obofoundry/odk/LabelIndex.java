@@ -0,0 +1,233 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.obolibrary.robot.QuotedEntityChecker;
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.search.EntitySearcher;
+import org.semanticweb.owlapi.util.ReferencedEntitySetProvider;
+import org.semanticweb.owlapi.util.ShortFormProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The names (labels and short forms) by which the entities of an ontology can
+ * be referred to in a DL query.
+ * <p>
+ * This class collects the same names as
+ * {@link QuotedEntityChecker#addAll(OWLOntology)}, but allows to save them to a
+ * binary file, so that they can be loaded on a subsequent run instead of going
+ * through all the entities and annotations of the ontology again.
+ */
+public class LabelIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(LabelIndex.class);
+
+    private static final int MAGIC = 0x4f444b4c; // "ODKL"
+    private static final int VERSION = 1;
+
+    private List<OWLEntity> entities = new ArrayList<>();
+    private List<String> names = new ArrayList<>();
+
+    private LabelIndex() {
+    }
+
+    /**
+     * Creates the index of an ontology.
+     * <p>
+     * As in {@link QuotedEntityChecker#addAll(OWLOntology)}, the entities and
+     * labels are taken from the ontology itself and from the ontologies returned
+     * by {@link OWLOntology#getImports()} (which, with the OWL API 4, are all the
+     * ontologies of its imports closure).
+     * 
+     * @param ontology The ontology to index.
+     * @param property The annotation property that holds the labels of entities.
+     * @param provider The provider of the short forms of entities.
+     * @return The new index.
+     */
+    public static LabelIndex fromOntology(OWLOntology ontology, OWLAnnotationProperty property,
+            ShortFormProvider provider) {
+        LabelIndex index = new LabelIndex();
+        Set<OWLOntology> ontologies = new HashSet<>();
+        ontologies.add(ontology);
+        ontologies.addAll(ontology.getImports());
+        for ( OWLEntity entity : new ReferencedEntitySetProvider(ontologies).getEntities() ) {
+            index.add(entity, provider.getShortForm(entity));
+            for ( OWLAnnotation annotation : EntitySearcher.getAnnotationObjects(entity, ontologies, property) ) {
+                OWLLiteral value = annotation.getValue().asLiteral().orNull();
+                if ( value != null ) {
+                    index.add(entity, value.getLiteral());
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Gets the index of an ontology, from a cache if possible.
+     * 
+     * @param cache    The cache to use.
+     * @param key      The key identifying the index in the cache. It should be
+     *                 derived at least from a fingerprint of the ontology and the
+     *                 prefixes used by the short form provider.
+     * @param ontology The ontology to index if the index is not in the cache.
+     * @param property The annotation property that holds the labels of entities.
+     * @param provider The provider of the short forms of entities.
+     * @return The index.
+     * @throws IOException If any I/O error occurs when writing the index to the
+     *                     cache.
+     */
+    public static LabelIndex fromCache(FileCache cache, String key, OWLOntology ontology,
+            OWLAnnotationProperty property, ShortFormProvider provider) throws IOException {
+        File cached = cache.find(key, "labels");
+        if ( cached != null ) {
+            try {
+                LabelIndex index = read(cached, ontology.getOWLOntologyManager().getOWLDataFactory());
+                logger.info("Using cached label index {}", cached);
+                return index;
+            } catch ( IOException e ) {
+                logger.warn("Ignoring invalid cached label index {}: {}", cached, e.getMessage());
+            }
+        }
+
+        LabelIndex index = fromOntology(ontology, property, provider);
+        cache.store(key, "labels", index::write);
+        return index;
+    }
+
+    /**
+     * Gets the number of names in the index.
+     * 
+     * @return The number of names.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Adds all the names of the index to an entity checker.
+     * 
+     * @param checker The checker to fill.
+     */
+    public void addTo(QuotedEntityChecker checker) {
+        for ( int i = 0; i < names.size(); i++ ) {
+            checker.add(entities.get(i), names.get(i));
+        }
+    }
+
+    /**
+     * Writes the index to a file.
+     * 
+     * @param file The file to write to.
+     * @throws IOException If any I/O error occurs.
+     */
+    public void write(File file) throws IOException {
+        List<EntityType<?>> types = EntityType.values();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.size());
+            for ( int i = 0; i < names.size(); i++ ) {
+                out.writeByte(types.indexOf(entities.get(i).getEntityType()));
+                writeString(out, entities.get(i).getIRI().toString());
+                writeString(out, names.get(i));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads an index from a file.
+     * 
+     * @param file    The file to read from.
+     * @param factory The data factory to use to create the entities.
+     * @return The index.
+     * @throws IOException If any I/O error occurs, or if the file is not a valid
+     *                     label index file.
+     */
+    public static LabelIndex read(File file, OWLDataFactory factory) throws IOException {
+        List<EntityType<?>> types = EntityType.values();
+        try ( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != VERSION ) {
+                throw new IOException("Invalid or unsupported label index file: " + file);
+            }
+
+            LabelIndex index = new LabelIndex();
+            int n = buffer.getInt();
+            for ( int i = 0; i < n; i++ ) {
+                EntityType<?> type = types.get(buffer.get());
+                IRI iri = IRI.create(readString(buffer));
+                index.add(factory.getOWLEntity(type, iri), readString(buffer));
+            }
+            return index;
+        } catch ( RuntimeException e ) {
+            // Most likely a BufferUnderflowException from a truncated file
+            throw new IOException("Invalid label index file: " + file, e);
+        }
+    }
+
+    private void add(OWLEntity entity, String name) {
+        if ( name != null ) {
+            entities.add(entity);
+            names.add(name);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if ( length < 0 || length > buffer.remaining() ) {
+            // Do not try to allocate a huge array for a corrupted length
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.incenp.obofoundry.odk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+/**
+ * A single traversal of the axioms of an ontology, shared by several
+ * normalization steps.
+ * <p>
+ * The axioms of the ontology (excluding its imports closure) are visited
+ * exactly once, partitioned by axiom type, and each axiom is handed to all the
+ * steps that are interested in axioms of its type. Partitions may be visited in
+ * parallel. Once all the axioms have been visited, each step is asked for the
+ * changes it wants to make, and all the changes are applied at once.
+ * <p>
+ * New normalization operations can be added by implementing the {@link Step}
+ * interface, without requiring another traversal of the ontology.
+ */
+public class NormalizationPass {
+
+    private List<Step> steps = new ArrayList<>();
+
+    /**
+     * Adds a normalization step to the pass.
+     * 
+     * @param step The step to add.
+     * @return This object, so that calls can be chained.
+     */
+    public NormalizationPass addStep(Step step) {
+        steps.add(step);
+        return this;
+    }
+
+    /**
+     * Performs all the normalization steps on an ontology, using a single thread.
+     * 
+     * @param ontology The ontology to normalize.
+     */
+    public void run(OWLOntology ontology) {
+        for ( Partition partition : getPartitions(ontology) ) {
+            partition.visit();
+        }
+        finish(ontology);
+    }
+
+    /**
+     * Performs all the normalization steps on an ontology, visiting several
+     * partitions in parallel. The changes made to the ontology do not depend on
+     * the number of threads.
+     * 
+     * @param ontology The ontology to normalize.
+     * @param nThreads The number of threads to use.
+     * @throws InterruptedException If the thread is interrupted while waiting for
+     *                              the axioms to be visited.
+     */
+    public void run(OWLOntology ontology, int nThreads) throws InterruptedException {
+        List<Partition> partitions = getPartitions(ontology);
+        if ( nThreads < 2 || partitions.size() < 2 ) {
+            for ( Partition partition : partitions ) {
+                partition.visit();
+            }
+            finish(ontology);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for ( Partition partition : partitions ) {
+            tasks.add(() -> {
+                partition.visit();
+                return null;
+            });
+        }
+        partitions = null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(nThreads, tasks.size()));
+        try {
+            for ( Future<Void> result : executor.invokeAll(tasks) ) {
+                try {
+                    result.get();
+                } catch ( ExecutionException e ) {
+                    if ( e.getCause() instanceof RuntimeException ) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        finish(ontology);
+    }
+
+    /*
+     * Gets the visitors of all steps for each type (in the order of the type
+     * names, so that visitors are always created in the same order), and splits
+     * the axioms of the ontology by type. Axioms of a type no step is interested
+     * in are not even retrieved. Partitions are then sorted by decreasing size, so
+     * that the largest ones get started first when visited in parallel.
+     */
+    private List<Partition> getPartitions(OWLOntology ontology) {
+        List<AxiomType<?>> types = new ArrayList<>(AxiomType.AXIOM_TYPES);
+        types.sort((a, b) -> a.getName().compareTo(b.getName()));
+
+        List<Partition> partitions = new ArrayList<>();
+        for ( AxiomType<?> type : types ) {
+            List<Visitor> visitors = new ArrayList<>();
+            for ( Step step : steps ) {
+                Visitor visitor = step.getVisitor(type);
+                if ( visitor != null ) {
+                    visitors.add(visitor);
+                }
+            }
+            if ( !visitors.isEmpty() && ontology.getAxiomCount(type, Imports.EXCLUDED) > 0 ) {
+                Partition partition = new Partition(ontology.getAxioms(type, Imports.EXCLUDED));
+                partition.visitors.addAll(visitors);
+                partitions.add(partition);
+            }
+        }
+        partitions.sort((a, b) -> Integer.compare(b.axioms.size(), a.axioms.size()));
+        return partitions;
+    }
+
+    /*
+     * Collects the changes from all steps and applies them. Removals are applied
+     * before additions, so that a step may add back an axiom removed by another.
+     */
+    private void finish(OWLOntology ontology) {
+        Set<OWLAxiom> removed = new HashSet<>();
+        Set<OWLAxiom> added = new HashSet<>();
+        for ( Step step : steps ) {
+            step.finish(ontology, removed, added);
+        }
+
+        OWLOntologyManager mgr = ontology.getOWLOntologyManager();
+        if ( !removed.isEmpty() ) {
+            mgr.removeAxioms(ontology, removed);
+        }
+        if ( !added.isEmpty() ) {
+            mgr.addAxioms(ontology, added);
+        }
+    }
+
+    /*
+     * The axioms of a single type, with the visitors interested in them.
+     */
+    private static class Partition {
+        Set<? extends OWLAxiom> axioms;
+        List<Visitor> visitors = new ArrayList<>();
+
+        Partition(Set<? extends OWLAxiom> axioms) {
+            this.axioms = axioms;
+        }
+
+        void visit() {
+            for ( OWLAxiom axiom : axioms ) {
+                for ( Visitor visitor : visitors ) {
+                    visitor.visit(axiom);
+                }
+            }
+            for ( Visitor visitor : visitors ) {
+                visitor.end();
+            }
+            axioms = Collections.emptySet();
+        }
+    }
+
+    /**
+     * A normalization operation that can be performed as part of a
+     * {@link NormalizationPass}.
+     */
+    public interface Step {
+
+        /**
+         * Gets a visitor for the axioms of a given type.
+         * <p>
+         * This method is called at most once per type, before any axiom is visited,
+         * and always in the same order for a given ontology. Each visitor is then
+         * called from a single thread, but visitors for different types may be
+         * called concurrently.
+         * <p>
+         * A step that can find what it needs without looking at every axiom (for
+         * example, from the indexes of the ontology) may return {@code null} for all
+         * types and do all its work in {@link #finish(OWLOntology, Set, Set)}.
+         * 
+         * @param type The type of the axioms to visit.
+         * @return The visitor for axioms of that type, or {@code null} if the step
+         *         is not interested in those axioms.
+         */
+        Visitor getVisitor(AxiomType<?> type);
+
+        /**
+         * Computes the changes to apply to the ontology, once all the axioms have
+         * been visited. Removals are applied before additions.
+         * 
+         * @param ontology The ontology being normalized. It must not be modified
+         *                 directly.
+         * @param removed  The set to fill with the axioms to remove.
+         * @param added    The set to fill with the axioms to add.
+         */
+        void finish(OWLOntology ontology, Set<OWLAxiom> removed, Set<OWLAxiom> added);
+    }
+
+    /**
+     * An object that visits the axioms of a single type on behalf of a
+     * {@link Step}.
+     */
+    public interface Visitor {
+
+        /**
+         * Visits an axiom.
+         * 
+         * @param axiom The axiom to visit.
+         */
+        void visit(OWLAxiom axiom);
+
+        /**
+         * Called once all the axioms of the type have been visited. This is where
+         * the visitor may release any per-type working data.
+         */
+        default void end() {
+        }
+    }
+}
@@ -18,9 +18,8 @@
 
 package org.incenp.obofoundry.odk;
 
-import java.util.HashMap;
+import java.io.File;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
@@ -28,14 +27,9 @@ import org.obolibrary.robot.CommandLineHelper;
 import org.obolibrary.robot.CommandState;
 import org.semanticweb.owlapi.model.AddOntologyAnnotation;
 import org.semanticweb.owlapi.model.IRI;
-import org.semanticweb.owlapi.model.OWLAnnotation;
-import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
-import org.semanticweb.owlapi.model.OWLAnnotationProperty;
-import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
-import org.semanticweb.owlapi.model.parameters.Imports;
 
 /**
  * A command to perform various “normalisation” operations on an ontology.
@@ -57,6 +51,9 @@ import org.semanticweb.owlapi.model.parameters.Imports;
  */
 public class NormalizeCommand extends BasePlugin {
 
+    // Number of rendered axioms to keep in memory in streaming mode
+    private static final int STREAMING_BUFFER_SIZE = 500000;
+
     private Set<String> basePrefixes = new HashSet<>();
 
     public NormalizeCommand() {
@@ -68,17 +65,59 @@ public class NormalizeCommand extends BasePlugin {
         options.addOption(null, "base-iri", true, "inject declaration for properties in the indicated namespace(s)");
 
         options.addOption(null, "merge-axioms", true, "if true, merge logically equivalent axioms");
+        options.addOption(null, "merge-threads", true, "number of threads to use to process axioms");
 
         options.addOption(null, "add-source", true,
                 "if true, add a dc:source annotation from the ontology version IRI");
 
         options.addOption("a", "all", false, "perform all normalization operations available");
 
+        options.addOption(null, "streaming", true, "if true, normalize the --input file to the --output file "
+                + "without loading it in memory (must be the last command of a chain)");
+
         basePrefixes.add("http://purl.obolibrary.org/obo/");
         basePrefixes.add("http://www.ebi.ac.uk/efo/");
         basePrefixes.add("http://w3id/org/biolink/");
     }
 
+    @Override
+    public CommandState execute(CommandState state, String[] args) throws Exception {
+        CommandLine line = CommandLineHelper.getCommandLine(getUsage(), options, args);
+        if ( line == null ) {
+            return null;
+        }
+        if ( !CommandLineHelper.getBooleanValue(line, "streaming", false) ) {
+            return super.execute(state, args);
+        }
+
+        // Streaming mode: the ontology is never loaded, so this cannot be chained
+        // with any other command
+        if ( state != null && state.getOntology() != null ) {
+            throw new IllegalArgumentException(
+                    "Streaming mode cannot be used on the output of another command; use --input instead");
+        }
+        String input = line.getOptionValue("input");
+        String output = line.getOptionValue("output");
+        if ( input == null || output == null || !output.endsWith(".ofn") ) {
+            throw new IllegalArgumentException(
+                    "Streaming mode requires --input and --output with a functional syntax (.ofn) file");
+        }
+        if ( input.endsWith(".obo") || input.endsWith(".obo.gz") ) {
+            throw new IllegalArgumentException("Streaming mode requires an input file in functional syntax");
+        }
+
+        boolean defValue = line.hasOption("all");
+        StreamingNormalizer normalizer = new StreamingNormalizer(STREAMING_BUFFER_SIZE);
+        normalizer.setMergeAxioms(CommandLineHelper.getBooleanValue(line, "merge-axioms", defValue));
+        normalizer.setInjectDeclarations(basePrefixes,
+                CommandLineHelper.getBooleanValue(line, "subset-decls", defValue),
+                CommandLineHelper.getBooleanValue(line, "synonym-decls", defValue));
+        normalizer.setAddSource(CommandLineHelper.getBooleanValue(line, "add-source", false));
+        normalizer.normalize(new File(input), new File(output));
+
+        return new StreamedState();
+    }
+
     @Override
     public void performOperation(CommandState state, CommandLine line) throws Exception {
         boolean defValue = line.hasOption("all");
@@ -89,12 +128,21 @@ public class NormalizeCommand extends BasePlugin {
 
         OWLOntology ontology = state.getOntology();
 
+        // Merging shares the pass with declaration injection, but the latter only
+        // looks at the relevant axioms from the ontology's index
+        NormalizationPass pass = new NormalizationPass();
         if ( doMergeAxioms ) {
-            NormalizeCommand.mergeAxioms(ontology);
+            pass.addStep(new AxiomMerger());
         }
-
         if ( doSubsetDecls || doSynonymDecls ) {
-            NormalizeCommand.injectDeclarations(ontology, basePrefixes, doSubsetDecls, doSynonymDecls);
+            pass.addStep(new DeclarationInjector(basePrefixes, doSubsetDecls, doSynonymDecls));
+        }
+        if ( doMergeAxioms || doSubsetDecls || doSynonymDecls ) {
+            int nThreads = Runtime.getRuntime().availableProcessors();
+            if ( line.hasOption("merge-threads") ) {
+                nThreads = Integer.parseInt(line.getOptionValue("merge-threads"));
+            }
+            pass.run(ontology, nThreads);
         }
 
         if ( doInjectSource ) {
@@ -113,28 +161,39 @@ public class NormalizeCommand extends BasePlugin {
      * Merges all logically equivalent axioms in the given ontology. Logically
      * equivalent axioms, in the context of this command, refers to axioms that
      * differ only by their annotations.
+     * <p>
+     * Only the axioms that actually need to be merged are removed from the
+     * ontology (and replaced by their merged version); all the other axioms are
+     * left untouched. To know how many groups of axioms have been merged, run an
+     * {@link AxiomMerger} step directly and query its
+     * {@link AxiomMerger#getMergedGroups()} method.
      * 
      * @param ontology The ontology whose logically equivalent axioms are to be
      *                 merged. Axioms from the imports closure are <em>not</em>
      *                 processed.
      */
     public static void mergeAxioms(OWLOntology ontology) {
-        OWLOntologyManager mgr = ontology.getOWLOntologyManager();
-        Set<OWLAxiom> origAxioms = ontology.getAxioms(Imports.EXCLUDED);
-        Map<OWLAxiom, Set<OWLAnnotation>> annotsMap = new HashMap<>();
-
-        for ( OWLAxiom ax : origAxioms ) {
-            annotsMap.computeIfAbsent(ax.getAxiomWithoutAnnotations(), k -> new HashSet<>())
-                    .addAll(ax.getAnnotations());
-        }
-
-        Set<OWLAxiom> mergedAxioms = new HashSet<>();
-        for ( Map.Entry<OWLAxiom, Set<OWLAnnotation>> entry : annotsMap.entrySet() ) {
-            mergedAxioms.add(entry.getKey().getAnnotatedAxiom(entry.getValue()));
-        }
+        new NormalizationPass().addStep(new AxiomMerger()).run(ontology);
+    }
 
-        mgr.removeAxioms(ontology, origAxioms);
-        mgr.addAxioms(ontology, mergedAxioms);
+    /**
+     * Merges all logically equivalent axioms in the given ontology, using several
+     * threads.
+     * <p>
+     * Axioms of different types can never be equivalent, so the axioms of each
+     * type are grouped and merged independently of the others, on a pool of
+     * threads. The resulting ontology is the same regardless of the number of
+     * threads.
+     * 
+     * @param ontology The ontology whose logically equivalent axioms are to be
+     *                 merged. Axioms from the imports closure are <em>not</em>
+     *                 processed.
+     * @param nThreads The number of threads to use.
+     * @throws InterruptedException If the thread is interrupted while waiting for
+     *                              the axioms to be merged.
+     */
+    public static void mergeAxioms(OWLOntology ontology, int nThreads) throws InterruptedException {
+        new NormalizationPass().addStep(new AxiomMerger()).run(ontology, nThreads);
     }
 
     /**
@@ -156,71 +215,20 @@ public class NormalizeCommand extends BasePlugin {
      */
     public static void injectDeclarations(OWLOntology ontology, Set<String> prefixes, boolean forSubsets,
             boolean forSynonyms) {
-        Set<String> subsets = new HashSet<>();
-        Set<String> synonyms = new HashSet<>();
-
-        for ( OWLAxiom ax : ontology.getAxioms(Imports.EXCLUDED) ) {
-            if ( ax instanceof OWLAnnotationAssertionAxiom ) {
-                collectPropertyIRI(((OWLAnnotationAssertionAxiom) ax).getAnnotation(), prefixes, subsets, synonyms);
-            }
-            for ( OWLAnnotation annot : ax.getAnnotations() ) {
-                collectPropertyIRI(annot, prefixes, subsets, synonyms);
-            }
-        }
-
-        Set<OWLAxiom> newAxioms = new HashSet<>();
-        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
-        if ( forSubsets ) {
-            OWLAnnotationProperty parent = factory.getOWLAnnotationProperty(Constants.SUBSET_PROPERTY);
-            for ( String subset : subsets ) {
-                newAxioms.add(factory.getOWLSubAnnotationPropertyOfAxiom(
-                        factory.getOWLAnnotationProperty(IRI.create(subset)), parent));
-            }
-        }
-        if ( forSynonyms ) {
-            OWLAnnotationProperty parent = factory.getOWLAnnotationProperty(Constants.SYNONYM_TYPE_PROPERTY);
-            for ( String synonym : synonyms ) {
-                newAxioms.add(factory.getOWLSubAnnotationPropertyOfAxiom(
-                        factory.getOWLAnnotationProperty(IRI.create(synonym)), parent));
-            }
-        }
-
-        if ( !newAxioms.isEmpty() ) {
-            ontology.getOWLOntologyManager().addAxioms(ontology, newAxioms);
-        }
+        new DeclarationInjector(prefixes, forSubsets, forSynonyms).inject(ontology);
     }
 
     /*
-     * Helper method for injectDeclarations; given an annotation, checks if it
-     * declares a subset or a synonym type and collects its value in the appropriate
-     * set.
+     * The state returned after a streaming normalization. There is no ontology to
+     * pass down to the next command, so any command that follows fails
+     * immediately, instead of failing later because of a missing ontology.
      */
-    private static void collectPropertyIRI(OWLAnnotation annotation, Set<String> prefixes, Set<String> subsets,
-            Set<String> synonyms) {
-        if ( annotation.getValue().isIRI() ) {
-            IRI propIRI = annotation.getProperty().getIRI();
-            if ( propIRI.equals(Constants.IN_SUBSET) ) {
-                collectIRI(prefixes, subsets, annotation.getValue().asIRI().get().toString());
-            } else if ( propIRI.equals(Constants.HAS_SYNONYM_TYPE) ) {
-                collectIRI(prefixes, synonyms, annotation.getValue().asIRI().get().toString());
-            }
-        }
-    }
+    private static class StreamedState extends CommandState {
 
-    /*
-     * Helper method for injectDeclarations; checks if the value starts with one of
-     * the given prefixes, and if so adds it to the collection.
-     */
-    private static void collectIRI(Set<String> prefixes, Set<String> collection, String value) {
-        if ( prefixes == null ) {
-            collection.add(value);
-        } else {
-            for ( String base : prefixes ) {
-                if ( value.startsWith(base) ) {
-                    collection.add(value);
-                    break;
-                }
-            }
+        @Override
+        public OWLOntology getOntology() {
+            throw new IllegalArgumentException(
+                    "Streaming mode does not produce an ontology; odk:normalize must be the last command");
         }
     }
 }
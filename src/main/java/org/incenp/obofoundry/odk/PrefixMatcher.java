@@ -0,0 +1,169 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * A helper class to check whether IRIs belong to any of a set of namespaces.
+ * <p>
+ * The prefixes are compiled into a character trie, so that checking a value
+ * requires a single pass over its characters regardless of the number of
+ * prefixes, and does not allocate anything.
+ */
+public class PrefixMatcher {
+
+    private Node root = new Node();
+    private Set<String> prefixes = new TreeSet<>();
+
+    /**
+     * Creates a new matcher with no prefixes.
+     */
+    public PrefixMatcher() {
+    }
+
+    /**
+     * Creates a new matcher for the given prefixes.
+     * 
+     * @param prefixes The prefixes to match against.
+     */
+    public PrefixMatcher(Collection<String> prefixes) {
+        for ( String prefix : prefixes ) {
+            add(prefix);
+        }
+    }
+
+    /**
+     * Adds a prefix to match against.
+     * 
+     * @param prefix The prefix to add.
+     */
+    public void add(String prefix) {
+        Node node = root;
+        for ( int i = 0, n = prefix.length(); i < n; i++ ) {
+            node = node.getOrCreate(prefix.charAt(i));
+        }
+        node.terminal = true;
+        prefixes.add(prefix);
+    }
+
+    /**
+     * Gets the number of distinct prefixes in this matcher.
+     * 
+     * @return The number of prefixes.
+     */
+    public int size() {
+        return prefixes.size();
+    }
+
+    /**
+     * Indicates whether this matcher contains no prefixes at all.
+     * 
+     * @return {@code true} if no prefixes have been added, otherwise
+     *         {@code false}.
+     */
+    public boolean isEmpty() {
+        return prefixes.isEmpty();
+    }
+
+    /**
+     * Gets the prefixes in this matcher.
+     * 
+     * @return An unmodifiable view of the prefixes, in lexicographic order.
+     */
+    public Set<String> getPrefixes() {
+        return Collections.unmodifiableSet(prefixes);
+    }
+
+    /**
+     * Checks whether an IRI starts with any of the prefixes.
+     * 
+     * @param iri The IRI to check.
+     * @return {@code true} if the IRI starts with at least one of the prefixes,
+     *         otherwise {@code false}.
+     */
+    public boolean matches(IRI iri) {
+        return matches((CharSequence) iri);
+    }
+
+    /**
+     * Checks whether a string starts with any of the prefixes.
+     * 
+     * @param value The string to check.
+     * @return {@code true} if the value starts with at least one of the prefixes,
+     *         otherwise {@code false}.
+     */
+    public boolean matches(CharSequence value) {
+        Node node = root;
+        if ( node.terminal ) {
+            return true;
+        }
+        for ( int i = 0, n = value.length(); i < n; i++ ) {
+            node = node.get(value.charAt(i));
+            if ( node == null ) {
+                return false;
+            } else if ( node.terminal ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * A node in the trie. Children are stored in an array sorted by their
+     * character, and looked up by binary search.
+     */
+    private static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        boolean terminal = false;
+
+        Node get(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node getOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if ( i >= 0 ) {
+                return children[i];
+            }
+
+            i = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            newKeys[i] = c;
+            newChildren[i] = new Node();
+            keys = newKeys;
+            children = newChildren;
+
+            return newChildren[i];
+        }
+    }
+}
@@ -0,0 +1,665 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.incenp.obofoundry.odk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.functional.parser.OWLFunctionalSyntaxOWLParser;
+import org.semanticweb.owlapi.functional.renderer.FunctionalSyntaxObjectRenderer;
+import org.semanticweb.owlapi.io.OWLParserException;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Performs the normalization operations of {@link NormalizeCommand} on an
+ * ontology file, without ever loading the ontology in memory.
+ * <p>
+ * The input file (in OWL Functional Syntax) is first split into its top-level
+ * elements, without being parsed. The ontology header (ID, imports, and
+ * ontology annotations) is parsed on its own into an otherwise empty ontology,
+ * and the axioms are parsed by small batches, each batch into a temporary
+ * ontology that is discarded as soon as its axioms have been processed. Each
+ * axiom is rendered and handed to an {@link ExternalSorter}, and the IRIs
+ * needed to inject subset and synonym type declarations are collected on the
+ * fly. Logically equivalent axioms end up next to each other once sorted, so
+ * they can be merged as the sorted axioms are written to the output file. Only
+ * the ontology header, the current batch, and the collected IRIs are kept in
+ * memory.
+ * <p>
+ * Axioms are written in lexicographic order, after all declarations.
+ */
+public class StreamingNormalizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingNormalizer.class);
+
+    private static final Pattern PREFIX_PATTERN = Pattern.compile("\\s*([^=\\s]*)\\s*=\\s*<([^>]*)>\\s*");
+
+    // Number of axioms to parse at once
+    private static final int BATCH_SIZE = 1000;
+
+    // Separates the unannotated form of an axiom from one of its annotations in
+    // the sorted items; it sorts before any other character, so that all the
+    // annotations of an axiom immediately follow its unannotated form
+    private static final char SEPARATOR = '\0';
+
+    private int maxBuffered;
+    private boolean mergeAxioms;
+    private DeclarationInjector injector;
+    private boolean addSource;
+
+    private OWLOntologyManager manager;
+    private OWLOntology header;
+    private List<IRI> imports;
+    private FunctionalSyntaxDocumentFormat format;
+    private StringWriter buffer;
+    private FunctionalSyntaxObjectRenderer renderer;
+    private ExternalSorter sorter;
+    private Map<AxiomType<?>, NormalizationPass.Visitor> visitors;
+    private long nAxioms;
+    private long nWritten;
+
+    /**
+     * Creates a new instance. By default, no normalization operation is enabled.
+     * 
+     * @param maxBuffered The maximal number of rendered axioms to keep in memory
+     *                    before they are written to a temporary file.
+     */
+    public StreamingNormalizer(int maxBuffered) {
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Enables or disables the merging of logically equivalent axioms.
+     * 
+     * @param mergeAxioms {@code true} to merge axioms that differ only by their
+     *                    annotations.
+     */
+    public void setMergeAxioms(boolean mergeAxioms) {
+        this.mergeAxioms = mergeAxioms;
+    }
+
+    /**
+     * Enables the injection of declarations for subset and/or synonym type
+     * properties.
+     * 
+     * @param prefixes    A set of IRI prefixes; axioms will only be injected for
+     *                    IRIs that start with one of the given prefixes. May be
+     *                    {@code null} to force injecting axioms for all IRIs
+     *                    regardless of their namespace.
+     * @param forSubsets  If {@code true}, inject axioms to declare subset
+     *                    properties.
+     * @param forSynonyms If {@code true}, inject axioms to declare synonym type
+     *                    properties.
+     */
+    public void setInjectDeclarations(Set<String> prefixes, boolean forSubsets, boolean forSynonyms) {
+        injector = null;
+        if ( forSubsets || forSynonyms ) {
+            // There is no index to rely on, the IRIs must be collected from all axioms
+            injector = new DeclarationInjector(prefixes, forSubsets, forSynonyms);
+            injector.setUseIndex(false);
+        }
+    }
+
+    /**
+     * Enables or disables the injection of a {@code dc:source} ontology
+     * annotation derived from the version IRI.
+     * 
+     * @param addSource {@code true} to inject the annotation.
+     */
+    public void setAddSource(boolean addSource) {
+        this.addSource = addSource;
+    }
+
+    /**
+     * Normalizes an ontology file.
+     * 
+     * @param input  The file to read from. It must be in OWL Functional Syntax,
+     *               optionally compressed with GZip (if its name ends with
+     *               <code>.gz</code>).
+     * @param output The file to write the normalized ontology to, in OWL
+     *               Functional Syntax.
+     * @throws IOException                  If any I/O error occurs, or if the
+     *                                      input file cannot be parsed.
+     * @throws OWLOntologyCreationException If the OWLAPI cannot create the
+     *                                      objects needed by the parser and the
+     *                                      renderer.
+     */
+    public void normalize(File input, File output) throws IOException, OWLOntologyCreationException {
+        manager = OWLManager.createOWLOntologyManager();
+        header = manager.createOntology();
+        imports = new ArrayList<>();
+        format = new FunctionalSyntaxDocumentFormat();
+        buffer = new StringWriter();
+        renderer = new FunctionalSyntaxObjectRenderer(header, format, buffer);
+        sorter = new ExternalSorter(maxBuffered);
+        visitors = new HashMap<>();
+        nAxioms = 0;
+        nWritten = 0;
+
+        try {
+            try ( Reader reader = openReader(input) ) {
+                read(new ElementReader(reader));
+            } catch ( OWLParserException e ) {
+                throw new IOException("Cannot parse " + input + ": " + e.getMessage(), e);
+            }
+            logger.info("Read {} axioms from {} ({} temporary runs)", nAxioms, input, sorter.getRunCount());
+
+            if ( injector != null ) {
+                for ( NormalizationPass.Visitor visitor : visitors.values() ) {
+                    visitor.end();
+                }
+                Set<OWLAxiom> added = new HashSet<>();
+                injector.finish(header, new HashSet<>(), added);
+                for ( OWLAxiom axiom : added ) {
+                    add(axiom);
+                    declare(axiom.getSignature());
+                }
+            }
+            declare(header.getSignature());
+            if ( addSource && header.getOntologyID().getVersionIRI().isPresent() ) {
+                OWLDataFactory factory = manager.getOWLDataFactory();
+                declare(Collections.singleton(factory.getOWLAnnotationProperty(Constants.DC_SOURCE)));
+            }
+
+            try {
+                write(output);
+            } catch ( IOException | RuntimeException e ) {
+                // Do not leave a truncated output file behind
+                output.delete();
+                throw e;
+            }
+            logger.info("Wrote {} axioms to {}", nWritten, output);
+        } finally {
+            sorter.close();
+            sorter = null;
+            visitors = null;
+            manager = null;
+        }
+    }
+
+    /*
+     * Reads the prefix declarations and the ontology. The prefixes are used both
+     * when rendering the axioms and when parsing each part of the ontology.
+     */
+    private void read(ElementReader reader) throws IOException, OWLOntologyCreationException {
+        StringBuilder prefixes = new StringBuilder();
+        String name;
+        while ( (name = reader.next()) != null ) {
+            if ( name.equals("Prefix") && reader.hasArguments() ) {
+                String arguments = reader.readArguments();
+                Matcher m = PREFIX_PATTERN.matcher(arguments);
+                if ( !m.matches() ) {
+                    throw new OWLParserException("Invalid prefix declaration: " + arguments);
+                }
+                format.setPrefix(m.group(1), m.group(2));
+                prefixes.append("Prefix(").append(arguments).append(")\n");
+            } else if ( name.equals("Ontology") && reader.hasArguments() ) {
+                reader.enter();
+                readOntology(reader, prefixes.toString());
+            } else {
+                throw new OWLParserException("Unexpected element: " + name);
+            }
+        }
+    }
+
+    /*
+     * Reads the contents of the Ontology element. The header is parsed into the
+     * header ontology as soon as the first axiom is found; import declarations
+     * are only recorded, so that the imported ontologies are never loaded.
+     */
+    private void readOntology(ElementReader reader, String prefixes) throws IOException, OWLOntologyCreationException {
+        StringBuilder text = new StringBuilder();
+        boolean inHeader = true;
+        int nBatched = 0;
+        String name;
+        while ( !")".equals(name = reader.next()) ) {
+            if ( name == null ) {
+                throw new OWLParserException("Unexpected end of file");
+            }
+            if ( !reader.hasArguments() ) {
+                // Ontology IRI or version IRI
+                if ( !inHeader ) {
+                    throw new OWLParserException("Unexpected element: " + name);
+                }
+                text.append(name).append('\n');
+                continue;
+            }
+
+            String arguments = reader.readArguments();
+            if ( name.equals("Import") ) {
+                imports.add(resolveIRI(arguments.trim()));
+            } else if ( inHeader && name.equals("Annotation") ) {
+                text.append("Annotation(").append(arguments).append(")\n");
+            } else {
+                if ( inHeader ) {
+                    parse(prefixes, text, header);
+                    inHeader = false;
+                }
+                text.append(name).append('(').append(arguments).append(")\n");
+                if ( ++nBatched == BATCH_SIZE ) {
+                    parseAxioms(prefixes, text);
+                    nBatched = 0;
+                }
+            }
+        }
+
+        if ( inHeader ) {
+            parse(prefixes, text, header);
+        } else if ( nBatched > 0 ) {
+            parseAxioms(prefixes, text);
+        }
+        if ( (name = reader.next()) != null ) {
+            throw new OWLParserException("Unexpected element after the ontology: " + name);
+        }
+    }
+
+    /*
+     * Parses a batch of axioms into a temporary ontology, and processes them.
+     */
+    private void parseAxioms(String prefixes, StringBuilder text) throws IOException, OWLOntologyCreationException {
+        OWLOntology batch = manager.createOntology();
+        parse(prefixes, text, batch);
+        for ( OWLAxiom axiom : batch.getAxioms() ) {
+            process(axiom);
+        }
+        declare(batch.getSignature());
+        manager.removeOntology(batch);
+    }
+
+    /*
+     * Parses some elements of the Ontology element, as if they were the only ones,
+     * into the given ontology. The text is cleared afterwards.
+     */
+    private void parse(String prefixes, StringBuilder text, OWLOntology target) throws IOException {
+        text.insert(0, "Ontology(").insert(0, prefixes).append(')');
+        new OWLFunctionalSyntaxOWLParser().parse(new StringDocumentSource(text.toString()), target,
+                new OWLOntologyLoaderConfiguration());
+        text.setLength(0);
+    }
+
+    /*
+     * Resolves a full or abbreviated IRI, using the prefixes declared so far.
+     */
+    private IRI resolveIRI(String text) {
+        if ( text.startsWith("<") && text.endsWith(">") ) {
+            return IRI.create(text.substring(1, text.length() - 1));
+        }
+        int colon = text.indexOf(':');
+        String prefix = colon != -1 ? format.getPrefix(text.substring(0, colon + 1)) : null;
+        if ( prefix == null ) {
+            throw new OWLParserException("Cannot resolve IRI: " + text);
+        }
+        return IRI.create(prefix + text.substring(colon + 1));
+    }
+
+    /*
+     * Processes an axiom as soon as it has been parsed.
+     */
+    private void process(OWLAxiom axiom) throws IOException {
+        nAxioms += 1;
+        if ( injector != null ) {
+            visitors.computeIfAbsent(axiom.getAxiomType(), t -> injector.getVisitor(t)).visit(axiom);
+        }
+        add(axiom);
+    }
+
+    /*
+     * Queues declarations for the given entities. The OWLAPI declares all the
+     * entities of an ontology when writing it, whether the ontology has
+     * declaration axioms for them or not; since we cannot know whether an entity
+     * is declared until the entire file has been read, a declaration is queued
+     * for every entity used in a batch, and the duplicates are skipped when the
+     * sorted axioms are written.
+     */
+    private void declare(Set<OWLEntity> entities) throws IOException {
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        for ( OWLEntity entity : entities ) {
+            if ( !entity.isBuiltIn() ) {
+                add(factory.getOWLDeclarationAxiom(entity));
+            }
+        }
+    }
+
+    /*
+     * Renders an axiom and queues it for sorting. When merging, the unannotated
+     * form of the axiom is queued on its own, followed by each of its annotations
+     * prefixed by the unannotated form.
+     */
+    private void add(OWLAxiom axiom) throws IOException {
+        // Prefix every item with a sort key, so that declarations come first
+        char order = axiom.isOfType(AxiomType.DECLARATION) ? '0' : '1';
+        if ( !mergeAxioms ) {
+            sorter.add(order + render(axiom));
+            return;
+        }
+
+        String key = order + render(axiom.getAxiomWithoutAnnotations());
+        sorter.add(key);
+        for ( OWLAnnotation annotation : axiom.getAnnotations() ) {
+            buffer.getBuffer().setLength(0);
+            annotation.accept(renderer);
+            sorter.add(key + SEPARATOR + buffer.toString());
+        }
+    }
+
+    private String render(OWLAxiom axiom) {
+        buffer.getBuffer().setLength(0);
+        axiom.accept(renderer);
+        return buffer.toString();
+    }
+
+    /*
+     * Writes the header and all the sorted axioms to the output file.
+     */
+    private void write(File file) throws IOException {
+        try ( Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) ) {
+            for ( Map.Entry<String, String> prefix : format.getPrefixName2PrefixMap().entrySet() ) {
+                writer.write(String.format("Prefix(%s=<%s>)\n", prefix.getKey(), prefix.getValue()));
+            }
+
+            writer.write("\n\nOntology(");
+            OWLOntologyID id = header.getOntologyID();
+            IRI versionIRI = id.getVersionIRI().orNull();
+            if ( id.getOntologyIRI().isPresent() ) {
+                writer.write(id.getOntologyIRI().get().toQuotedString());
+                if ( versionIRI != null ) {
+                    writer.write('\n');
+                    writer.write(versionIRI.toQuotedString());
+                }
+            }
+            writer.write('\n');
+            for ( IRI importIRI : imports ) {
+                writer.write(String.format("Import(%s)\n", importIRI.toQuotedString()));
+            }
+            List<OWLAnnotation> annotations = new ArrayList<>(header.getAnnotations());
+            if ( addSource && versionIRI != null ) {
+                OWLDataFactory factory = manager.getOWLDataFactory();
+                annotations.add(factory.getOWLAnnotation(factory.getOWLAnnotationProperty(Constants.DC_SOURCE),
+                        versionIRI));
+            }
+            for ( OWLAnnotation annotation : annotations ) {
+                buffer.getBuffer().setLength(0);
+                annotation.accept(renderer);
+                writer.write(buffer.toString());
+                writer.write('\n');
+            }
+            writer.write('\n');
+
+            if ( mergeAxioms ) {
+                MergingWriter merger = new MergingWriter(writer);
+                sorter.drain(merger);
+                merger.flush();
+            } else {
+                sorter.drain(new DistinctWriter(writer));
+            }
+            writer.write(")\n");
+        }
+    }
+
+    /*
+     * Opens a file for reading, decompressing it on the fly if needed.
+     */
+    private static Reader openReader(File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        if ( file.getName().endsWith(".gz") ) {
+            stream = new GZIPInputStream(stream);
+        }
+        return new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Writes the sorted items, skipping duplicates (the same axiom may be found in
+     * several batches).
+     */
+    private class DistinctWriter implements ExternalSorter.ItemHandler {
+        private Writer writer;
+        private String previous;
+
+        DistinctWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void handle(String item) throws IOException {
+            if ( !item.equals(previous) ) {
+                writer.write(item, 1, item.length() - 1);
+                writer.write('\n');
+                nWritten += 1;
+                previous = item;
+            }
+        }
+    }
+
+    /*
+     * Writes the sorted items, merging the annotations of all the items that share
+     * the same unannotated axiom, and skipping duplicates.
+     */
+    private class MergingWriter implements ExternalSorter.ItemHandler {
+        private Writer writer;
+        private String current;
+        private List<String> annotations = new ArrayList<>();
+
+        MergingWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void handle(String item) throws IOException {
+            int sep = item.indexOf(SEPARATOR);
+            if ( sep == -1 ) {
+                if ( !item.equals(current) ) {
+                    flush();
+                    current = item;
+                }
+            } else {
+                String annotation = item.substring(sep + 1);
+                if ( annotations.isEmpty() || !annotations.get(annotations.size() - 1).equals(annotation) ) {
+                    annotations.add(annotation);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            if ( current == null ) {
+                return;
+            }
+
+            // In functional syntax, the annotations of any axiom come immediately
+            // after the opening parenthesis
+            int open = current.indexOf('(');
+            writer.write(current, 1, open);
+            for ( String annotation : annotations ) {
+                writer.write(annotation);
+                writer.write(' ');
+            }
+            writer.write(current, open + 1, current.length() - open - 1);
+            writer.write('\n');
+
+            nWritten += 1;
+            annotations.clear();
+            current = null;
+        }
+    }
+
+    /*
+     * Splits a functional syntax document into its elements, without parsing
+     * them. An element is either a single token (a name or a full IRI), or a name
+     * followed by its arguments within parentheses. Parentheses within quoted
+     * strings and full IRIs are not counted, and comments between elements are
+     * skipped.
+     */
+    private static class ElementReader {
+        private Reader reader;
+        private int next;
+
+        ElementReader(Reader reader) throws IOException {
+            this.reader = new BufferedReader(reader);
+            next = this.reader.read();
+        }
+
+        /*
+         * Reads the next token, which is either a name, a full IRI, or a closing
+         * parenthesis. Returns null at the end of the document.
+         */
+        String next() throws IOException {
+            skipBlanks();
+            if ( next == -1 ) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            if ( next == ')' ) {
+                next = reader.read();
+                return ")";
+            } else if ( next == '<' ) {
+                readIRI(sb);
+            } else {
+                while ( next != -1 && next != '(' && next != ')' && !Character.isWhitespace(next) ) {
+                    sb.append((char) next);
+                    next = reader.read();
+                }
+            }
+            return sb.toString();
+        }
+
+        /*
+         * Checks whether the last token read is followed by arguments.
+         */
+        boolean hasArguments() throws IOException {
+            skipBlanks();
+            return next == '(';
+        }
+
+        /*
+         * Skips the opening parenthesis of the arguments, so that they can be read
+         * as elements themselves.
+         */
+        void enter() throws IOException {
+            next = reader.read();
+        }
+
+        /*
+         * Reads the arguments of the current element, up to the matching closing
+         * parenthesis. Returns the text between the parentheses.
+         */
+        String readArguments() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int depth = 0;
+            next = reader.read();
+            while ( depth > 0 || next != ')' ) {
+                if ( next == -1 ) {
+                    throw new OWLParserException("Unexpected end of file");
+                } else if ( next == '"' ) {
+                    readString(sb);
+                    continue;
+                } else if ( next == '<' ) {
+                    readIRI(sb);
+                    continue;
+                } else if ( next == '(' ) {
+                    depth += 1;
+                } else if ( next == ')' ) {
+                    depth -= 1;
+                }
+                sb.append((char) next);
+                next = reader.read();
+            }
+            next = reader.read();
+            return sb.toString();
+        }
+
+        private void readString(StringBuilder sb) throws IOException {
+            sb.append((char) next);
+            while ( (next = reader.read()) != '"' ) {
+                if ( next == '\\' ) {
+                    sb.append((char) next);
+                    next = reader.read();
+                }
+                if ( next == -1 ) {
+                    throw new OWLParserException("Unterminated string");
+                }
+                sb.append((char) next);
+            }
+            sb.append((char) next);
+            next = reader.read();
+        }
+
+        private void readIRI(StringBuilder sb) throws IOException {
+            sb.append((char) next);
+            while ( (next = reader.read()) != '>' ) {
+                if ( next == -1 ) {
+                    throw new OWLParserException("Unterminated IRI");
+                }
+                sb.append((char) next);
+            }
+            sb.append((char) next);
+            next = reader.read();
+        }
+
+        private void skipBlanks() throws IOException {
+            while ( next != -1 ) {
+                if ( next == '#' ) {
+                    while ( next != -1 && next != '\n' ) {
+                        next = reader.read();
+                    }
+                } else if ( Character.isWhitespace(next) ) {
+                    next = reader.read();
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
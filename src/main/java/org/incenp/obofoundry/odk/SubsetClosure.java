@@ -0,0 +1,437 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+
+/**
+ * The closure of a subset, as computed by {@link SubsetExtractor}.
+ * <p>
+ * A closure records, for each round of the extraction, the classes the round
+ * started from, the classes that were added to the subset and the object and
+ * annotation properties that were used by the axioms of those classes. This is all that is needed to get the axioms
+ * of the subset again, without having to expand the subset (and to query the
+ * reasoner) again.
+ * <p>
+ * A closure can be saved to, and read back from, a compact binary file. The
+ * file contains a table of all the IRIs used in the closure, followed by the
+ * entities of each round represented as indexes into that table. It is read
+ * by mapping it into memory.
+ * <p>
+ * A closure also records how each entity of the subset was expanded, that is
+ * the entities it was found to refer to. This allows an extractor to update
+ * the subset after the ontology has changed while expanding again only the
+ * entities that are affected by the changes (see
+ * {@link SubsetExtractor#updateSubset(SubsetClosure, Set, Set, Set, Consumer)}).
+ */
+public class SubsetClosure {
+
+    private static final int MAGIC = 0x4f444b43; // "ODKC"
+    private static final int VERSION = 3;
+
+    private List<Round> rounds = new ArrayList<>();
+    private String settings = "";
+    private Map<OWLClass, Set<OWLClass>> classAncestors = new HashMap<>();
+    private Map<OWLClass, Set<OWLClass>> classReferences = new HashMap<>();
+    private Map<OWLObjectProperty, Set<OWLObjectProperty>> objectPropertyReferences = new HashMap<>();
+    private Map<OWLAnnotationProperty, Set<OWLAnnotationProperty>> annotationPropertyReferences = new HashMap<>();
+
+    /**
+     * Sets the description of the settings of the extractor that computed the
+     * closure.
+     * 
+     * @param settings The settings, as returned by
+     *                 {@link SubsetExtractor#getSettingsKey()}.
+     */
+    public void setSettings(String settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Gets the description of the settings of the extractor that computed the
+     * closure.
+     * 
+     * @return The settings, or an empty string if they are unknown.
+     */
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Adds a round to the closure.
+     * 
+     * @param seeds                The classes the round started from (the initial
+     *                             subset for the first round, the classes referred
+     *                             to by the properties of the previous round for
+     *                             the other rounds).
+     * @param classes              The classes added to the subset in that round.
+     * @param objectProperties     The object properties used in that round.
+     * @param annotationProperties The annotation properties used in that round.
+     */
+    public void addRound(Set<OWLClass> seeds, Set<OWLClass> classes, Set<OWLObjectProperty> objectProperties,
+            Set<OWLAnnotationProperty> annotationProperties) {
+        rounds.add(new Round(seeds, classes, objectProperties, annotationProperties));
+    }
+
+    /**
+     * Gets the number of rounds in the closure.
+     * 
+     * @return The number of rounds.
+     */
+    public int getRoundCount() {
+        return rounds.size();
+    }
+
+    /**
+     * Gets the classes a given round started from.
+     * 
+     * @param round The round number (starting from zero).
+     * @return The classes that were the starting point of that round.
+     */
+    public Set<OWLClass> getSeeds(int round) {
+        return rounds.get(round).seeds;
+    }
+
+    /**
+     * Gets the classes added to the subset in a given round.
+     * 
+     * @param round The round number (starting from zero).
+     * @return The classes added in that round.
+     */
+    public Set<OWLClass> getClasses(int round) {
+        return rounds.get(round).classes;
+    }
+
+    /**
+     * Gets the object properties used in a given round.
+     * 
+     * @param round The round number (starting from zero).
+     * @return The object properties used in that round.
+     */
+    public Set<OWLObjectProperty> getObjectProperties(int round) {
+        return rounds.get(round).objectProperties;
+    }
+
+    /**
+     * Gets the annotation properties used in a given round.
+     * 
+     * @param round The round number (starting from zero).
+     * @return The annotation properties used in that round.
+     */
+    public Set<OWLAnnotationProperty> getAnnotationProperties(int round) {
+        return rounds.get(round).annotationProperties;
+    }
+
+    /**
+     * Records how a class was expanded.
+     * 
+     * @param klass      The expanded class.
+     * @param ancestors  The inferred ancestors of the class.
+     * @param references The classes referred to by the axioms of the class.
+     */
+    public void addClassExpansion(OWLClass klass, Set<OWLClass> ancestors, Set<OWLClass> references) {
+        classAncestors.put(klass, ancestors);
+        classReferences.put(klass, references);
+    }
+
+    /**
+     * Records how an object property was expanded.
+     * 
+     * @param property   The expanded property.
+     * @param references The properties referred to by the property.
+     */
+    public void addObjectPropertyExpansion(OWLObjectProperty property, Set<OWLObjectProperty> references) {
+        objectPropertyReferences.put(property, references);
+    }
+
+    /**
+     * Records how an annotation property was expanded.
+     * 
+     * @param property   The expanded property.
+     * @param references The properties referred to by the property.
+     */
+    public void addAnnotationPropertyExpansion(OWLAnnotationProperty property,
+            Set<OWLAnnotationProperty> references) {
+        annotationPropertyReferences.put(property, references);
+    }
+
+    /**
+     * Gets the inferred ancestors of all the expanded classes.
+     * 
+     * @return A map associating each expanded class to its ancestors.
+     */
+    public Map<OWLClass, Set<OWLClass>> getClassAncestors() {
+        return classAncestors;
+    }
+
+    /**
+     * Gets the classes referred to by all the expanded classes.
+     * 
+     * @return A map associating each expanded class to the classes it refers to.
+     */
+    public Map<OWLClass, Set<OWLClass>> getClassReferences() {
+        return classReferences;
+    }
+
+    /**
+     * Gets the properties referred to by all the expanded object properties.
+     * 
+     * @return A map associating each expanded property to the properties it
+     *         refers to.
+     */
+    public Map<OWLObjectProperty, Set<OWLObjectProperty>> getObjectPropertyReferences() {
+        return objectPropertyReferences;
+    }
+
+    /**
+     * Gets the properties referred to by all the expanded annotation properties.
+     * 
+     * @return A map associating each expanded property to the properties it
+     *         refers to.
+     */
+    public Map<OWLAnnotationProperty, Set<OWLAnnotationProperty>> getAnnotationPropertyReferences() {
+        return annotationPropertyReferences;
+    }
+
+    /**
+     * Writes the closure to a file.
+     * 
+     * @param file The file to write to.
+     * @throws IOException If any I/O error occurs.
+     */
+    public void write(File file) throws IOException {
+        // Build the table of IRIs
+        Map<IRI, Integer> table = new HashMap<>();
+        List<IRI> iris = new ArrayList<>();
+        for ( Round round : rounds ) {
+            addToTable(table, iris, round.seeds);
+            addToTable(table, iris, round.classes);
+            addToTable(table, iris, round.objectProperties);
+            addToTable(table, iris, round.annotationProperties);
+        }
+        for ( Map.Entry<OWLClass, Set<OWLClass>> entry : classAncestors.entrySet() ) {
+            addToTable(table, iris, Collections.singleton(entry.getKey()));
+            addToTable(table, iris, entry.getValue());
+            addToTable(table, iris, classReferences.get(entry.getKey()));
+        }
+        addToTable(table, iris, objectPropertyReferences);
+        addToTable(table, iris, annotationPropertyReferences);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, settings);
+            out.writeInt(iris.size());
+            for ( IRI iri : iris ) {
+                writeString(out, iri.toString());
+            }
+            out.writeInt(rounds.size());
+            for ( Round round : rounds ) {
+                writeEntities(out, table, round.seeds);
+                writeEntities(out, table, round.classes);
+                writeEntities(out, table, round.objectProperties);
+                writeEntities(out, table, round.annotationProperties);
+            }
+            out.writeInt(classAncestors.size());
+            for ( Map.Entry<OWLClass, Set<OWLClass>> entry : classAncestors.entrySet() ) {
+                out.writeInt(table.get(entry.getKey().getIRI()));
+                writeEntities(out, table, entry.getValue());
+                writeEntities(out, table, classReferences.get(entry.getKey()));
+            }
+            writeReferences(out, table, objectPropertyReferences);
+            writeReferences(out, table, annotationPropertyReferences);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a closure from a file.
+     * 
+     * @param file    The file to read from.
+     * @param factory The data factory to use to create the entities.
+     * @return The closure.
+     * @throws IOException If any I/O error occurs, or if the file is not a valid
+     *                     closure file.
+     */
+    public static SubsetClosure read(File file, OWLDataFactory factory) throws IOException {
+        try ( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != VERSION ) {
+                throw new IOException("Invalid or unsupported closure file: " + file);
+            }
+
+            SubsetClosure closure = new SubsetClosure();
+            closure.settings = readString(buffer);
+            IRI[] iris = new IRI[readCount(buffer)];
+            for ( int i = 0; i < iris.length; i++ ) {
+                iris[i] = IRI.create(readString(buffer));
+            }
+
+            int nRounds = buffer.getInt();
+            for ( int i = 0; i < nRounds; i++ ) {
+                Set<OWLClass> seeds = readEntities(buffer, iris, factory::getOWLClass);
+                Set<OWLClass> classes = readEntities(buffer, iris, factory::getOWLClass);
+                Set<OWLObjectProperty> objectProperties = readEntities(buffer, iris, factory::getOWLObjectProperty);
+                Set<OWLAnnotationProperty> annotationProperties = readEntities(buffer, iris,
+                        factory::getOWLAnnotationProperty);
+                closure.addRound(seeds, classes, objectProperties, annotationProperties);
+            }
+            int nExpanded = buffer.getInt();
+            for ( int i = 0; i < nExpanded; i++ ) {
+                OWLClass klass = factory.getOWLClass(iris[buffer.getInt()]);
+                Set<OWLClass> ancestors = readEntities(buffer, iris, factory::getOWLClass);
+                closure.addClassExpansion(klass, ancestors, readEntities(buffer, iris, factory::getOWLClass));
+            }
+            closure.objectPropertyReferences = readReferences(buffer, iris, factory::getOWLObjectProperty);
+            closure.annotationPropertyReferences = readReferences(buffer, iris, factory::getOWLAnnotationProperty);
+
+            return closure;
+        } catch ( RuntimeException e ) {
+            // Most likely a BufferUnderflowException from a truncated file
+            throw new IOException("Invalid closure file: " + file, e);
+        }
+    }
+
+    private static void addToTable(Map<IRI, Integer> table, List<IRI> iris, Set<? extends OWLEntity> entities) {
+        for ( OWLEntity entity : entities ) {
+            if ( !table.containsKey(entity.getIRI()) ) {
+                table.put(entity.getIRI(), iris.size());
+                iris.add(entity.getIRI());
+            }
+        }
+    }
+
+    private static <T extends OWLEntity> void addToTable(Map<IRI, Integer> table, List<IRI> iris,
+            Map<T, Set<T>> references) {
+        for ( Map.Entry<T, Set<T>> entry : references.entrySet() ) {
+            addToTable(table, iris, Collections.singleton(entry.getKey()));
+            addToTable(table, iris, entry.getValue());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if ( length < 0 || length > buffer.remaining() ) {
+            // Do not try to allocate a huge array for a corrupted length
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Reads the number of items in a list. Each item takes at least 4 bytes, so a
+     * count that does not fit in the remaining bytes means the file is truncated
+     * or corrupted.
+     */
+    private static int readCount(MappedByteBuffer buffer) {
+        int n = buffer.getInt();
+        if ( n < 0 || n > buffer.remaining() / 4 ) {
+            throw new BufferUnderflowException();
+        }
+        return n;
+    }
+
+    private static <T extends OWLEntity> void writeReferences(DataOutputStream out, Map<IRI, Integer> table,
+            Map<T, Set<T>> references) throws IOException {
+        out.writeInt(references.size());
+        for ( Map.Entry<T, Set<T>> entry : references.entrySet() ) {
+            out.writeInt(table.get(entry.getKey().getIRI()));
+            writeEntities(out, table, entry.getValue());
+        }
+    }
+
+    private static <T extends OWLEntity> Map<T, Set<T>> readReferences(MappedByteBuffer buffer, IRI[] iris,
+            Function<IRI, T> creator) {
+        int n = buffer.getInt();
+        Map<T, Set<T>> references = new HashMap<>();
+        for ( int i = 0; i < n; i++ ) {
+            T entity = creator.apply(iris[buffer.getInt()]);
+            references.put(entity, readEntities(buffer, iris, creator));
+        }
+        return references;
+    }
+
+    private static void writeEntities(DataOutputStream out, Map<IRI, Integer> table,
+            Set<? extends OWLEntity> entities) throws IOException {
+        out.writeInt(entities.size());
+        for ( OWLEntity entity : entities ) {
+            out.writeInt(table.get(entity.getIRI()));
+        }
+    }
+
+    private static <T extends OWLEntity> Set<T> readEntities(MappedByteBuffer buffer, IRI[] iris,
+            Function<IRI, T> creator) {
+        int n = buffer.getInt();
+        Set<T> entities = new HashSet<>();
+        for ( int i = 0; i < n; i++ ) {
+            entities.add(creator.apply(iris[buffer.getInt()]));
+        }
+        return entities;
+    }
+
+    private static class Round {
+        Set<OWLClass> seeds;
+        Set<OWLClass> classes;
+        Set<OWLObjectProperty> objectProperties;
+        Set<OWLAnnotationProperty> annotationProperties;
+
+        Round(Set<OWLClass> seeds, Set<OWLClass> classes, Set<OWLObjectProperty> objectProperties,
+                Set<OWLAnnotationProperty> annotationProperties) {
+            this.seeds = seeds;
+            this.classes = classes;
+            this.objectProperties = objectProperties;
+            this.annotationProperties = annotationProperties;
+        }
+    }
+}
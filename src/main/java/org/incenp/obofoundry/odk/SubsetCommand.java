@@ -18,28 +18,52 @@
 
 package org.incenp.obofoundry.odk;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
 import org.obolibrary.robot.CommandLineHelper;
 import org.obolibrary.robot.CommandState;
 import org.obolibrary.robot.QuotedEntityChecker;
 import org.obolibrary.robot.providers.CURIEShortFormProvider;
+import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.manchestersyntax.parser.ManchesterOWLSyntaxClassExpressionParser;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLClassExpression;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyID;
-import org.semanticweb.owlapi.model.SetOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
 
 /**
  * A command to create an ontology subset.
@@ -56,43 +80,179 @@ public class SubsetCommand extends BasePlugin {
 
     private static final Logger logger = LoggerFactory.getLogger(SubsetCommand.class);
 
+    // Number of rendered axioms to keep in memory when writing in streaming mode
+    private static final int STREAMING_BUFFER_SIZE = 500000;
+
+    private Options subsetOptions;
+    private ManchesterOWLSyntaxClassExpressionParser queryParser;
+    private String queryParserKey;
+    private FileCache labelCache;
+    private DLQueryEvaluator queryEvaluator;
+    private FileCache closureCache;
+    private String fingerprint;
+    private String reasonerName;
+    private Set<OWLAxiom> addedAxioms;
+    private Set<OWLAxiom> removedAxioms;
+
     public SubsetCommand() {
         super("subset", "extract an ontology subset",
-                "robot subset [--query DL-QUERY | --subset TERM | --term TERM-FILE]");
+                "robot subset [--query DL-QUERY | --subset TERM | --term TERM-FILE | --batch SPEC-FILE]");
 
         options.addOption("r", "reasoner", true, "reasoner to use");
+        options.addOption(null, "told-hierarchy", true,
+                "if true, use the asserted hierarchy of the ontology instead of a reasoner");
         options.addOption("c", "collapse-imports-closure", true,
                 "if true (default), include axioms from imported modules");
 
-        options.addOption("q", "query", true, "include the results of the given DL query in the subset");
-        options.addOption("a", "ancestors", true, "if true, include ancestors of classes retrieved by the DL query");
-        options.addOption("t", "term", true, "include the given class in the subset");
-        options.addOption("T", "term-file", true, "include the classes listed in the given file in the subset");
-        options.addOption("s", "subset", true, "include classes tagged with the specified subset property");
+        subsetOptions = new Options();
+        subsetOptions.addOption("q", "query", true, "include the results of the given DL query in the subset");
+        subsetOptions.addOption("a", "ancestors", true,
+                "if true, include ancestors of classes retrieved by the DL query");
+        subsetOptions.addOption("t", "term", true, "include the given class in the subset");
+        subsetOptions.addOption("T", "term-file", true, "include the classes listed in the given file in the subset");
+        subsetOptions.addOption("s", "subset", true, "include classes tagged with the specified subset property");
 
-        options.addOption("f", "fill-gaps", true, "if true, fill gaps to closure");
-        options.addOption(null, "no-dangling", true, "if true (default), exclude dangling classes when filling gaps");
-        options.addOption(null, "follow-property", true,
+        subsetOptions.addOption("f", "fill-gaps", true, "if true, fill gaps to closure");
+        subsetOptions.addOption(null, "no-dangling", true,
+                "if true (default), exclude dangling classes when filling gaps");
+        subsetOptions.addOption(null, "follow-property", true,
                 "when filling gaps, only follow relations that use the given property");
-        options.addOption(null, "follow-in", true, "when filling gaps, only include classes in the given prefix");
-        options.addOption(null, "not-follow-in", true, "when filling gaps, exclude classes in the given prefix");
+        subsetOptions.addOption(null, "follow-in", true, "when filling gaps, only include classes in the given prefix");
+        subsetOptions.addOption(null, "not-follow-in", true,
+                "when filling gaps, exclude classes in the given prefix");
+
+        subsetOptions.addOption(null, "max-rounds", true, "abort the extraction after the given number of rounds");
+        subsetOptions.addOption(null, "max-classes", true,
+                "abort the extraction if the subset exceeds the given number of classes");
+        subsetOptions.addOption(null, "max-axioms", true,
+                "abort the extraction if the subset exceeds the given number of axioms");
+        subsetOptions.addOption(null, "time-limit", true,
+                "abort the extraction if it takes more than the given number of seconds");
+
+        subsetOptions.addOption(null, "write-to", true, "write the subset to the specified file");
+        subsetOptions.addOption(null, "ontology-iri", true, "set the ontology IRI of the subset");
+        subsetOptions.addOption(null, "streaming-output", true,
+                "if true, write the subset to the --write-to file while it is being extracted");
+        subsetOptions.addOption(null, "save-closure", true, "save the closure of the subset to the specified file");
+        subsetOptions.addOption(null, "previous-closure", true,
+                "update the subset from the closure saved by a previous extraction");
+        subsetOptions.addOption(null, "metrics-output", true,
+                "write performance metrics of the extraction to the specified JSON file");
+
+        for ( Option option : subsetOptions.getOptions() ) {
+            options.addOption(option);
+        }
+
+        options.addOption(null, "batch", true, "extract all the subsets defined in the specified file");
+        options.addOption(null, "batch-threads", true, "number of subsets to extract in parallel in batch mode");
+
+        options.addOption(null, "query-threads", true, "number of DL queries to evaluate in parallel");
+        options.addOption(null, "label-cache", true,
+                "cache the label index used by DL queries in the specified directory");
 
-        options.addOption(null, "write-to", true, "write the subset to the specified file");
-        options.addOption(null, "ontology-iri", true, "set the ontology IRI of the subset");
+        options.addOption(null, "closure-cache", true, "cache subset closures in the specified directory");
+        options.addOption(null, "hierarchy-cache", true, "cache inferred hierarchies in the specified directory");
+        options.addOption(null, "rebuild-hierarchy-cache", true,
+                "if true, ignore any cached hierarchies and classify the ontology again");
+        options.addOption(null, "added-axioms", true,
+                "for incremental extraction, the axioms added to the ontology since the previous extraction");
+        options.addOption(null, "removed-axioms", true,
+                "for incremental extraction, the axioms removed from the ontology since the previous extraction");
     }
 
     @Override
     public void performOperation(CommandState state, CommandLine line) throws Exception {
         OWLOntology ontology = state.getOntology();
+        OWLReasonerFactory reasonerFactory = CommandLineHelper.getReasonerFactory(line);
+
+        // The reasoner is only created if we really need it
+        Supplier<OWLReasoner> reasoner = Suppliers
+                .memoize(() -> reasonerFactory.createNonBufferingReasoner(ontology));
+        boolean toldHierarchy = CommandLineHelper.getBooleanValue(line, "told-hierarchy", false);
+        reasonerName = toldHierarchy ? "TOLD" : line.getOptionValue("reasoner", "ELK").toUpperCase();
+        if ( line.hasOption("closure-cache") || line.hasOption("hierarchy-cache")
+                || line.hasOption("label-cache") ) {
+            fingerprint = Util.getFingerprint(ontology, Imports.INCLUDED);
+        } else {
+            fingerprint = null;
+        }
+
+        InferredHierarchies hierarchies;
+        if ( toldHierarchy ) {
+            // Building the asserted hierarchies is cheap enough, no need for a cache
+            hierarchies = InferredHierarchies.fromAssertedAxioms(ontology);
+        } else if ( line.hasOption("hierarchy-cache") ) {
+            FileCache cache = new FileCache(new File(line.getOptionValue("hierarchy-cache")));
+            String key = FileCache.makeKey("hierarchy", fingerprint, reasonerName);
+            hierarchies = InferredHierarchies.fromCache(cache, key, ontology, reasoner,
+                    CommandLineHelper.getBooleanValue(line, "rebuild-hierarchy-cache", false));
+        } else {
+            // Shared between the extractor and the DL query evaluator
+            hierarchies = InferredHierarchies.fromReasoner(reasoner);
+        }
+
+        SubsetExtractor extractor = new SubsetExtractor(ontology, reasoner, hierarchies);
+        extractor.includeImports(CommandLineHelper.getBooleanValue(line, "collapse-imports-closure", true));
+
+        addedAxioms = null;
+        removedAxioms = null;
+        if ( line.hasOption("added-axioms") || line.hasOption("removed-axioms") ) {
+            addedAxioms = loadChanges(line, "added-axioms");
+            removedAxioms = loadChanges(line, "removed-axioms");
+            logger.info("Ontology has changed by {} added and {} removed axioms", addedAxioms.size(),
+                    removedAxioms.size());
+        }
+
+        int nQueryThreads = Runtime.getRuntime().availableProcessors();
+        if ( line.hasOption("query-threads") ) {
+            nQueryThreads = Integer.parseInt(line.getOptionValue("query-threads"));
+        }
+        if ( toldHierarchy ) {
+            queryEvaluator = new DLQueryEvaluator(hierarchies, nQueryThreads);
+        } else {
+            queryEvaluator = new DLQueryEvaluator(ontology, reasoner, hierarchies, nQueryThreads);
+        }
+        labelCache = null;
+        if ( line.hasOption("label-cache") ) {
+            labelCache = new FileCache(new File(line.getOptionValue("label-cache")));
+        }
+        resetQueryParser();
+
+        closureCache = null;
+        if ( line.hasOption("closure-cache") ) {
+            closureCache = new FileCache(new File(line.getOptionValue("closure-cache")));
+        }
+
+        if ( line.hasOption("batch") ) {
+            int nThreads = Runtime.getRuntime().availableProcessors();
+            if ( line.hasOption("batch-threads") ) {
+                nThreads = Integer.parseInt(line.getOptionValue("batch-threads"));
+            }
+            runBatch(extractor, readBatchFile(line.getOptionValue("batch")), nThreads);
+            return;
+        }
+
+        Set<OWLClass> subset = setupSubset(extractor, line);
+        OWLOntology subsetOntology = extractSubset(extractor, subset, line, false);
+        if ( subsetOntology != null ) {
+            state.setOntology(subsetOntology);
+        }
+    }
+
+    /*
+     * Configures the extractor and computes the initial subset according to the
+     * given subset definition. This must be called from the main thread, as it may
+     * use the reasoner and the ROBOT IOHelper without any synchronization.
+     */
+    private Set<OWLClass> setupSubset(SubsetExtractor extractor, CommandLine line)
+            throws IOException, InterruptedException {
+        OWLOntology ontology = extractor.getOntology();
         OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
-        OWLReasoner reasoner = CommandLineHelper.getReasonerFactory(line).createNonBufferingReasoner(ontology);
-        boolean useImports = CommandLineHelper.getBooleanValue(line, "collapse-imports-closure", true);
+        boolean useImports = extractor.isIncludingImports();
 
         // Setting up the extractor
-        SubsetExtractor extractor = new SubsetExtractor(ontology, reasoner);
         extractor.setFillGaps(CommandLineHelper.getBooleanValue(line, "fill-gaps", false));
         extractor.setExcludeDangling(CommandLineHelper.getBooleanValue(line, "no-dangling", true));
-        extractor.includeImports(useImports);
         if ( line.hasOption("follow-property") ) {
             for ( String property : line.getOptionValues("follow-property") ) {
                 extractor.followProperty(getIRI(property, "follow-property"));
@@ -108,29 +268,37 @@ public class SubsetCommand extends BasePlugin {
                 extractor.excludePrefix(prefix);
             }
         }
+        if ( line.hasOption("max-rounds") ) {
+            extractor.setMaxRounds(Integer.parseInt(line.getOptionValue("max-rounds")));
+        }
+        if ( line.hasOption("max-classes") ) {
+            extractor.setMaxClasses(Integer.parseInt(line.getOptionValue("max-classes")));
+        }
+        if ( line.hasOption("max-axioms") ) {
+            extractor.setMaxAxioms(Long.parseLong(line.getOptionValue("max-axioms")));
+        }
+        if ( line.hasOption("time-limit") ) {
+            extractor.setTimeLimit(Long.parseLong(line.getOptionValue("time-limit")) * 1000);
+        }
 
         // Setting up the initial subset
         Set<OWLClass> subset = new HashSet<>();
 
         // 1. From a DL query
         if ( line.hasOption("query") ) {
-            QuotedEntityChecker checker = new QuotedEntityChecker();
-            checker.addProperty(factory.getRDFSLabel());
-            checker.addProvider(new CURIEShortFormProvider(ioHelper.getPrefixes()));
-            checker.addAll(ontology);
-            ManchesterOWLSyntaxClassExpressionParser p = new ManchesterOWLSyntaxClassExpressionParser(factory, checker);
             boolean withAncestors = line.getOptionValue("ancestors", "false").equals("true");
+            List<OWLClassExpression> queries = parseQueries(ontology, line);
+            queryEvaluator.evaluate(queries, withAncestors);
 
-            for ( String query : line.getOptionValues("query") ) {
-                OWLClassExpression expr = p.parse(query);
+            for ( OWLClassExpression expr : queries ) {
                 if ( expr.isNamed() ) {
                     subset.add(expr.asOWLClass());
                     logger.debug("Adding queried class {}", expr.asOWLClass().getIRI());
                 }
-                addToSubset(subset, reasoner.getSubClasses(expr, false).getFlattened(), "Adding subclass {}");
-                addToSubset(subset, reasoner.getEquivalentClasses(expr).getEntities(), "Adding equivalent class {}");
+                addToSubset(subset, queryEvaluator.getSubClasses(expr), "Adding subclass {}");
+                addToSubset(subset, queryEvaluator.getEquivalentClasses(expr), "Adding equivalent class {}");
                 if ( withAncestors ) {
-                    addToSubset(subset, reasoner.getSuperClasses(expr, false).getFlattened(), "Adding superclass {}");
+                    addToSubset(subset, queryEvaluator.getSuperClasses(expr), "Adding superclass {}");
                 }
             }
         }
@@ -166,22 +334,337 @@ public class SubsetCommand extends BasePlugin {
             }
         }
 
-        // Actual extraction
+        return subset;
+    }
+
+    /*
+     * Forgets the parser for DL queries from a previous invocation of the command,
+     * unless it is known to be valid for the current ontology and prefixes.
+     */
+    private void resetQueryParser() {
+        String key = null;
+        if ( fingerprint != null ) {
+            List<String> prefixes = new ArrayList<>();
+            for ( Map.Entry<String, String> prefix : ioHelper.getPrefixes().entrySet() ) {
+                prefixes.add(prefix.getKey() + " " + prefix.getValue());
+            }
+            Collections.sort(prefixes);
+            key = FileCache.makeKey("labels", fingerprint, String.join(" ", prefixes));
+        }
+        if ( key == null || !key.equals(queryParserKey) ) {
+            queryParser = null;
+        }
+        queryParserKey = key;
+    }
+
+    /*
+     * Gets the parser for DL queries, creating it if needed. The label index it
+     * needs is loaded from the --label-cache directory if possible.
+     */
+    private ManchesterOWLSyntaxClassExpressionParser getQueryParser(OWLOntology ontology) throws IOException {
+        if ( queryParser == null ) {
+            OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+            CURIEShortFormProvider provider = new CURIEShortFormProvider(ioHelper.getPrefixes());
+            LabelIndex index;
+            if ( labelCache != null ) {
+                index = LabelIndex.fromCache(labelCache, queryParserKey, ontology, factory.getRDFSLabel(),
+                        provider);
+            } else {
+                index = LabelIndex.fromOntology(ontology, factory.getRDFSLabel(), provider);
+            }
+
+            QuotedEntityChecker checker = new QuotedEntityChecker();
+            checker.addProperty(factory.getRDFSLabel());
+            checker.addProvider(provider);
+            index.addTo(checker);
+            queryParser = new ManchesterOWLSyntaxClassExpressionParser(factory, checker);
+        }
+        return queryParser;
+    }
+
+    /*
+     * Parses all the DL queries of a subset definition, so that any syntax error
+     * is reported before any query is evaluated.
+     */
+    private List<OWLClassExpression> parseQueries(OWLOntology ontology, CommandLine line) throws IOException {
+        List<OWLClassExpression> queries = new ArrayList<>();
+        if ( line.hasOption("query") ) {
+            ManchesterOWLSyntaxClassExpressionParser parser = getQueryParser(ontology);
+            for ( String query : line.getOptionValues("query") ) {
+                queries.add(parser.parse(query));
+            }
+        }
+        return queries;
+    }
+
+    /*
+     * Extracts the subset and writes it to the --write-to file, if any. Returns the
+     * subset ontology if it was not written anywhere. In batch mode, the subset is
+     * created in its own ontology manager.
+     */
+    private OWLOntology extractSubset(SubsetExtractor extractor, Set<OWLClass> subset, CommandLine line,
+            boolean batch) throws Exception {
         logger.info("Creating ontology from initial subset of {} classes", subset.size());
-        OWLOntology subsetOntology = extractor.makeSubset(subset);
+        IRI ontologyIRI = null;
         if ( line.hasOption("ontology-iri") ) {
-            Optional<IRI> ontologyIRI = Optional.of(getIRI(line.getOptionValue("ontology-iri"), "ontology-iri"));
-            OWLOntologyID id = new OWLOntologyID(ontologyIRI, Optional.absent());
-            SetOntologyID change = new SetOntologyID(subsetOntology, id);
-            subsetOntology.getOWLOntologyManager().applyChange(change);
+            ontologyIRI = getIRI(line.getOptionValue("ontology-iri"), "ontology-iri");
+        }
+
+        if ( CommandLineHelper.getBooleanValue(line, "streaming-output", false) ) {
+            // Streaming mode: the subset is never built in memory
+            String output = line.getOptionValue("write-to");
+            if ( output == null || !output.endsWith(".ofn") ) {
+                throw new IllegalArgumentException(
+                        "Streaming output requires --write-to with a functional syntax (.ofn) file");
+            }
+            FunctionalSyntaxWriter writer = new FunctionalSyntaxWriter(new File(output), ontologyIRI,
+                    STREAMING_BUFFER_SIZE);
+            try {
+                makeSubset(extractor, subset, writer, line);
+            } catch ( Exception e ) {
+                // Nothing has been written to the output file yet
+                writer.discard();
+                throw e;
+            }
+            writer.close();
+            return null;
         }
 
+        Set<OWLAxiom> axioms = new HashSet<>();
+        makeSubset(extractor, subset, axioms::add, line);
+        OWLOntologyManager manager = extractor.getOntology().getOWLOntologyManager();
+        if ( batch ) {
+            // The manager of the source ontology is not thread-safe, and several
+            // subsets may be extracted concurrently (possibly with the same ontology
+            // IRI), so each subset gets its own manager, configured as the original one
+            OWLOntologyManager sourceManager = manager;
+            manager = OWLManager.createOWLOntologyManager();
+            manager.setOntologyLoaderConfiguration(sourceManager.getOntologyLoaderConfiguration());
+        }
+        OWLOntology subsetOntology = manager.createOntology(
+                new OWLOntologyID(Optional.fromNullable(ontologyIRI), Optional.absent()));
+        manager.addAxioms(subsetOntology, axioms);
+
         // Output
         if ( line.hasOption("write-to") ) {
-            ioHelper.saveOntology(subsetOntology, line.getOptionValue("write-to"));
-        } else {
-            state.setOntology(subsetOntology);
+            // The IOHelper is shared by all subsets and is not thread-safe
+            synchronized ( ioHelper ) {
+                ioHelper.saveOntology(subsetOntology, line.getOptionValue("write-to"));
+            }
+            manager.removeOntology(subsetOntology);
+            return null;
+        }
+        return subsetOntology;
+    }
+
+    /*
+     * Performs the actual extraction, using a cached closure if there is one that
+     * matches the ontology, the settings of the extractor, and the initial subset;
+     * otherwise, the closure is computed (incrementally from a previous closure, if
+     * one has been specified) and stored in the cache for next time.
+     */
+    private void makeSubset(SubsetExtractor extractor, Set<OWLClass> subset, Consumer<OWLAxiom> consumer,
+            CommandLine line) throws IOException {
+        OWLDataFactory factory = extractor.getOntology().getOWLOntologyManager().getOWLDataFactory();
+        SubsetClosure closure = null;
+        String key = null;
+
+        if ( closureCache != null ) {
+            List<String> seeds = new ArrayList<>();
+            for ( OWLClass klass : subset ) {
+                seeds.add(klass.getIRI().toString());
+            }
+            Collections.sort(seeds);
+            key = FileCache.makeKey("closure", fingerprint, reasonerName, extractor.getSettingsKey(),
+                    String.join(" ", seeds));
+
+            File cached = closureCache.find(key, "closure");
+            if ( cached != null ) {
+                try {
+                    closure = SubsetClosure.read(cached, factory);
+                    logger.info("Using cached subset closure {}", cached);
+                    extractor.makeSubset(closure, consumer);
+                } catch ( IOException e ) {
+                    logger.warn("Ignoring invalid cached subset closure {}: {}", cached, e.getMessage());
+                }
+            }
+        }
+
+        if ( closure == null ) {
+            SubsetClosure previous = null;
+            if ( line.hasOption("previous-closure") ) {
+                if ( addedAxioms == null ) {
+                    throw new IllegalArgumentException(
+                            "Incremental extraction requires --added-axioms or --removed-axioms");
+                }
+                previous = readPreviousClosure(new File(line.getOptionValue("previous-closure")), factory);
+            }
+            try {
+                if ( previous != null ) {
+                    closure = extractor.updateSubset(previous, subset, addedAxioms, removedAxioms, consumer);
+                } else {
+                    closure = extractor.makeSubset(subset, consumer);
+                }
+            } catch ( BudgetExceededException e ) {
+                // The metrics of the aborted extraction may help to understand what went wrong
+                writeMetrics(extractor, line);
+                throw e;
+            }
+            if ( closureCache != null ) {
+                closureCache.store(key, "closure", closure::write);
+            }
+        }
+
+        if ( line.hasOption("save-closure") ) {
+            closure.write(new File(line.getOptionValue("save-closure")));
+        }
+        writeMetrics(extractor, line);
+    }
+
+    private void writeMetrics(SubsetExtractor extractor, CommandLine line) throws IOException {
+        if ( line.hasOption("metrics-output") ) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter()
+                    .writeValue(new File(line.getOptionValue("metrics-output")), extractor.getMetrics());
+        }
+    }
+
+    /*
+     * Reads the closure of a previous extraction. A missing or invalid closure is
+     * not an error, it only means that a full extraction is required.
+     */
+    private SubsetClosure readPreviousClosure(File file, OWLDataFactory factory) {
+        if ( !file.isFile() ) {
+            logger.info("No previous closure {}, performing a full extraction", file);
+            return null;
+        }
+        try {
+            return SubsetClosure.read(file, factory);
+        } catch ( IOException e ) {
+            logger.warn("Ignoring invalid previous closure {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * Loads the axioms that have been added to or removed from the ontology since
+     * the previous extraction, from the file given with the specified option.
+     */
+    private Set<OWLAxiom> loadChanges(CommandLine line, String option) throws IOException {
+        if ( !line.hasOption(option) ) {
+            return Collections.emptySet();
+        }
+        return ioHelper.loadOntology(line.getOptionValue(option)).getAxioms();
+    }
+
+    /*
+     * Extracts all the subsets defined in a batch file. The initial subsets are
+     * computed first, one after the other; then the actual extractions (which do
+     * not need anything else than the shared indexes and reasoner) are performed
+     * in parallel.
+     */
+    private void runBatch(SubsetExtractor extractor, List<CommandLine> definitions, int nThreads)
+            throws Exception {
+        // Evaluate the DL queries of all subsets at once
+        List<OWLClassExpression> queries = new ArrayList<>();
+        List<OWLClassExpression> queriesWithAncestors = new ArrayList<>();
+        for ( CommandLine definition : definitions ) {
+            if ( definition.getOptionValue("ancestors", "false").equals("true") ) {
+                queriesWithAncestors.addAll(parseQueries(extractor.getOntology(), definition));
+            } else {
+                queries.addAll(parseQueries(extractor.getOntology(), definition));
+            }
+        }
+        queryEvaluator.evaluate(queriesWithAncestors, true);
+        queryEvaluator.evaluate(queries, false);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for ( CommandLine definition : definitions ) {
+            if ( !definition.hasOption("write-to") ) {
+                throw new IllegalArgumentException("Missing --write-to option in batch subset definition");
+            }
+            SubsetExtractor batchExtractor = new SubsetExtractor(extractor);
+            Set<OWLClass> subset = setupSubset(batchExtractor, definition);
+            tasks.add(() -> {
+                extractSubset(batchExtractor, subset, definition, true);
+                logger.info("Subset written to {}", definition.getOptionValue("write-to"));
+                return null;
+            });
+        }
+
+        logger.info("Extracting {} subsets using {} threads", tasks.size(), nThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nThreads));
+        try {
+            for ( Future<Void> result : executor.invokeAll(tasks) ) {
+                try {
+                    result.get();
+                } catch ( ExecutionException e ) {
+                    if ( e.getCause() instanceof Exception ) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Reads the subset definitions from a batch file. Each non-blank line that does
+     * not start with a '#' character defines a subset, using the same options as
+     * on the command line. Arguments are separated by whitespace and may be
+     * enclosed in single or double quotes.
+     */
+    private List<CommandLine> readBatchFile(String filename) throws IOException, ParseException {
+        List<CommandLine> definitions = new ArrayList<>();
+        DefaultParser parser = new DefaultParser();
+        try ( BufferedReader reader = new BufferedReader(new FileReader(filename)) ) {
+            String line = null;
+            while ( (line = reader.readLine()) != null ) {
+                line = line.trim();
+                if ( !line.isEmpty() && line.charAt(0) != '#' ) {
+                    definitions.add(parser.parse(subsetOptions, splitArguments(line)));
+                }
+            }
+        }
+
+        return definitions;
+    }
+
+    private String[] splitArguments(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = null;
+        char quote = 0;
+        for ( char c : line.toCharArray() ) {
+            if ( quote != 0 ) {
+                if ( c == quote ) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if ( Character.isWhitespace(c) ) {
+                if ( current != null ) {
+                    args.add(current.toString());
+                    current = null;
+                }
+            } else {
+                if ( current == null ) {
+                    current = new StringBuilder();
+                }
+                if ( c == '"' || c == '\'' ) {
+                    quote = c;
+                } else {
+                    current.append(c);
+                }
+            }
+        }
+        if ( quote != 0 ) {
+            throw new IllegalArgumentException("Unterminated quoted argument in batch subset definition: " + line);
+        }
+        if ( current != null ) {
+            args.add(current.toString());
         }
+        return args.toArray(new String[0]);
     }
 
     private void addToSubset(Set<OWLClass> subset, Set<OWLClass> additions, String msg) {
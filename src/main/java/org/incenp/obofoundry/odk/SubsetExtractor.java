@@ -18,8 +18,20 @@
 
 package org.incenp.obofoundry.odk;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.IRI;
@@ -27,19 +39,31 @@ import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassAxiom;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLDisjointClassesAxiom;
-import org.semanticweb.owlapi.model.OWLDisjointObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLDisjointUnionAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLEquivalentClassesAxiom;
+import org.semanticweb.owlapi.model.OWLEquivalentObjectPropertiesAxiom;
+import org.semanticweb.owlapi.model.OWLInverseObjectPropertiesAxiom;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyAxiom;
+import org.semanticweb.owlapi.model.OWLObjectPropertyDomainAxiom;
 import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.model.OWLObjectPropertyRangeAxiom;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubObjectPropertyOfAxiom;
 import org.semanticweb.owlapi.model.OWLSubPropertyChainOfAxiom;
 import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Suppliers;
+
 /**
  * A helper class to extract subsets from an ontology.
  */
@@ -49,15 +73,46 @@ public class SubsetExtractor {
 
     private OWLOntology source;
     private OWLDataFactory factory;
-    private OWLReasoner reasoner;
+    private Supplier<OWLReasoner> reasoner;
+    private EntityHierarchy<OWLClass> classHierarchy;
+    private EntityHierarchy<OWLObjectProperty> propertyHierarchy;
+    private ClassStatusCache statusCache;
 
     private boolean fillGaps = false;
     private boolean followAllProperties = true;
     private boolean noDangling = true;
     private Imports importMode = Imports.INCLUDED;
     private Set<OWLObjectProperty> followedProperties = new HashSet<>();
-    private Set<String> includedPrefixes;
-    private Set<String> excludedPrefixes;
+    private PrefixMatcher includedPrefixes;
+    private PrefixMatcher excludedPrefixes;
+
+    // Limits on the extraction; 0 means no limit
+    private int maxRounds = 0;
+    private int maxClasses = 0;
+    private long maxAxioms = 0;
+    private long timeLimit = 0;
+
+    private EntityIndex<OWLClass> classIds;
+    private EntityIndex<OWLObjectProperty> objectPropertyIds;
+    private EntityIndex<OWLAnnotationProperty> annotationPropertyIds = new EntityIndex<>();
+    private Indexes indexes = new Indexes();
+
+    private Set<OWLSubPropertyChainOfAxiom> includedChains = new HashSet<>();
+
+    // Expansions of classes; unlike the expansions of properties, they are not
+    // shared since they depend on the followed properties
+    private List<BitSet> classReferences = new ArrayList<>();
+    private List<BitSet> knownAncestors = new ArrayList<>();
+
+    private int avoidedExpansions;
+    private int reusedPropertyExpansions;
+    private long startTime;
+    private int classCount;
+    private long includedAxioms;
+    private Map<OWLEntity, Integer> growth;
+    private SubsetClosure partialClosure;
+    private SubsetMetrics metrics;
+    private SubsetMetrics.Round currentRound;
 
     /**
      * Creates a new instance.
@@ -66,9 +121,112 @@ public class SubsetExtractor {
      * @param reasoner The reasoner to use when attempting to fill gaps.
      */
     public SubsetExtractor(OWLOntology ontology, OWLReasoner reasoner) {
+        this(ontology, () -> reasoner);
+    }
+
+    /**
+     * Creates a new instance with a reasoner that is only created when needed.
+     * <p>
+     * The supplier is called at most once, the first time the reasoner is needed.
+     * This allows to avoid the cost of creating (and classifying) a reasoner if the
+     * extractor ends up not needing it, e.g. when a subset is obtained from a
+     * {@link SubsetClosure} computed previously.
+     * 
+     * @param ontology The ontology to extract subsets from.
+     * @param reasoner The supplier of the reasoner to use when attempting to fill
+     *                 gaps.
+     */
+    public SubsetExtractor(OWLOntology ontology, Supplier<OWLReasoner> reasoner) {
+        this(ontology, reasoner, null);
+    }
+
+    /**
+     * Creates a new instance with precomputed class and object property
+     * hierarchies.
+     * <p>
+     * This allows to use hierarchies that have been obtained without having to
+     * query the reasoner, e.g. loaded from a file. The reasoner is then only
+     * created if the extractor needs something that is not in the hierarchies.
+     * 
+     * @param ontology    The ontology to extract subsets from.
+     * @param reasoner    The supplier of the reasoner to use when attempting to
+     *                    fill gaps.
+     * @param hierarchies The hierarchies of the ontology. If {@code null},
+     *                    hierarchies backed by the reasoner are used.
+     */
+    public SubsetExtractor(OWLOntology ontology, Supplier<OWLReasoner> reasoner, InferredHierarchies hierarchies) {
         source = ontology;
         factory = source.getOWLOntologyManager().getOWLDataFactory();
-        this.reasoner = reasoner;
+        this.reasoner = Suppliers.memoize(reasoner::get);
+        if ( hierarchies == null ) {
+            hierarchies = InferredHierarchies.fromReasoner(this.reasoner);
+        }
+        classHierarchy = hierarchies.getClassHierarchy();
+        classIds = classHierarchy.getIndex();
+        propertyHierarchy = hierarchies.getObjectPropertyHierarchy();
+        objectPropertyIds = propertyHierarchy.getIndex();
+        statusCache = new ClassStatusCache(source);
+    }
+
+    /**
+     * Creates a new instance sharing the ontology, the reasoner, and all the
+     * indexes of another extractor.
+     * <p>
+     * This is intended to allow extracting several subsets from the same ontology
+     * without having to build the indexes (or to query the reasoner) more than
+     * once. The new extractor uses the same import mode as the original one, but
+     * all its other settings (gap filling, followed properties, prefixes, etc.) are
+     * reset to their default values.
+     * <p>
+     * Extractors sharing their indexes may be used concurrently from different
+     * threads, provided that the reasoner is not used elsewhere without
+     * synchronizing on it.
+     * 
+     * @param shared The extractor to share the indexes of.
+     */
+    public SubsetExtractor(SubsetExtractor shared) {
+        source = shared.source;
+        factory = shared.factory;
+        reasoner = shared.reasoner;
+        classHierarchy = shared.classHierarchy;
+        propertyHierarchy = shared.propertyHierarchy;
+        classIds = shared.classIds;
+        statusCache = shared.statusCache;
+        objectPropertyIds = shared.objectPropertyIds;
+        annotationPropertyIds = shared.annotationPropertyIds;
+        importMode = shared.importMode;
+        indexes = shared.indexes;
+    }
+
+    /**
+     * Gets the ontology subsets are extracted from.
+     * 
+     * @return The source ontology.
+     */
+    public OWLOntology getOntology() {
+        return source;
+    }
+
+    /**
+     * Gets the reasoner used by this extractor.
+     * <p>
+     * If the extractor shares its indexes with other extractors that may be used
+     * concurrently, any use of the reasoner must be synchronized on it.
+     * 
+     * @return The reasoner.
+     */
+    public OWLReasoner getReasoner() {
+        return reasoner.get();
+    }
+
+    /**
+     * Indicates whether axioms from imported ontologies are used.
+     * 
+     * @return {@code true} if axioms from imported ontologies are used,
+     *         {@code false} otherwise.
+     */
+    public boolean isIncludingImports() {
+        return importMode == Imports.INCLUDED;
     }
 
     /**
@@ -115,6 +273,10 @@ public class SubsetExtractor {
      */
     public void includeImports(boolean enabled) {
         importMode = enabled ? Imports.INCLUDED : Imports.EXCLUDED;
+        // The indexes depend on the import mode, so we need new ones; we do not
+        // clear the existing ones as they may be shared with other extractors
+        indexes = new Indexes();
+        classReferences.clear();
     }
 
     /**
@@ -141,6 +303,7 @@ public class SubsetExtractor {
             followedProperties.clear();
         }
         followAllProperties = false;
+        classReferences.clear();
     }
 
     /**
@@ -161,7 +324,7 @@ public class SubsetExtractor {
      */
     public void includePrefix(String prefix) {
         if ( includedPrefixes == null ) {
-            includedPrefixes = new HashSet<>();
+            includedPrefixes = new PrefixMatcher();
         }
         includedPrefixes.add(prefix);
     }
@@ -185,11 +348,100 @@ public class SubsetExtractor {
      */
     public void excludePrefix(String prefix) {
         if ( excludedPrefixes == null ) {
-            excludedPrefixes = new HashSet<>();
+            excludedPrefixes = new PrefixMatcher();
         }
         excludedPrefixes.add(prefix);
     }
 
+    /**
+     * Sets the maximum number of rounds of an extraction.
+     * <p>
+     * When filling gaps, each round includes the classes referenced by the
+     * properties that were added in the previous round; an extraction that needs
+     * many rounds is usually an extraction that follows too many relations.
+     * <p>
+     * If the limit is reached, the extraction is aborted with a
+     * {@link BudgetExceededException}. Limits have no effect on the contents of a
+     * subset whose extraction completes.
+     * 
+     * @param max The maximum number of rounds, or 0 for no limit (the default).
+     */
+    public void setMaxRounds(int max) {
+        maxRounds = max;
+    }
+
+    /**
+     * Sets the maximum number of classes in a subset.
+     * <p>
+     * If the limit is reached, the extraction is aborted with a
+     * {@link BudgetExceededException}.
+     * 
+     * @param max The maximum number of classes, or 0 for no limit (the default).
+     */
+    public void setMaxClasses(int max) {
+        maxClasses = max;
+    }
+
+    /**
+     * Sets the maximum number of axioms in a subset.
+     * <p>
+     * If the limit is reached, the extraction is aborted with a
+     * {@link BudgetExceededException}. Axioms are counted as they are found, so
+     * an axiom that is found several times is counted several times.
+     * 
+     * @param max The maximum number of axioms, or 0 for no limit (the default).
+     */
+    public void setMaxAxioms(long max) {
+        maxAxioms = max;
+    }
+
+    /**
+     * Sets the maximum time an extraction may take.
+     * <p>
+     * If the limit is reached, the extraction is aborted with a
+     * {@link BudgetExceededException}. This includes the time needed to create and
+     * query the reasoner, if that happens during the extraction.
+     * 
+     * @param millis The maximum time in milliseconds, or 0 for no limit (the
+     *               default).
+     */
+    public void setTimeLimit(long millis) {
+        timeLimit = millis * 1000000;
+    }
+
+    /**
+     * Gets a normalized description of the settings of this extractor.
+     * <p>
+     * Two extractors with the same settings description, working on the same
+     * ontology, always produce the same subset from the same initial list of
+     * classes. This is intended to be used as part of a key to cache the results
+     * of an extraction.
+     * 
+     * @return A string describing the settings.
+     */
+    public String getSettingsKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("fill-gaps=").append(fillGaps);
+        sb.append(";no-dangling=").append(noDangling);
+        sb.append(";imports=").append(importMode);
+        sb.append(";follow=");
+        if ( followAllProperties ) {
+            sb.append('*');
+        } else {
+            followedProperties.stream().map(p -> p.getIRI().toString()).sorted()
+                    .forEach(p -> sb.append(p).append(' '));
+        }
+        // Excluded prefixes are ignored when there are included prefixes
+        if ( includedPrefixes != null ) {
+            sb.append(";include=");
+            includedPrefixes.getPrefixes().forEach(p -> sb.append(p).append(' '));
+        } else if ( excludedPrefixes != null ) {
+            sb.append(";exclude=");
+            excludedPrefixes.getPrefixes().forEach(p -> sb.append(p).append(' '));
+        }
+        return sb.toString();
+    }
+
     /**
      * Gets the list of classes that are marked as belonging to a given subset.
      * <p>
@@ -213,17 +465,8 @@ public class SubsetExtractor {
      * @return The set of classes that make up the desired subset.
      */
     public Set<OWLClass> getSubset(IRI subsetIRI, OWLAnnotationProperty subsetProperty) {
-        Set<OWLClass> subset = new HashSet<>();
-        for ( OWLClass klass : source.getClassesInSignature(importMode) ) {
-            for ( OWLAnnotationAssertionAxiom ax : source.getAnnotationAssertionAxioms(klass.getIRI()) ) {
-                if ( ax.getProperty().equals(subsetProperty) ) {
-                    if ( ax.getValue().isIRI() && ax.getValue().asIRI().get().equals(subsetIRI) ) {
-                        subset.add(klass);
-                    }
-                }
-            }
-        }
-        return subset;
+        Set<OWLClass> subset = getSubsetIndex(subsetProperty).get(subsetIRI);
+        return subset != null ? new HashSet<>(subset) : new HashSet<>();
     }
 
     /**
@@ -239,19 +482,63 @@ public class SubsetExtractor {
      * @return The set of classes that make up the desired subset.
      */
     public Set<OWLClass> getSubset(String subsetName) {
-        Set<OWLClass> subset = new HashSet<>();
-        subsetName = "#" + subsetName;
-        OWLAnnotationProperty prop = factory.getOWLAnnotationProperty(Constants.IN_SUBSET);
-        for ( OWLClass klass : source.getClassesInSignature(importMode) ) {
-            for ( OWLAnnotationAssertionAxiom ax : source.getAnnotationAssertionAxioms(klass.getIRI()) ) {
-                if ( ax.getProperty().equals(prop) ) {
-                    if ( ax.getValue().isIRI() && ax.getValue().asIRI().get().toString().endsWith(subsetName) ) {
-                        subset.add(klass);
-                    }
+        Set<OWLClass> subset;
+        synchronized ( indexes ) {
+            getSubsetIndex(factory.getOWLAnnotationProperty(Constants.IN_SUBSET));
+            subset = indexes.subsetsByName.get(subsetName);
+        }
+        return subset != null ? new HashSet<>(subset) : new HashSet<>();
+    }
+
+    /*
+     * Gets the index of all the subsets defined with the given annotation property,
+     * building it if needed. The index is built in a single pass over all the
+     * annotation assertion axioms of the ontology, so that retrieving any number of
+     * subsets only costs one scan.
+     * 
+     * When building the index for oboInOwl:inSubset, we also index subsets by their
+     * “name”, that is by every part of the subset IRI that follows a '#' character,
+     * for the benefit of getSubset(String).
+     */
+    private Map<IRI, Set<OWLClass>> getSubsetIndex(OWLAnnotationProperty subsetProperty) {
+        synchronized ( indexes ) {
+            Map<IRI, Set<OWLClass>> index = indexes.subsetIndexes.get(subsetProperty);
+            if ( index == null ) {
+                index = buildSubsetIndex(subsetProperty);
+                indexes.subsetIndexes.put(subsetProperty, index);
+            }
+            return index;
+        }
+    }
+
+    private Map<IRI, Set<OWLClass>> buildSubsetIndex(OWLAnnotationProperty subsetProperty) {
+        Map<IRI, Set<OWLClass>> index = new HashMap<>();
+        boolean byName = subsetProperty.getIRI().equals(Constants.IN_SUBSET);
+        for ( OWLAnnotationAssertionAxiom ax : source.getAxioms(AxiomType.ANNOTATION_ASSERTION) ) {
+            if ( !ax.getProperty().equals(subsetProperty) || !ax.getValue().isIRI() || !ax.getSubject().isIRI() ) {
+                continue;
+            }
+            IRI classIRI = (IRI) ax.getSubject();
+            if ( !source.containsClassInSignature(classIRI, importMode) ) {
+                continue;
+            }
+
+            OWLClass klass = factory.getOWLClass(classIRI);
+            IRI subsetIRI = ax.getValue().asIRI().get();
+            index.computeIfAbsent(subsetIRI, k -> new HashSet<>()).add(klass);
+            if ( byName ) {
+                String value = subsetIRI.toString();
+                int hash = value.indexOf('#');
+                while ( hash != -1 ) {
+                    indexes.subsetsByName.computeIfAbsent(value.substring(hash + 1), k -> new HashSet<>())
+                            .add(klass);
+                    hash = value.indexOf('#', hash + 1);
                 }
             }
         }
-        return subset;
+        logger.debug("Indexed {} subsets for property {}", index.size(), subsetProperty.getIRI());
+
+        return index;
     }
 
     /**
@@ -264,192 +551,871 @@ public class SubsetExtractor {
      */
     public OWLOntology makeSubset(Set<OWLClass> subset) throws OWLOntologyCreationException {
         Set<OWLAxiom> axioms = new HashSet<>();
-        Set<OWLClass> workSubset = new HashSet<>();
-        Set<OWLClass> roundSubset = workSubset;
-        workSubset.addAll(subset);
-        int added = 0;
+        makeSubset(subset, axioms::add);
+
+        OWLOntology ont = source.getOWLOntologyManager().createOntology();
+        source.getOWLOntologyManager().addAxioms(ont, axioms);
+
+        return ont;
+    }
+
+    /**
+     * Creates a subset of the ontology, passing the axioms of the subset to the
+     * given consumer as they are found.
+     * <p>
+     * This method allows to process the axioms of the subset (e.g. to write them to
+     * a file) without ever having to keep them all in memory. Note that a given
+     * axiom may be passed several times to the consumer, which is responsible for
+     * any deduplication that may be needed.
+     * 
+     * @param subset   The initial list of classes that make up the subset.
+     * @param consumer The object that will receive the axioms of the subset.
+     * @return The closure of the subset, which may be used to get the same axioms
+     *         again with {@link #makeSubset(SubsetClosure, Consumer)}.
+     */
+    public SubsetClosure makeSubset(Set<OWLClass> subset, Consumer<OWLAxiom> consumer) {
+        return makeSubset(subset, consumer, null);
+    }
+
+    /*
+     * Performs the actual extraction. If an update of a previous closure is
+     * provided, the classes closure of each round is obtained by updating the
+     * corresponding round of the previous closure, instead of being computed from
+     * scratch.
+     */
+    private SubsetClosure makeSubset(Set<OWLClass> subset, Consumer<OWLAxiom> consumer, ClosureUpdate update) {
+        SubsetClosure closure = new SubsetClosure();
+        BitSet workSubset = new BitSet();
+        BitSet roundSubset = classIds.getIds(subset);
         int round = 0;
+        avoidedExpansions = 0;
+        reusedPropertyExpansions = 0;
+        includedChains.clear();
+        metrics = new SubsetMetrics();
+        int statusMisses = statusCache.getMisses();
+        int statusHits = statusCache.getHits();
+        startTime = System.nanoTime();
+        includedAxioms = 0;
+        growth = maxRounds > 0 || maxClasses > 0 || maxAxioms > 0 || timeLimit > 0 ? new HashMap<>() : null;
+        partialClosure = closure;
+
+        try {
+            do {
+                if ( maxRounds > 0 && round >= maxRounds ) {
+                    throw exceedBudget(String.format("maximum number of rounds (%d) reached", maxRounds));
+                }
+                currentRound = metrics.startRound();
+                int reasonerCalls = getReasonerCalls();
+
+                // Take care of the classes first
+                long start = System.nanoTime();
+                classCount = workSubset.cardinality() + roundSubset.cardinality();
+                checkClassBudget();
+                Set<OWLClass> seeds = classIds.getEntities(roundSubset);
+                if ( fillGaps ) {
+                    if ( update != null && round < update.getRoundCount() ) {
+                        update.updateClassesClosure(round, roundSubset, workSubset);
+                    } else {
+                        makeClassesClosure(roundSubset, workSubset);
+                    }
+                }
+                workSubset.or(roundSubset);
+                currentRound.addClassClosureTime(System.nanoTime() - start);
+
+                // Then get all the properties used in classes' definitions
+                start = System.nanoTime();
+                BitSet usedObjectProperties = new BitSet();
+                BitSet usedAnnotationProperties = new BitSet();
+                includeClassAxioms(ax -> {
+                    consumer.accept(ax);
+                    currentRound.addAxiomIncluded();
+                    checkAxiomBudget();
+                    for ( OWLObjectProperty property : ax.getObjectPropertiesInSignature() ) {
+                        usedObjectProperties.set(objectPropertyIds.getId(property));
+                    }
+                    for ( OWLAnnotationProperty property : ax.getAnnotationPropertiesInSignature() ) {
+                        usedAnnotationProperties.set(annotationPropertyIds.getId(property));
+                    }
+                }, roundSubset, workSubset);
+                currentRound.addClassAxiomsTime(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                if ( fillGaps ) {
+                    makeObjectPropertiesClosure(usedObjectProperties);
+                    makeAnnotationPropertiesClosure(usedAnnotationProperties);
+                }
+                closure.addRound(seeds, classIds.getEntities(roundSubset),
+                        objectPropertyIds.getEntities(usedObjectProperties),
+                        annotationPropertyIds.getEntities(usedAnnotationProperties));
+                currentRound.setEntities(roundSubset.cardinality(), usedObjectProperties.cardinality(),
+                        usedAnnotationProperties.cardinality());
+                currentRound.addPropertyClosureTime(System.nanoTime() - start);
+
+                // The properties we have added may themselves refer to classes in their
+                // definitions (for range/domain restrictions); find them now, and add them in
+                // the next round. Classes that are already in the subset have already been
+                // expanded and their axioms already included, so we only need to consider
+                // the new ones.
+                start = System.nanoTime();
+                BitSet nextRound = new BitSet();
+                Consumer<OWLAxiom> propertySink = ax -> {
+                    consumer.accept(ax);
+                    currentRound.addAxiomIncluded();
+                    checkAxiomBudget();
+                    if ( fillGaps ) {
+                        for ( OWLClass klass : ax.getClassesInSignature() ) {
+                            int id = classIds.getId(klass);
+                            if ( growth != null && !nextRound.get(id) && !workSubset.get(id) ) {
+                                // Blame the properties whose axioms bring new classes
+                                ax.getObjectPropertiesInSignature().forEach(this::recordGrowth);
+                                ax.getAnnotationPropertiesInSignature().forEach(this::recordGrowth);
+                            }
+                            nextRound.set(id);
+                        }
+                    }
+                };
+                includeObjectPropertyAxioms(propertySink, usedObjectProperties);
+                includeAnnotationPropertyAxioms(propertySink, usedAnnotationProperties);
+                nextRound.andNot(workSubset);
+                roundSubset = nextRound;
+                currentRound.addPropertyAxiomsTime(System.nanoTime() - start);
+                currentRound.addReasonerCalls(getReasonerCalls() - reasonerCalls);
+
+                logger.info("subset round {}, found {} axioms", round, currentRound.getAxiomsIncluded());
+                round += 1;
+
+                // If we are not filling gaps, then we can leave after the first round;
+                // otherwise, repeat until we cannot find any new class to add, indicating that
+                // we have reached closure.
+            } while ( !roundSubset.isEmpty() );
+        } catch ( BudgetExceededException e ) {
+            metrics.finish(workSubset.cardinality(), classIds.size(), statusCache.getMisses() - statusMisses,
+                    statusCache.getHits() - statusHits);
+            throw e;
+        } finally {
+            growth = null;
+            partialClosure = null;
+        }
+        logger.info("subset complete after {} rounds, {} class expansions avoided, {} property expansions reused",
+                round, avoidedExpansions, reusedPropertyExpansions);
+        logger.debug("class status cache: {} hits, {} misses", statusCache.getHits(), statusCache.getMisses());
+        metrics.finish(workSubset.cardinality(), classIds.size(), statusCache.getMisses() - statusMisses,
+                statusCache.getHits() - statusHits);
+
+        recordExpansions(closure, workSubset);
+        return closure;
+    }
+
+    /*
+     * Records into the closure the settings of the extractor and how all the
+     * entities of the subset were expanded.
+     */
+    private void recordExpansions(SubsetClosure closure, BitSet classes) {
+        closure.setSettings(getSettingsKey());
+        for ( int id = classes.nextSetBit(0); id >= 0; id = classes.nextSetBit(id + 1) ) {
+            BitSet references = getMemoized(classReferences, id);
+            if ( references != null ) {
+                // If the class has been expanded, its ancestors are already known
+                closure.addClassExpansion(classIds.get(id), classIds.getEntities(getAncestors(id)),
+                        classIds.getEntities(references));
+            }
+        }
+        for ( int i = 0; i < closure.getRoundCount(); i++ ) {
+            for ( OWLObjectProperty property : closure.getObjectProperties(i) ) {
+                BitSet references = getMemoized(indexes.objectPropertyRefs, objectPropertyIds.getId(property));
+                if ( references != null ) {
+                    closure.addObjectPropertyExpansion(property, objectPropertyIds.getEntities(references));
+                }
+            }
+            for ( OWLAnnotationProperty property : closure.getAnnotationProperties(i) ) {
+                BitSet references = getMemoized(indexes.annotationPropertyRefs,
+                        annotationPropertyIds.getId(property));
+                if ( references != null ) {
+                    closure.addAnnotationPropertyExpansion(property, annotationPropertyIds.getEntities(references));
+                }
+            }
+        }
+    }
 
-        do {
-            int size = axioms.size();
-            Set<OWLAxiom> classAxioms = new HashSet<>();
-            Set<OWLAxiom> propertyAxioms = new HashSet<>();
+    /**
+     * Creates a subset of an ontology that has changed since a previous
+     * extraction, passing the axioms of the subset to the given consumer.
+     * <p>
+     * This produces exactly the same axioms as {@link #makeSubset(Set, Consumer)},
+     * but the closure is obtained by updating the previous closure rather than by
+     * expanding the subset again. Only the entities that appear in a changed axiom,
+     * the classes whose ancestors may have been changed by a changed logical axiom,
+     * and the classes that are new to the subset are expanded again; the expansions
+     * recorded in the previous closure are reused for all the other entities. If
+     * none of the changed axioms is a logical axiom, the ancestors of all classes
+     * are reused, and the reasoner is not needed unless new classes have to be
+     * expanded or an object property appears in a changed axiom.
+     * <p>
+     * If the previous closure was computed with different settings, a full
+     * extraction is performed. The initial subset, on the other hand, may differ
+     * from the one used in the previous extraction.
+     * 
+     * @param previous The closure returned by the previous extraction.
+     * @param subset   The initial list of classes that make up the subset.
+     * @param added    The axioms that have been added to the ontology since the
+     *                 previous extraction.
+     * @param removed  The axioms that have been removed from the ontology since
+     *                 the previous extraction.
+     * @param consumer The object that will receive the axioms of the subset.
+     * @return The closure of the subset.
+     */
+    public SubsetClosure updateSubset(SubsetClosure previous, Set<OWLClass> subset, Set<OWLAxiom> added,
+            Set<OWLAxiom> removed, Consumer<OWLAxiom> consumer) {
+        if ( !previous.getSettings().equals(getSettingsKey()) ) {
+            logger.info("Previous closure was computed with different settings, ignoring it");
+            return makeSubset(subset, consumer);
+        }
 
-            // Take care of the classes first
-            if ( fillGaps ) {
-                makeClassesClosure(roundSubset);
-                workSubset.addAll(roundSubset);
+        // Find the entities whose expansions may have changed: those that appear in a
+        // changed axiom, and those whose ancestors may have changed
+        Set<IRI> changed = new HashSet<>();
+        List<OWLAxiom> logicalChanges = new ArrayList<>();
+        for ( Set<OWLAxiom> axioms : Arrays.asList(added, removed) ) {
+            for ( OWLAxiom ax : axioms ) {
+                if ( ax.isLogicalAxiom() ) {
+                    logicalChanges.add(ax);
+                }
+                for ( OWLEntity entity : ax.getSignature() ) {
+                    changed.add(entity.getIRI());
+                }
+                if ( ax instanceof OWLAnnotationAssertionAxiom ) {
+                    OWLAnnotationAssertionAxiom aaa = (OWLAnnotationAssertionAxiom) ax;
+                    if ( aaa.getSubject().isIRI() ) {
+                        changed.add((IRI) aaa.getSubject());
+                    }
+                }
             }
-            includeClassAxioms(classAxioms, roundSubset, workSubset);
+        }
+        Set<OWLEntity> invalidated = findInvalidatedEntities(previous, logicalChanges);
 
-            // Then get all the properties used in classes' definitions
-            Set<OWLObjectProperty> usedObjectProperties = new HashSet<>();
-            Set<OWLAnnotationProperty> usedAnnotationProperties = new HashSet<>();
-            for ( OWLAxiom ax : classAxioms ) {
-                usedObjectProperties.addAll(ax.getObjectPropertiesInSignature());
-                usedAnnotationProperties.addAll(ax.getAnnotationPropertiesInSignature());
+        // Reuse all expansions that cannot have changed
+        ClosureUpdate update = new ClosureUpdate(previous);
+        int reused = 0;
+        for ( Map.Entry<OWLClass, Set<OWLClass>> entry : previous.getClassReferences().entrySet() ) {
+            OWLClass klass = entry.getKey();
+            int id = classIds.getId(klass);
+            boolean dirty = false;
+            if ( invalidated != null && !invalidated.contains(klass) ) {
+                setMemoized(knownAncestors, id, classIds.getIds(previous.getClassAncestors().get(klass)));
+            } else {
+                dirty = true;
             }
-            if ( fillGaps ) {
-                makeObjectPropertiesClosure(usedObjectProperties);
-                makeAnnotationPropertiesClosure(usedAnnotationProperties);
+            if ( !changed.contains(klass.getIRI()) ) {
+                setMemoized(classReferences, id, classIds.getIds(entry.getValue()));
+            } else {
+                dirty = true;
+            }
+            if ( dirty ) {
+                update.dirty.set(id);
+            } else {
+                reused += 1;
             }
-            includeObjectPropertyAxioms(propertyAxioms, usedObjectProperties);
-            includeAnnotationPropertyAxioms(propertyAxioms, usedAnnotationProperties);
+        }
+        for ( IRI iri : changed ) {
+            if ( source.containsClassInSignature(iri, importMode) ) {
+                int id = classIds.getId(factory.getOWLClass(iri));
+                update.dirty.set(id);
+                update.changed.set(id);
+            }
+        }
+        if ( invalidated != null ) {
+            for ( Map.Entry<OWLObjectProperty, Set<OWLObjectProperty>> entry : previous
+                    .getObjectPropertyReferences().entrySet() ) {
+                if ( !changed.contains(entry.getKey().getIRI()) && !invalidated.contains(entry.getKey()) ) {
+                    setMemoized(indexes.objectPropertyRefs, objectPropertyIds.getId(entry.getKey()),
+                            objectPropertyIds.getIds(entry.getValue()));
+                }
+            }
+        }
+        for ( Map.Entry<OWLAnnotationProperty, Set<OWLAnnotationProperty>> entry : previous
+                .getAnnotationPropertyReferences().entrySet() ) {
+            if ( !changed.contains(entry.getKey().getIRI()) ) {
+                setMemoized(indexes.annotationPropertyRefs, annotationPropertyIds.getId(entry.getKey()),
+                        annotationPropertyIds.getIds(entry.getValue()));
+            }
+        }
+        logger.info("{} changed axioms ({} logical), reusing {} of {} class expansions", added.size() + removed.size(),
+                logicalChanges.size(), reused, previous.getClassReferences().size());
 
-            if ( fillGaps ) {
-                // The properties we have added may themselves refer to classes in their
-                // definitions (for range/domain restrictions); find them now, and add them in
-                // the next round
-                roundSubset = new HashSet<>();
-                for ( OWLAxiom ax : propertyAxioms ) {
-                    roundSubset.addAll(ax.getClassesInSignature());
+        return makeSubset(subset, consumer, update);
+    }
+
+    /*
+     * Finds the classes and object properties whose inferred superclasses (or
+     * super-properties) may have been changed by the given logical axioms.
+     * 
+     * The classes and properties that appear in a changed axiom are affected
+     * first (for a SubClassOf axiom with a named subclass, only that subclass).
+     * Then, a class or property is affected if (1) it is a descendant of an
+     * affected class, according to the ancestors recorded in the previous closure,
+     * or (2) it is defined (in a SubClassOf, EquivalentClasses, or
+     * SubObjectPropertyOf axiom) in terms of an affected entity. Classes that newly
+     * become descendants of another class are always affected on their own, since
+     * that can only happen because of something they are defined in terms of.
+     * 
+     * Returns null if the changes include axioms that this analysis does not
+     * cover (e.g. axioms about individuals), in which case no ancestor can be
+     * assumed to be unchanged.
+     */
+    private Set<OWLEntity> findInvalidatedEntities(SubsetClosure previous, List<OWLAxiom> changes) {
+        Set<OWLEntity> invalidated = new HashSet<>();
+        Deque<OWLEntity> queue = new ArrayDeque<>();
+        for ( OWLAxiom ax : changes ) {
+            if ( ax instanceof OWLSubClassOfAxiom && !((OWLSubClassOfAxiom) ax).getSubClass().isAnonymous() ) {
+                invalidate(invalidated, queue, ((OWLSubClassOfAxiom) ax).getSubClass().asOWLClass());
+            } else if ( ax instanceof OWLClassAxiom || ax instanceof OWLObjectPropertyAxiom ) {
+                invalidate(invalidated, queue, ax.getClassesInSignature());
+                invalidate(invalidated, queue, ax.getObjectPropertiesInSignature());
+            } else {
+                logger.info("Cannot find the classes affected by {}, ignoring all previous ancestors", ax);
+                return null;
+            }
+        }
+
+        Map<OWLClass, List<OWLClass>> descendants = null;
+        while ( !queue.isEmpty() ) {
+            OWLEntity entity = queue.poll();
+            if ( entity.isOWLClass() ) {
+                if ( descendants == null ) {
+                    descendants = new HashMap<>();
+                    for ( Map.Entry<OWLClass, Set<OWLClass>> entry : previous.getClassAncestors().entrySet() ) {
+                        for ( OWLClass ancestor : entry.getValue() ) {
+                            descendants.computeIfAbsent(ancestor, k -> new ArrayList<>()).add(entry.getKey());
+                        }
+                    }
                 }
+                invalidate(invalidated, queue, descendants.getOrDefault(entity, Collections.emptyList()));
             }
 
-            axioms.addAll(classAxioms);
-            axioms.addAll(propertyAxioms);
-            added = axioms.size() - size;
-            logger.info("subset round {}, added {} axioms", round, added);
-            round += 1;
+            for ( OWLAxiom ax : source.getReferencingAxioms(entity, importMode) ) {
+                if ( ax instanceof OWLSubClassOfAxiom ) {
+                    OWLSubClassOfAxiom sca = (OWLSubClassOfAxiom) ax;
+                    if ( !sca.getSubClass().isAnonymous() && sca.getSuperClass().getSignature().contains(entity) ) {
+                        invalidate(invalidated, queue, sca.getSubClass().asOWLClass());
+                    }
+                } else if ( ax instanceof OWLEquivalentClassesAxiom ) {
+                    invalidate(invalidated, queue, ((OWLEquivalentClassesAxiom) ax).getNamedClasses());
+                } else if ( ax instanceof OWLDisjointUnionAxiom ) {
+                    invalidate(invalidated, queue, ((OWLDisjointUnionAxiom) ax).getOWLClass());
+                } else if ( ax instanceof OWLSubObjectPropertyOfAxiom ) {
+                    OWLSubObjectPropertyOfAxiom spa = (OWLSubObjectPropertyOfAxiom) ax;
+                    if ( spa.getSuperProperty().getSignature().contains(entity) ) {
+                        invalidate(invalidated, queue, spa.getSubProperty().getObjectPropertiesInSignature());
+                    }
+                } else if ( ax instanceof OWLEquivalentObjectPropertiesAxiom
+                        || ax instanceof OWLInverseObjectPropertiesAxiom ) {
+                    invalidate(invalidated, queue, ax.getObjectPropertiesInSignature());
+                } else if ( entity.isOWLClass()
+                        && (ax instanceof OWLObjectPropertyDomainAxiom || ax instanceof OWLObjectPropertyRangeAxiom) ) {
+                    invalidate(invalidated, queue, ax.getObjectPropertiesInSignature());
+                }
+            }
+        }
+        logger.debug("{} entities may have changed ancestors", invalidated.size());
 
-            // If we are not filling gaps, then we can leave after the first round;
-            // otherwise, repeat until we cannot find any new axiom to add, indicating that
-            // we have reached closure.
-        } while ( fillGaps && added > 0 );
+        return invalidated;
+    }
 
-        OWLOntology ont = source.getOWLOntologyManager().createOntology();
-        source.getOWLOntologyManager().addAxioms(ont, axioms);
+    private static void invalidate(Set<OWLEntity> invalidated, Deque<OWLEntity> queue, OWLEntity entity) {
+        if ( invalidated.add(entity) ) {
+            queue.add(entity);
+        }
+    }
 
-        return ont;
+    private static void invalidate(Set<OWLEntity> invalidated, Deque<OWLEntity> queue,
+            Collection<? extends OWLEntity> entities) {
+        for ( OWLEntity entity : entities ) {
+            invalidate(invalidated, queue, entity);
+        }
+    }
+
+    /*
+     * Updates, round by round, the classes closure of a previous extraction.
+     * 
+     * The closure of a round is the least set of classes that contains the seeds
+     * of the round, and every includable class (not already expanded in a previous
+     * round) referred to by a class of the set. The previous closure of a round is
+     * updated in three steps: (1) we remove all the classes that may no longer be
+     * supported, that is, former seeds, classes referred to by a class whose
+     * expansion has changed or that is now part of a previous round, and,
+     * transitively, the classes referred to by a removed class; (2) we put back the
+     * removed classes that are still seeds or still referred to by a class that
+     * remains; (3) we expand, as in a normal extraction, the classes that have
+     * been put back, the remaining classes whose expansion has changed, the new
+     * seeds, and the classes that a remaining class may now refer to (classes
+     * that have changed, and classes that are no longer part of a previous round).
+     * Only those classes are expanded again.
+     */
+    private class ClosureUpdate {
+        private List<BitSet> oldSeeds = new ArrayList<>();
+        private List<BitSet> oldRounds = new ArrayList<>();
+        private List<BitSet> oldExpanded = new ArrayList<>();
+        private Map<Integer, BitSet> oldExpansions = new HashMap<>();
+        private Map<Integer, BitSet> predecessors;
+
+        /* Classes whose expansion (or status) may have changed. */
+        private BitSet dirty = new BitSet();
+
+        /* Classes that appear in a changed axiom. */
+        private BitSet changed = new BitSet();
+
+        ClosureUpdate(SubsetClosure previous) {
+            BitSet before = new BitSet();
+            for ( int i = 0; i < previous.getRoundCount(); i++ ) {
+                BitSet classes = classIds.getIds(previous.getClasses(i));
+                oldSeeds.add(classIds.getIds(previous.getSeeds(i)));
+                oldRounds.add(classes);
+                oldExpanded.add((BitSet) before.clone());
+                before.or(classes);
+            }
+            for ( Map.Entry<OWLClass, Set<OWLClass>> entry : previous.getClassReferences().entrySet() ) {
+                BitSet expansion = classIds.getIds(entry.getValue());
+                Set<OWLClass> ancestors = previous.getClassAncestors().get(entry.getKey());
+                if ( ancestors != null ) {
+                    expansion.or(classIds.getIds(ancestors));
+                }
+                oldExpansions.put(classIds.getId(entry.getKey()), expansion);
+            }
+        }
+
+        int getRoundCount() {
+            return oldRounds.size();
+        }
+
+        /*
+         * Computes the closure of the given round. The first set contains the seeds
+         * of the round and receives the closure; the second set contains the classes
+         * expanded in the previous rounds.
+         */
+        void updateClassesClosure(int round, BitSet subset, BitSet expanded) {
+            BitSet seeds = (BitSet) subset.clone();
+            BitSet members = (BitSet) oldRounds.get(round).clone();
+            members.andNot(expanded);
+            BitSet dirtyMembers = (BitSet) dirty.clone();
+            dirtyMembers.and(members);
+
+            // Remove all the classes that may have lost their support
+            BitSet removed = (BitSet) oldSeeds.get(round).clone();
+            removed.andNot(seeds);
+            BitSet moved = (BitSet) oldRounds.get(round).clone();
+            moved.and(expanded);
+            for ( int id = moved.nextSetBit(0); id >= 0; id = moved.nextSetBit(id + 1) ) {
+                removed.or(getOldExpansion(id));
+            }
+            for ( int id = dirtyMembers.nextSetBit(0); id >= 0; id = dirtyMembers.nextSetBit(id + 1) ) {
+                if ( !seeds.get(id) && !includeClass(classIds.get(id)) ) {
+                    removed.set(id);
+                }
+                BitSet lost = (BitSet) getOldExpansion(id).clone();
+                lost.andNot(getExpansion(id));
+                removed.or(lost);
+            }
+            removed.and(members);
+            BitSet wave = (BitSet) removed.clone();
+            while ( !wave.isEmpty() ) {
+                BitSet nextWave = new BitSet();
+                for ( int id = wave.nextSetBit(0); id >= 0; id = wave.nextSetBit(id + 1) ) {
+                    nextWave.or(getOldExpansion(id));
+                }
+                nextWave.and(members);
+                nextWave.andNot(removed);
+                removed.or(nextWave);
+                wave = nextWave;
+            }
+            members.andNot(removed);
+
+            // Put back the removed classes that are still supported, and find the
+            // classes that a remaining class may now refer to
+            wave = (BitSet) seeds.clone();
+            wave.andNot(members);
+            BitSet candidates = (BitSet) changed.clone();
+            candidates.or(oldExpanded.get(round));
+            candidates.andNot(expanded);
+            candidates.andNot(members);
+            candidates.or(removed);
+            for ( int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1) ) {
+                if ( !wave.get(id) && includeClass(classIds.get(id)) && isReferencedByCleanMember(id, members) ) {
+                    wave.set(id);
+                }
+            }
+            logger.debug("Updating closure of round {}: {} classes kept, {} removed, {} to expand", round,
+                    members.cardinality(), removed.cardinality(), wave.cardinality());
+
+            // Expand everything that needs to be
+            dirtyMembers.and(members);
+            wave.or(dirtyMembers);
+            members.or(wave);
+            classCount = expanded.cardinality() + members.cardinality();
+            makeClassesClosure(members, expanded, wave);
+            subset.clear();
+            subset.or(members);
+        }
+
+        /*
+         * Checks whether a class is referred to by a class of the given set whose
+         * expansion has not changed.
+         */
+        private boolean isReferencedByCleanMember(int id, BitSet members) {
+            if ( predecessors == null ) {
+                predecessors = new HashMap<>();
+                for ( Map.Entry<Integer, BitSet> entry : oldExpansions.entrySet() ) {
+                    BitSet expansion = entry.getValue();
+                    for ( int ref = expansion.nextSetBit(0); ref >= 0; ref = expansion.nextSetBit(ref + 1) ) {
+                        predecessors.computeIfAbsent(ref, k -> new BitSet()).set(entry.getKey());
+                    }
+                }
+            }
+            BitSet referencing = predecessors.get(id);
+            if ( referencing != null ) {
+                for ( int p = referencing.nextSetBit(0); p >= 0; p = referencing.nextSetBit(p + 1) ) {
+                    if ( members.get(p) && !dirty.get(p) ) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private BitSet getOldExpansion(int id) {
+            BitSet expansion = oldExpansions.get(id);
+            return expansion != null ? expansion : new BitSet();
+        }
+    }
+
+    /**
+     * Creates a subset of the ontology from a previously computed closure,
+     * passing the axioms of the subset to the given consumer.
+     * <p>
+     * This produces the same axioms as the call to
+     * {@link #makeSubset(Set, Consumer)} that returned the closure, provided the
+     * ontology and the settings of the extractor have not changed; but the subset
+     * is not expanded again, and the reasoner is not used at all.
+     * 
+     * @param closure  The closure of the subset.
+     * @param consumer The object that will receive the axioms of the subset.
+     */
+    public void makeSubset(SubsetClosure closure, Consumer<OWLAxiom> consumer) {
+        BitSet workSubset = new BitSet();
+        includedChains.clear();
+        metrics = new SubsetMetrics();
+        int statusMisses = statusCache.getMisses();
+        int statusHits = statusCache.getHits();
+        Consumer<OWLAxiom> sink = ax -> {
+            consumer.accept(ax);
+            currentRound.addAxiomIncluded();
+        };
+
+        for ( int i = 0; i < closure.getRoundCount(); i++ ) {
+            currentRound = metrics.startRound();
+            long start = System.nanoTime();
+            BitSet roundSubset = classIds.getIds(closure.getClasses(i));
+            workSubset.or(roundSubset);
+            includeClassAxioms(sink, roundSubset, workSubset);
+            currentRound.addClassAxiomsTime(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            BitSet objectProperties = objectPropertyIds.getIds(closure.getObjectProperties(i));
+            BitSet annotationProperties = annotationPropertyIds.getIds(closure.getAnnotationProperties(i));
+            includeObjectPropertyAxioms(sink, objectProperties);
+            includeAnnotationPropertyAxioms(sink, annotationProperties);
+            currentRound.addPropertyAxiomsTime(System.nanoTime() - start);
+            currentRound.setEntities(roundSubset.cardinality(), objectProperties.cardinality(),
+                    annotationProperties.cardinality());
+        }
+        metrics.finish(workSubset.cardinality(), classIds.size(), statusCache.getMisses() - statusMisses,
+                statusCache.getHits() - statusHits);
+        logger.info("subset replayed from {} rounds", closure.getRoundCount());
+    }
+
+    /**
+     * Gets the performance metrics of the last extraction.
+     * <p>
+     * If the extractor shares its indexes and its reasoner with other extractors
+     * used concurrently, the number of reasoner calls and of class status checks
+     * may include calls and checks made on behalf of the other extractors.
+     * 
+     * @return The metrics, or {@code null} if no subset has been extracted yet.
+     */
+    public SubsetMetrics getMetrics() {
+        return metrics;
     }
 
     /*
-     * Given an initial set of classes, expands it to include all the classes that
-     * they refer to, directly or indirectly.
+     * Gets the number of calls made to the reasoner so far through the
+     * hierarchies.
+     */
+    private int getReasonerCalls() {
+        return classHierarchy.getProviderCalls() + propertyHierarchy.getProviderCalls();
+    }
+
+    /**
+     * Gets the number of class expansions that were avoided during the last call
+     * to {@link #makeSubset(Set)}.
+     * <p>
+     * When filling gaps, each class of the subset is expanded (that is, the
+     * entities it refers to are looked up) only once. This counter reports how
+     * many times a class referenced by an expanded class was already in the subset
+     * (or already expanded), and therefore was not queued to be expanded again.
+     * 
+     * @return The number of referenced classes that were not queued again.
+     */
+    public int getAvoidedExpansions() {
+        return avoidedExpansions;
+    }
+
+    /**
+     * Gets the number of property expansions that were reused during the last
+     * call to {@link #makeSubset(Set)}.
+     * <p>
+     * The properties referred to by a given object or annotation property are only
+     * looked up once for the lifetime of the extractor. This counter reports how
+     * many times the properties referred to by a property were found already
+     * looked up, and were therefore not looked up again.
+     * 
+     * @return The number of property expansions that did not need to be done.
+     */
+    public int getReusedPropertyExpansions() {
+        return reusedPropertyExpansions;
+    }
+
+    /*
+     * Given a set of classes to expand, expands it to include all the classes that
+     * they refer to, directly or indirectly. Classes in the second set are already
+     * known to be part of the subset and to have been expanded; they are neither
+     * expanded again nor added to the first set.
+     * 
+     * Both sets are represented as bitsets of class identifiers. The expansion
+     * proceeds by waves: each wave expands the classes that were added by the
+     * previous one.
      * 
      * Returns the number of added classes.
      */
-    private int makeClassesClosure(Set<OWLClass> subset) {
-        Set<OWLClass> tmp = new HashSet<>();
-        int added = 0;
+    private int makeClassesClosure(BitSet subset, BitSet expanded) {
+        return makeClassesClosure(subset, expanded, (BitSet) subset.clone());
+    }
+
+    /*
+     * Same as above, but only the classes in the third set (which must be a subset
+     * of the first one) are initially expanded. This is for when the other classes
+     * of the first set are already known to have been expanded.
+     */
+    private int makeClassesClosure(BitSet subset, BitSet expanded, BitSet wave) {
         int totalAdded = 0;
-        int round = 0;
 
-        do {
-            int size = subset.size();
-            tmp.clear();
+        while ( !wave.isEmpty() ) {
+            BitSet nextWave = new BitSet();
+            metrics.updatePeakWaveSize(wave.cardinality());
 
-            for ( OWLClass klass : subset ) {
+            for ( int id = wave.nextSetBit(0); id >= 0; id = wave.nextSetBit(id + 1) ) {
+                OWLClass klass = classIds.get(id);
                 if ( klass.isBottomEntity() ) {
                     continue;
                 }
 
-                // First use the reasoner to get all the superclasses
-                for ( OWLClass superClass : reasoner.getSuperClasses(klass, false).getFlattened() ) {
-                    if ( includeClass(superClass) ) {
-                        tmp.add(superClass);
-                        logger.debug("Computing classes closure: adding {} from {}", superClass.getIRI(),
+                BitSet referenced = getExpansion(id);
+                int nReferenced = referenced.cardinality();
+                referenced.andNot(expanded);
+                referenced.andNot(subset);
+                avoidedExpansions += nReferenced - referenced.cardinality();
+
+                for ( int ref = referenced.nextSetBit(0); ref >= 0; ref = referenced.nextSetBit(ref + 1) ) {
+                    OWLClass refClass = classIds.get(ref);
+                    if ( includeClass(refClass) ) {
+                        subset.set(ref);
+                        nextWave.set(ref);
+                        totalAdded += 1;
+                        classCount += 1;
+                        recordGrowth(klass);
+                        logger.debug("Computing classes closure: adding {} from {}", refClass.getIRI(),
                                 klass.getIRI());
                     }
                 }
+                checkClassBudget();
+                checkTimeBudget();
+            }
+
+            wave = nextWave;
+        }
+        logger.info("Computing classes closure: added {} classes", totalAdded);
+
+        return totalAdded;
+    }
+
+    /*
+     * Gets all the classes a class refers to: its superclasses from the class
+     * hierarchy, and the classes that appear in its axioms. The returned bitset
+     * may be freely modified.
+     */
+    private BitSet getExpansion(int id) {
+        OWLClass klass = classIds.get(id);
+        BitSet referenced = new BitSet();
+        if ( !klass.isBottomEntity() ) {
+            referenced.or(getAncestors(id));
+            referenced.or(getReferencedClasses(id, klass));
+        }
+        return referenced;
+    }
 
-                // Then get classes that are linked by one of the followed properties (or any
-                // property). Of note, regardless of any property involved, we never follow (1)
-                // disjointness axioms and (2) GCI axioms.
-                if ( followAllProperties || !followedProperties.isEmpty() ) {
-                    for ( OWLAxiom ax : getAxiomsForClass(klass, false) ) {
-                        boolean include = true;
-                        if ( ax instanceof OWLDisjointClassesAxiom ) {
+    /*
+     * Records that an entity has brought a new class into the subset, if we are
+     * keeping track of that (only when there is a budget to enforce).
+     */
+    private void recordGrowth(OWLEntity entity) {
+        if ( growth != null ) {
+            growth.merge(entity, 1, Integer::sum);
+        }
+    }
+
+    private void checkClassBudget() {
+        if ( maxClasses > 0 && classCount > maxClasses ) {
+            throw exceedBudget(String.format("maximum number of classes (%d) reached", maxClasses));
+        }
+    }
+
+    private void checkAxiomBudget() {
+        includedAxioms += 1;
+        if ( maxAxioms > 0 && includedAxioms > maxAxioms ) {
+            throw exceedBudget(String.format("maximum number of axioms (%d) reached", maxAxioms));
+        }
+        // No need to check the time at every single axiom
+        if ( (includedAxioms & 0x3ff) == 0 ) {
+            checkTimeBudget();
+        }
+    }
+
+    private void checkTimeBudget() {
+        if ( timeLimit > 0 && System.nanoTime() - startTime > timeLimit ) {
+            throw exceedBudget(String.format("time limit (%d ms) reached", timeLimit / 1000000));
+        }
+    }
+
+    /*
+     * Creates the exception to abort the extraction, listing the entities that
+     * brought the largest numbers of classes into the subset.
+     */
+    private BudgetExceededException exceedBudget(String reason) {
+        List<Map.Entry<OWLEntity, Integer>> entries = new ArrayList<>(growth.entrySet());
+        entries.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+        List<String> contributors = new ArrayList<>();
+        for ( Map.Entry<OWLEntity, Integer> entry : entries.subList(0, Math.min(10, entries.size())) ) {
+            contributors.add(String.format("%s (%s): %d classes", entry.getKey().getIRI(),
+                    entry.getKey().getEntityType().getName(), entry.getValue()));
+        }
+        String details = String.format("%s after %d ms, with %d classes and %d axioms", reason,
+                (System.nanoTime() - startTime) / 1000000, classCount, includedAxioms);
+        logger.error("Subset extraction aborted: {}", details);
+        return new BudgetExceededException(details, partialClosure, contributors);
+    }
+
+    /*
+     * Gets the ancestors of a class, either from a previous extraction if they are
+     * known to be still valid, or from the class hierarchy.
+     */
+    private BitSet getAncestors(int id) {
+        BitSet ancestors = getMemoized(knownAncestors, id);
+        return ancestors != null ? ancestors : classHierarchy.getAncestors(id);
+    }
+
+    /*
+     * Gets the classes that are linked to a class by one of the followed
+     * properties (or any property). Of note, regardless of any property involved,
+     * we never follow (1) disjointness axioms and (2) GCI axioms.
+     * 
+     * The references of a given class are only looked up once for the lifetime of
+     * the extractor (or until the set of followed properties is changed).
+     */
+    private BitSet getReferencedClasses(int id, OWLClass klass) {
+        BitSet referenced = getMemoized(classReferences, id);
+        if ( referenced != null ) {
+            return referenced;
+        }
+
+        referenced = new BitSet();
+        currentRound.addExpansion();
+        if ( followAllProperties || !followedProperties.isEmpty() ) {
+            Set<OWLAxiom> axioms = getAxiomsForClass(klass, false);
+            currentRound.addAxiomsExamined(axioms.size());
+            for ( OWLAxiom ax : axioms ) {
+                boolean include = true;
+                if ( ax instanceof OWLDisjointClassesAxiom ) {
+                    include = false;
+                } else if ( !followAllProperties ) {
+                    // For classes that are part of a class expression, and if the class expression
+                    // involves an object property, only include them if the object property is in
+                    // the followed set
+                    for ( OWLObjectProperty property : ax.getObjectPropertiesInSignature() ) {
+                        if ( !followedProperties.contains(property) ) {
                             include = false;
-                        } else if ( !followAllProperties ) {
-                            // For classes that are part of a class expression, and if the class expression
-                            // involves an object property, only include them if the object property is in
-                            // the followed set
-                            for ( OWLObjectProperty property : ax.getObjectPropertiesInSignature() ) {
-                                if ( !followedProperties.contains(property) ) {
-                                    include = false;
-                                    break;
-                                }
-                            }
-                        }
-                        if ( include ) {
-                            for ( OWLClass referenced : ax.getClassesInSignature() ) {
-                                if ( includeClass(referenced) ) {
-                                    tmp.add(referenced);
-                                    logger.debug("Computing classes closure: adding {} from {}", referenced.getIRI(),
-                                            klass.getIRI());
-                                }
-                            }
+                            break;
                         }
                     }
                 }
+                if ( include ) {
+                    for ( OWLClass ref : ax.getClassesInSignature() ) {
+                        referenced.set(classIds.getId(ref));
+                    }
+                }
             }
-            subset.addAll(tmp);
-            added = subset.size() - size;
-            totalAdded += added;
-            round += 1;
-            logger.debug("Computing classes closure: round {}: added {} classes", round, added);
-
-            // Repeat until we are no longer finding any new classes
-        } while ( added > 0 );
-        logger.info("Computing classes closure: added {} classes in {} rounds", totalAdded, round);
-
-        return totalAdded;
+        }
+        setMemoized(classReferences, id, referenced);
+        return referenced;
     }
 
     /*
      * Given an initial set of object properties, expands the set to include all the
      * properties that they refer to, directly or not.
      * 
+     * The properties directly referred to by a given property are only looked up
+     * once for the lifetime of the extractor.
+     * 
      * Returns the number of added properties.
      */
-    private int makeObjectPropertiesClosure(Set<OWLObjectProperty> subset) {
-        Set<OWLObjectProperty> tmp = new HashSet<>();
-        int added = 0;
+    private int makeObjectPropertiesClosure(BitSet subset) {
+        BitSet wave = (BitSet) subset.clone();
         int totalAdded = 0;
-        int round = 0;
-        boolean reasonerUnsupported = false;
+        Map<OWLObjectProperty, BitSet> axiomIndex = getPropertyAxiomIndex();
 
-        do {
-            int size = subset.size();
-            tmp.clear();
+        while ( !wave.isEmpty() ) {
+            BitSet nextWave = new BitSet();
 
-            for ( OWLObjectProperty property : subset ) {
+            for ( int id = wave.nextSetBit(0); id >= 0; id = wave.nextSetBit(id + 1) ) {
+                OWLObjectProperty property = objectPropertyIds.get(id);
                 if ( property.isBottomEntity() ) {
                     continue;
                 }
 
-                if ( !reasonerUnsupported ) {
-                    // Try the reasoner to get the super properties; this may fail as not all
-                    // reasoners support this operation (WHELK does not)
-                    try {
-                        for ( OWLObjectPropertyExpression expr : reasoner.getSuperObjectProperties(property, false)
-                                .getFlattened() ) {
-                            tmp.addAll(expr.getObjectPropertiesInSignature());
-                        }
-                    } catch ( UnsupportedOperationException uoe ) {
-                        reasonerUnsupported = true;
-                    }
-                }
+                BitSet referenced = getMemoized(indexes.objectPropertyRefs, id);
+                if ( referenced != null ) {
+                    reusedPropertyExpansions += 1;
+                } else {
+                    referenced = new BitSet();
+                    currentRound.addExpansion();
+                    referenced.or(getSuperProperties(id));
 
-                // Peek into the axioms directly - this will get the direct super properties if
-                // we couldn't get them from the reasoner, and also the inverse properties
-                for ( OWLAxiom ax : source.getAxioms(property, importMode) ) {
-                    if ( ax instanceof OWLDisjointObjectPropertiesAxiom ) {
-                        continue;
+                    // Add the properties referenced from the axioms of the property itself (e.g.
+                    // the inverse properties, or properties used in domain/range restrictions)
+                    BitSet direct = axiomIndex.get(property);
+                    if ( direct != null ) {
+                        referenced.or(direct);
                     }
-                    tmp.addAll(ax.getObjectPropertiesInSignature());
+                    setMemoized(indexes.objectPropertyRefs, id, referenced);
                 }
+
+                BitSet added = (BitSet) referenced.clone();
+                added.andNot(subset);
+                subset.or(added);
+                nextWave.or(added);
+                totalAdded += added.cardinality();
             }
-            subset.addAll(tmp);
-            added = subset.size() - size;
-            totalAdded += added;
-            round += 1;
-            logger.debug("Computing object properties closure: round {}: added {} properties", round, added);
 
-            // Repeat until we are no longer finding any new object properties
-        } while ( added > 0 );
-        logger.info("Computing object properties closure: added {} properties in {} rounds", totalAdded, round);
+            wave = nextWave;
+        }
+        logger.debug("Computing object properties closure: added {} properties", totalAdded);
 
         return totalAdded;
     }
@@ -458,81 +1424,108 @@ public class SubsetExtractor {
      * Given an initial set of annotation properties, expands it to include all the
      * properties that they refer to, directly or indirectly.
      * 
+     * As for object properties, the properties directly referred to by a given
+     * property are only looked up once for the lifetime of the extractor.
+     * 
      * Returns the number of added properties.
      */
-    private int makeAnnotationPropertiesClosure(Set<OWLAnnotationProperty> subset) {
-        Set<OWLAnnotationProperty> tmp = new HashSet<>();
-        int added = 0;
+    private int makeAnnotationPropertiesClosure(BitSet subset) {
+        BitSet wave = (BitSet) subset.clone();
         int totalAdded = 0;
-        int round = 0;
 
-        do {
-            int size = subset.size();
-            tmp.clear();
+        while ( !wave.isEmpty() ) {
+            BitSet nextWave = new BitSet();
 
-            for ( OWLAnnotationProperty property : subset ) {
-                for ( OWLAxiom ax : source.getAxioms(property, importMode) ) {
-                    tmp.addAll(ax.getAnnotationPropertiesInSignature());
-                }
-                for ( OWLAnnotationAssertionAxiom ax : source.getAnnotationAssertionAxioms(property.getIRI()) ) {
-                    tmp.add(ax.getProperty());
+            for ( int id = wave.nextSetBit(0); id >= 0; id = wave.nextSetBit(id + 1) ) {
+                OWLAnnotationProperty property = annotationPropertyIds.get(id);
+
+                BitSet referenced = getMemoized(indexes.annotationPropertyRefs, id);
+                if ( referenced != null ) {
+                    reusedPropertyExpansions += 1;
+                } else {
+                    referenced = new BitSet();
+                    currentRound.addExpansion();
+                    Set<? extends OWLAxiom> axioms = source.getAxioms(property, importMode);
+                    currentRound.addAxiomsExamined(axioms.size());
+                    for ( OWLAxiom ax : axioms ) {
+                        for ( OWLAnnotationProperty ref : ax.getAnnotationPropertiesInSignature() ) {
+                            referenced.set(annotationPropertyIds.getId(ref));
+                        }
+                    }
+                    Set<OWLAnnotationAssertionAxiom> assertions = source
+                            .getAnnotationAssertionAxioms(property.getIRI());
+                    currentRound.addAxiomsExamined(assertions.size());
+                    for ( OWLAnnotationAssertionAxiom ax : assertions ) {
+                        referenced.set(annotationPropertyIds.getId(ax.getProperty()));
+                    }
+                    setMemoized(indexes.annotationPropertyRefs, id, referenced);
                 }
+
+                BitSet added = (BitSet) referenced.clone();
+                added.andNot(subset);
+                subset.or(added);
+                nextWave.or(added);
+                totalAdded += added.cardinality();
             }
-            subset.addAll(tmp);
-            added = subset.size() - size;
-            totalAdded += added;
-            logger.debug("Computing annotation properties closure: round {}: added {} properties", round, added);
 
-            // Repeat until we are no longer finding any new annotation properties
-        } while ( added > 0 );
-        logger.info("Computing annotation properties closure: added {} properties in {} rounds", totalAdded, round);
+            wave = nextWave;
+        }
+        logger.debug("Computing annotation properties closure: added {} properties", totalAdded);
 
         return totalAdded;
     }
 
     /*
-     * Fills the provided axioms set with all the axioms that are relevant for the
+     * Passes to the provided consumer all the axioms that are relevant for the
      * indicated set of classes. For any class, this includes (1) all the “defining”
      * axioms of the class (e.g. SubClassOf, EquivalentClasses, etc.); (2) all GCI
      * axioms referring to the class; (3) all annotation assertions axioms on the
      * class; and (4) the declaration axiom. This excludes any axiom referring to a
      * class that is not in the overall subset (3rd argument).
      */
-    private void includeClassAxioms(Set<OWLAxiom> axioms, Set<OWLClass> classes, Set<OWLClass> subset) {
-        for ( OWLClass klass : classes ) {
-            for ( OWLAxiom ax : getAxiomsForClass(klass, true) ) {
+    private void includeClassAxioms(Consumer<OWLAxiom> axioms, BitSet classes, BitSet subset) {
+        for ( int id = classes.nextSetBit(0); id >= 0; id = classes.nextSetBit(id + 1) ) {
+            OWLClass klass = classIds.get(id);
+            Set<OWLAxiom> candidates = getAxiomsForClass(klass, true);
+            currentRound.addAxiomsExamined(candidates.size());
+            for ( OWLAxiom ax : candidates ) {
                 boolean include = true;
                 for ( OWLClass referenced : ax.getClassesInSignature() ) {
-                    if ( !subset.contains(referenced) ) {
+                    if ( !contains(subset, classIds, referenced) ) {
                         // Exclude any axiom referring to a class outside of the subset
                         include = false;
                         break;
                     }
                 }
                 if ( include ) {
-                    axioms.add(ax);
+                    axioms.accept(ax);
                 }
             }
 
-            axioms.addAll(source.getAnnotationAssertionAxioms(klass.getIRI()));
-            axioms.add(factory.getOWLDeclarationAxiom(klass));
+            Set<OWLAnnotationAssertionAxiom> assertions = source.getAnnotationAssertionAxioms(klass.getIRI());
+            currentRound.addAxiomsExamined(assertions.size() + 1);
+            assertions.forEach(axioms);
+            axioms.accept(factory.getOWLDeclarationAxiom(klass));
         }
     }
 
     /*
-     * Fills the provided axioms set with all the axioms that are relevant for the
+     * Passes to the provided consumer all the axioms that are relevant for the
      * indicated set of object properties. For any property, this includes (1) all
      * the “defining” axioms; (2) all annotation assertion axioms; and (3) the
      * declaration axiom. This excludes any axiom referring to a property that is
      * not in the subset, or referring to a class that should be excluded for any
      * reason.
      */
-    private void includeObjectPropertyAxioms(Set<OWLAxiom> axioms, Set<OWLObjectProperty> properties) {
-        for ( OWLObjectProperty property : properties ) {
-            for ( OWLAxiom ax : source.getAxioms(property, importMode) ) {
+    private void includeObjectPropertyAxioms(Consumer<OWLAxiom> axioms, BitSet properties) {
+        for ( int id = properties.nextSetBit(0); id >= 0; id = properties.nextSetBit(id + 1) ) {
+            OWLObjectProperty property = objectPropertyIds.get(id);
+            Set<? extends OWLAxiom> candidates = source.getAxioms(property, importMode);
+            currentRound.addAxiomsExamined(candidates.size());
+            for ( OWLAxiom ax : candidates ) {
                 boolean include = true;
                 for ( OWLObjectProperty referenced : ax.getObjectPropertiesInSignature() ) {
-                    if ( !properties.contains(referenced) ) {
+                    if ( !contains(properties, objectPropertyIds, referenced) ) {
                         // Exclude any axiom referring to a property outside of the subset
                         include = false;
                         break;
@@ -548,42 +1541,188 @@ public class SubsetExtractor {
                     }
                 }
                 if ( include ) {
-                    axioms.add(ax);
+                    axioms.accept(ax);
                 }
             }
 
-            axioms.addAll(source.getAnnotationAssertionAxioms(property.getIRI()));
-            axioms.add(factory.getOWLDeclarationAxiom(property));
+            Set<OWLAnnotationAssertionAxiom> assertions = source.getAnnotationAssertionAxioms(property.getIRI());
+            currentRound.addAxiomsExamined(assertions.size() + 1);
+            assertions.forEach(axioms);
+            axioms.accept(factory.getOWLDeclarationAxiom(property));
         }
 
         // Axioms defining property chains are not included in the set returned by
         // OWLOntology.getAxioms(OWLAnnotationProperty), so we need to get them
         // separately
-        for ( OWLSubPropertyChainOfAxiom ax : source.getAxioms(AxiomType.SUB_PROPERTY_CHAIN_OF, importMode) ) {
-            boolean include = true;
-            for ( OWLObjectProperty p : ax.getObjectPropertiesInSignature() ) {
-                // Only include the chain if it only refers to properties within the subset
-                if ( !properties.contains(p) ) {
-                    include = false;
-                    break;
+        Map<OWLObjectProperty, List<OWLSubPropertyChainOfAxiom>> chains = getChainIndex();
+        for ( int id = properties.nextSetBit(0); id >= 0; id = properties.nextSetBit(id + 1) ) {
+            List<OWLSubPropertyChainOfAxiom> candidates = chains.get(objectPropertyIds.get(id));
+            if ( candidates == null ) {
+                continue;
+            }
+            currentRound.addAxiomsExamined(candidates.size());
+            for ( OWLSubPropertyChainOfAxiom ax : candidates ) {
+                if ( includedChains.contains(ax) ) {
+                    continue;
+                }
+                boolean include = true;
+                for ( OWLObjectProperty p : ax.getObjectPropertiesInSignature() ) {
+                    // Only include the chain if it only refers to properties within the subset
+                    if ( !contains(properties, objectPropertyIds, p) ) {
+                        include = false;
+                        break;
+                    }
+                }
+                if ( include ) {
+                    axioms.accept(ax);
+                    includedChains.add(ax);
+                }
+            }
+        }
+    }
+
+    /*
+     * Gets all the super-properties of an object property. The first time this is
+     * called, we find out whether the inferred hierarchy is available at all (not
+     * all reasoners can provide it, WHELK cannot); if it is not, we use the
+     * asserted hierarchy instead. What we found out is shared by all extractors
+     * sharing the same indexes, so that we never have to ask again.
+     */
+    private BitSet getSuperProperties(int id) {
+        Boolean supported;
+        synchronized ( indexes ) {
+            supported = indexes.propertyHierarchySupported;
+        }
+        if ( supported == null || supported ) {
+            try {
+                BitSet ancestors = propertyHierarchy.getAncestors(id);
+                synchronized ( indexes ) {
+                    indexes.propertyHierarchySupported = true;
+                }
+                return ancestors;
+            } catch ( UnsupportedOperationException uoe ) {
+                logger.info("Reasoner cannot provide the object property hierarchy, using asserted hierarchy");
+                synchronized ( indexes ) {
+                    indexes.propertyHierarchySupported = false;
                 }
             }
-            if ( include ) {
-                axioms.add(ax);
+        }
+        return getAssertedPropertyHierarchy().getAncestors(id);
+    }
+
+    /*
+     * Gets the asserted object property hierarchy, building it if needed. It uses
+     * the same identifiers as the inferred hierarchy.
+     */
+    private EntityHierarchy<OWLObjectProperty> getAssertedPropertyHierarchy() {
+        synchronized ( indexes ) {
+            if ( indexes.assertedPropertyHierarchy == null ) {
+                Map<OWLObjectProperty, Set<OWLObjectProperty>> parents = new HashMap<>();
+                for ( OWLSubObjectPropertyOfAxiom ax : source.getAxioms(AxiomType.SUB_OBJECT_PROPERTY, importMode) ) {
+                    if ( !ax.getSubProperty().isAnonymous() ) {
+                        parents.computeIfAbsent(ax.getSubProperty().asOWLObjectProperty(), k -> new HashSet<>())
+                                .addAll(ax.getSuperProperty().getObjectPropertiesInSignature());
+                    }
+                }
+                for ( OWLEquivalentObjectPropertiesAxiom ax : source
+                        .getAxioms(AxiomType.EQUIVALENT_OBJECT_PROPERTIES, importMode) ) {
+                    Set<OWLObjectProperty> properties = ax.getObjectPropertiesInSignature();
+                    for ( OWLObjectProperty property : properties ) {
+                        parents.computeIfAbsent(property, k -> new HashSet<>()).addAll(properties);
+                    }
+                }
+                indexes.assertedPropertyHierarchy = new EntityHierarchy<>(objectPropertyIds,
+                        property -> parents.getOrDefault(property, Collections.emptySet()));
             }
+            return indexes.assertedPropertyHierarchy;
         }
     }
 
     /*
-     * Fills the provided axioms set with all the axioms that are relevant for the
+     * Gets the index of the object properties referenced by the axioms about each
+     * object property, building it if needed. For a given property, this covers
+     * the same axioms as OWLOntology.getAxioms(OWLObjectPropertyExpression) (except
+     * disjointness axioms, which we never follow), but the index is built in a
+     * single pass over the ontology rather than by looking up each property.
+     */
+    private Map<OWLObjectProperty, BitSet> getPropertyAxiomIndex() {
+        synchronized ( indexes ) {
+            if ( indexes.propertyAxiomIndex == null ) {
+                Map<OWLObjectProperty, BitSet> index = new HashMap<>();
+                for ( OWLSubObjectPropertyOfAxiom ax : source.getAxioms(AxiomType.SUB_OBJECT_PROPERTY, importMode) ) {
+                    indexPropertyAxiom(index, ax.getSubProperty(), ax);
+                }
+                for ( OWLEquivalentObjectPropertiesAxiom ax : source
+                        .getAxioms(AxiomType.EQUIVALENT_OBJECT_PROPERTIES, importMode) ) {
+                    for ( OWLObjectPropertyExpression property : ax.getProperties() ) {
+                        indexPropertyAxiom(index, property, ax);
+                    }
+                }
+                for ( OWLInverseObjectPropertiesAxiom ax : source.getAxioms(AxiomType.INVERSE_OBJECT_PROPERTIES,
+                        importMode) ) {
+                    indexPropertyAxiom(index, ax.getFirstProperty(), ax);
+                    indexPropertyAxiom(index, ax.getSecondProperty(), ax);
+                }
+                for ( OWLObjectPropertyDomainAxiom ax : source.getAxioms(AxiomType.OBJECT_PROPERTY_DOMAIN,
+                        importMode) ) {
+                    indexPropertyAxiom(index, ax.getProperty(), ax);
+                }
+                for ( OWLObjectPropertyRangeAxiom ax : source.getAxioms(AxiomType.OBJECT_PROPERTY_RANGE,
+                        importMode) ) {
+                    indexPropertyAxiom(index, ax.getProperty(), ax);
+                }
+                indexes.propertyAxiomIndex = index;
+            }
+            return indexes.propertyAxiomIndex;
+        }
+    }
+
+    private void indexPropertyAxiom(Map<OWLObjectProperty, BitSet> index, OWLObjectPropertyExpression subject,
+            OWLAxiom ax) {
+        // As with OWLOntology.getAxioms(OWLObjectPropertyExpression), axioms about an
+        // inverse property expression are not considered to be about the property
+        if ( !subject.isAnonymous() ) {
+            BitSet refs = index.computeIfAbsent(subject.asOWLObjectProperty(), k -> new BitSet());
+            for ( OWLObjectProperty ref : ax.getObjectPropertiesInSignature() ) {
+                refs.set(objectPropertyIds.getId(ref));
+            }
+        }
+    }
+
+    /*
+     * Gets the index of property chain axioms, building it if needed. Since a chain
+     * can only be included if all the properties it refers to are in the subset, we
+     * index each chain under only one of its properties: the chain need not be
+     * considered if that property is not in the subset.
+     */
+    private Map<OWLObjectProperty, List<OWLSubPropertyChainOfAxiom>> getChainIndex() {
+        synchronized ( indexes ) {
+            if ( indexes.chainIndex == null ) {
+                Map<OWLObjectProperty, List<OWLSubPropertyChainOfAxiom>> chainIndex = new HashMap<>();
+                for ( OWLSubPropertyChainOfAxiom ax : source.getAxioms(AxiomType.SUB_PROPERTY_CHAIN_OF,
+                        importMode) ) {
+                    OWLObjectProperty key = ax.getObjectPropertiesInSignature().iterator().next();
+                    chainIndex.computeIfAbsent(key, k -> new ArrayList<>()).add(ax);
+                }
+                indexes.chainIndex = chainIndex;
+            }
+            return indexes.chainIndex;
+        }
+    }
+
+    /*
+     * Passes to the provided consumer all the axioms that are relevant for the
      * indicated set of annotation properties. For any property, this includes (1)
      * the “defining” axioms; (2) all annotation assertion axioms; and (3) the
      * declaration axiom. This excludes any axiom referring to a class that should
      * be excluded for any reason.
      */
-    private void includeAnnotationPropertyAxioms(Set<OWLAxiom> axioms, Set<OWLAnnotationProperty> properties) {
-        for ( OWLAnnotationProperty property : properties ) {
-            for ( OWLAxiom ax : source.getAxioms(property, importMode) ) {
+    private void includeAnnotationPropertyAxioms(Consumer<OWLAxiom> axioms, BitSet properties) {
+        for ( int id = properties.nextSetBit(0); id >= 0; id = properties.nextSetBit(id + 1) ) {
+            OWLAnnotationProperty property = annotationPropertyIds.get(id);
+            Set<? extends OWLAxiom> candidates = source.getAxioms(property, importMode);
+            currentRound.addAxiomsExamined(candidates.size());
+            for ( OWLAxiom ax : candidates ) {
                 boolean include = true;
                 for ( OWLClass referenced : ax.getClassesInSignature() ) {
                     if ( !includeClass(referenced) ) {
@@ -592,11 +1731,40 @@ public class SubsetExtractor {
                     }
                 }
                 if ( include ) {
-                    axioms.add(ax);
+                    axioms.accept(ax);
                 }
             }
-            axioms.addAll(source.getAnnotationAssertionAxioms(property.getIRI()));
-            axioms.add(factory.getOWLDeclarationAxiom(property));
+            Set<OWLAnnotationAssertionAxiom> assertions = source.getAnnotationAssertionAxioms(property.getIRI());
+            currentRound.addAxiomsExamined(assertions.size() + 1);
+            assertions.forEach(axioms);
+            axioms.accept(factory.getOWLDeclarationAxiom(property));
+        }
+    }
+
+    /*
+     * Checks whether a bitset contains the identifier of the given entity.
+     */
+    private static <T extends OWLEntity> boolean contains(BitSet set, EntityIndex<T> index, T entity) {
+        int id = index.findId(entity);
+        return id != -1 && set.get(id);
+    }
+
+    /*
+     * Helpers to get and set the memoized references of a property. The memo lists
+     * may be shared with other extractors, hence the synchronization.
+     */
+    private static BitSet getMemoized(List<BitSet> memo, int id) {
+        synchronized ( memo ) {
+            return id < memo.size() ? memo.get(id) : null;
+        }
+    }
+
+    private static void setMemoized(List<BitSet> memo, int id, BitSet value) {
+        synchronized ( memo ) {
+            while ( memo.size() <= id ) {
+                memo.add(null);
+            }
+            memo.set(id, value);
         }
     }
 
@@ -604,29 +1772,16 @@ public class SubsetExtractor {
      * Checks whether a class should be included in the subset.
      */
     private boolean includeClass(OWLClass klass) {
-        if ( noDangling && Util.isDangling(source, klass) ) {
-            return false;
-        }
-        if ( includedPrefixes != null || excludedPrefixes != null ) {
-            String iri = klass.getIRI().toString();
-            if ( includedPrefixes != null ) {
-                for ( String prefix : includedPrefixes ) {
-                    if ( iri.startsWith(prefix) ) {
-                        return true;
-                    }
-                }
+        if ( includedPrefixes != null ) {
+            if ( !includedPrefixes.matches(klass.getIRI()) ) {
+                return false;
+            }
+        } else if ( excludedPrefixes != null ) {
+            if ( excludedPrefixes.matches(klass.getIRI()) ) {
                 return false;
-            } else {
-                for ( String prefix : excludedPrefixes ) {
-                    if ( iri.startsWith(prefix) ) {
-                        return false;
-                    }
-                }
-                return true;
             }
-        } else {
-            return true;
         }
+        return !noDangling || !statusCache.isDangling(klass);
     }
 
     /*
@@ -639,12 +1794,60 @@ public class SubsetExtractor {
         Set<OWLAxiom> axioms = new HashSet<>();
         axioms.addAll(source.getAxioms(klass, importMode));
         if ( includeGCIs ) {
-            for ( OWLAxiom gca : source.getGeneralClassAxioms() ) {
-                if ( gca.containsEntityInSignature(klass) ) {
-                    axioms.add(gca);
-                }
+            Set<OWLAxiom> gcis = getGCIIndex().get(klass);
+            if ( gcis != null ) {
+                axioms.addAll(gcis);
             }
         }
         return axioms;
     }
+
+    /*
+     * Gets the index of GCI axioms by the classes they refer to, building it if
+     * needed. GCI axioms are taken from the imports closure if imports are
+     * included.
+     */
+    private Map<OWLClass, Set<OWLAxiom>> getGCIIndex() {
+        synchronized ( indexes ) {
+            if ( indexes.gciIndex == null ) {
+                indexes.gciIndex = buildGCIIndex();
+            }
+            return indexes.gciIndex;
+        }
+    }
+
+    private Map<OWLClass, Set<OWLAxiom>> buildGCIIndex() {
+        Map<OWLClass, Set<OWLAxiom>> gciIndex = new HashMap<>();
+        Set<OWLOntology> ontologies = importMode == Imports.INCLUDED ? source.getImportsClosure()
+                : Collections.singleton(source);
+        int nGCIs = 0;
+        for ( OWLOntology ontology : ontologies ) {
+            for ( OWLAxiom gca : ontology.getGeneralClassAxioms() ) {
+                for ( OWLClass klass : gca.getClassesInSignature() ) {
+                    gciIndex.computeIfAbsent(klass, k -> new HashSet<>()).add(gca);
+                }
+                nGCIs += 1;
+            }
+        }
+        logger.debug("Indexed {} GCI axioms referring to {} classes", nGCIs, gciIndex.size());
+        return gciIndex;
+    }
+
+    /*
+     * The indexes that depend on the import mode. They are grouped together so
+     * that they can be shared by several extractors (see the “copy” constructor).
+     * Accesses to the lazily built indexes must be synchronized on the object
+     * itself; the memo lists are synchronized on their own.
+     */
+    private static class Indexes {
+        private Map<OWLAnnotationProperty, Map<IRI, Set<OWLClass>>> subsetIndexes = new HashMap<>();
+        private Map<String, Set<OWLClass>> subsetsByName = new HashMap<>();
+        private List<BitSet> objectPropertyRefs = new ArrayList<>();
+        private List<BitSet> annotationPropertyRefs = new ArrayList<>();
+        private Map<OWLClass, Set<OWLAxiom>> gciIndex;
+        private Map<OWLObjectProperty, List<OWLSubPropertyChainOfAxiom>> chainIndex;
+        private Map<OWLObjectProperty, BitSet> propertyAxiomIndex;
+        private Boolean propertyHierarchySupported;
+        private EntityHierarchy<OWLObjectProperty> assertedPropertyHierarchy;
+    }
 }
@@ -0,0 +1,404 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Performance metrics collected by {@link SubsetExtractor} during an
+ * extraction.
+ * <p>
+ * The metrics are broken down by round and, within each round, by phase: the
+ * expansion of the classes, the inclusion of the axioms of the classes, the
+ * expansion of the properties, and the inclusion of the axioms of the
+ * properties. All times are wall-clock times, in milliseconds.
+ * <p>
+ * The getters of this class are named so that the metrics can be directly
+ * serialized as JSON by a bean-based serializer.
+ */
+public class SubsetMetrics {
+
+    private List<Round> rounds = new ArrayList<>();
+    private long startTime = System.nanoTime();
+    private long totalTime;
+    private int peakSubsetSize;
+    private int peakWaveSize;
+    private int indexedClasses;
+    private int statusChecks;
+    private int statusCacheHits;
+
+    /**
+     * Starts a new round.
+     * 
+     * @return The metrics object for the new round.
+     */
+    public Round startRound() {
+        Round round = new Round(rounds.size());
+        rounds.add(round);
+        return round;
+    }
+
+    /**
+     * Marks the end of the extraction.
+     * 
+     * @param subsetSize     The number of classes in the final subset.
+     * @param indexedClasses The number of classes the extractor has had to
+     *                       consider (either as part of the subset or as
+     *                       candidates for inclusion).
+     * @param statusChecks   The number of times the status of a class (dangling
+     *                       or not) had to be computed.
+     * @param statusHits     The number of times the status of a class was found
+     *                       in the cache.
+     */
+    public void finish(int subsetSize, int indexedClasses, int statusChecks, int statusHits) {
+        totalTime = System.nanoTime() - startTime;
+        peakSubsetSize = Math.max(peakSubsetSize, subsetSize);
+        this.indexedClasses = indexedClasses;
+        this.statusChecks = statusChecks;
+        this.statusCacheHits = statusHits;
+    }
+
+    /**
+     * Records the size of a wave of class expansions.
+     * 
+     * @param size The number of classes to expand in the wave.
+     */
+    public void updatePeakWaveSize(int size) {
+        peakWaveSize = Math.max(peakWaveSize, size);
+    }
+
+    /**
+     * Gets the metrics of all the rounds.
+     * 
+     * @return The per-round metrics.
+     */
+    public List<Round> getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Gets the total time of the extraction.
+     * 
+     * @return The total time, in milliseconds.
+     */
+    public double getTotalMillis() {
+        return toMillis(totalTime);
+    }
+
+    /**
+     * Gets the total number of calls made to the reasoner.
+     * 
+     * @return The number of reasoner calls.
+     */
+    public int getReasonerCalls() {
+        return rounds.stream().mapToInt(r -> r.reasonerCalls).sum();
+    }
+
+    /**
+     * Gets the total number of axioms looked at during the extraction, whether
+     * they were eventually included or not.
+     * 
+     * @return The number of examined axioms.
+     */
+    public long getAxiomsExamined() {
+        return rounds.stream().mapToLong(r -> r.axiomsExamined).sum();
+    }
+
+    /**
+     * Gets the total number of axioms included in the subset. This may count the
+     * same axiom several times.
+     * 
+     * @return The number of included axioms.
+     */
+    public long getAxiomsIncluded() {
+        return rounds.stream().mapToLong(r -> r.axiomsIncluded).sum();
+    }
+
+    /**
+     * Gets the total number of entities that were expanded.
+     * 
+     * @return The number of expansions.
+     */
+    public int getExpansions() {
+        return rounds.stream().mapToInt(r -> r.expansions).sum();
+    }
+
+    /**
+     * Gets the largest number of classes in the subset at any time.
+     * 
+     * @return The peak size of the subset.
+     */
+    public int getPeakSubsetSize() {
+        return peakSubsetSize;
+    }
+
+    /**
+     * Gets the largest number of classes expanded in a single wave.
+     * 
+     * @return The peak size of a wave.
+     */
+    public int getPeakWaveSize() {
+        return peakWaveSize;
+    }
+
+    /**
+     * Gets the number of classes the extractor has had to consider.
+     * 
+     * @return The number of indexed classes.
+     */
+    public int getIndexedClasses() {
+        return indexedClasses;
+    }
+
+    /**
+     * Gets the number of times the status of a class had to be computed.
+     * 
+     * @return The number of status checks.
+     */
+    public int getStatusChecks() {
+        return statusChecks;
+    }
+
+    /**
+     * Gets the number of times the status of a class was found in the cache.
+     * 
+     * @return The number of status cache hits.
+     */
+    public int getStatusCacheHits() {
+        return statusCacheHits;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * The metrics of a single round.
+     */
+    public static class Round {
+        private int number;
+        private long classClosureTime;
+        private long classAxiomsTime;
+        private long propertyClosureTime;
+        private long propertyAxiomsTime;
+        private int classes;
+        private int objectProperties;
+        private int annotationProperties;
+        private int reasonerCalls;
+        private int expansions;
+        private long axiomsExamined;
+        private long axiomsIncluded;
+
+        Round(int number) {
+            this.number = number;
+        }
+
+        /**
+         * Adds time spent expanding classes.
+         * 
+         * @param nanos The time, in nanoseconds.
+         */
+        public void addClassClosureTime(long nanos) {
+            classClosureTime += nanos;
+        }
+
+        /**
+         * Adds time spent including the axioms of classes.
+         * 
+         * @param nanos The time, in nanoseconds.
+         */
+        public void addClassAxiomsTime(long nanos) {
+            classAxiomsTime += nanos;
+        }
+
+        /**
+         * Adds time spent expanding properties.
+         * 
+         * @param nanos The time, in nanoseconds.
+         */
+        public void addPropertyClosureTime(long nanos) {
+            propertyClosureTime += nanos;
+        }
+
+        /**
+         * Adds time spent including the axioms of properties.
+         * 
+         * @param nanos The time, in nanoseconds.
+         */
+        public void addPropertyAxiomsTime(long nanos) {
+            propertyAxiomsTime += nanos;
+        }
+
+        /**
+         * Sets the number of entities in the round.
+         * 
+         * @param classes              The number of classes added in the round.
+         * @param objectProperties     The number of object properties used in the
+         *                             round.
+         * @param annotationProperties The number of annotation properties used in
+         *                             the round.
+         */
+        public void setEntities(int classes, int objectProperties, int annotationProperties) {
+            this.classes = classes;
+            this.objectProperties = objectProperties;
+            this.annotationProperties = annotationProperties;
+        }
+
+        /**
+         * Adds calls made to the reasoner.
+         * 
+         * @param n The number of calls.
+         */
+        public void addReasonerCalls(int n) {
+            reasonerCalls += n;
+        }
+
+        /**
+         * Records the expansion of an entity.
+         */
+        public void addExpansion() {
+            expansions += 1;
+        }
+
+        /**
+         * Adds axioms looked at.
+         * 
+         * @param n The number of examined axioms.
+         */
+        public void addAxiomsExamined(int n) {
+            axiomsExamined += n;
+        }
+
+        /**
+         * Records the inclusion of an axiom.
+         */
+        public void addAxiomIncluded() {
+            axiomsIncluded += 1;
+        }
+
+        /**
+         * Gets the number of the round.
+         * 
+         * @return The number of the round (starting from zero).
+         */
+        public int getRound() {
+            return number;
+        }
+
+        /**
+         * Gets the time spent expanding classes.
+         * 
+         * @return The time, in milliseconds.
+         */
+        public double getClassClosureMillis() {
+            return toMillis(classClosureTime);
+        }
+
+        /**
+         * Gets the time spent including the axioms of classes.
+         * 
+         * @return The time, in milliseconds.
+         */
+        public double getClassAxiomsMillis() {
+            return toMillis(classAxiomsTime);
+        }
+
+        /**
+         * Gets the time spent expanding properties.
+         * 
+         * @return The time, in milliseconds.
+         */
+        public double getPropertyClosureMillis() {
+            return toMillis(propertyClosureTime);
+        }
+
+        /**
+         * Gets the time spent including the axioms of properties.
+         * 
+         * @return The time, in milliseconds.
+         */
+        public double getPropertyAxiomsMillis() {
+            return toMillis(propertyAxiomsTime);
+        }
+
+        /**
+         * Gets the number of classes added in the round.
+         * 
+         * @return The number of classes.
+         */
+        public int getClasses() {
+            return classes;
+        }
+
+        /**
+         * Gets the number of object properties used in the round.
+         * 
+         * @return The number of object properties.
+         */
+        public int getObjectProperties() {
+            return objectProperties;
+        }
+
+        /**
+         * Gets the number of annotation properties used in the round.
+         * 
+         * @return The number of annotation properties.
+         */
+        public int getAnnotationProperties() {
+            return annotationProperties;
+        }
+
+        /**
+         * Gets the number of calls made to the reasoner in the round.
+         * 
+         * @return The number of reasoner calls.
+         */
+        public int getReasonerCalls() {
+            return reasonerCalls;
+        }
+
+        /**
+         * Gets the number of entities expanded in the round.
+         * 
+         * @return The number of expansions.
+         */
+        public int getExpansions() {
+            return expansions;
+        }
+
+        /**
+         * Gets the number of axioms looked at in the round.
+         * 
+         * @return The number of examined axioms.
+         */
+        public long getAxiomsExamined() {
+            return axiomsExamined;
+        }
+
+        /**
+         * Gets the number of axioms included in the round.
+         * 
+         * @return The number of included axioms.
+         */
+        public long getAxiomsIncluded() {
+            return axiomsIncluded;
+        }
+    }
+}
@@ -18,6 +18,13 @@
 
 package org.incenp.obofoundry.odk;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
 import org.semanticweb.owlapi.model.OWLAnnotationValue;
 import org.semanticweb.owlapi.model.OWLAxiom;
@@ -44,20 +51,33 @@ public final class Util {
      * @return {@code true} if the class is dangling, {@code false} otherwise.
      */
     public static boolean isDangling(OWLOntology ontology, OWLClass klass) {
-        int nAxioms = 0;
+        return ontology.getAnnotationAssertionAxioms(klass.getIRI()).isEmpty() && !hasDefiningAxioms(ontology, klass);
+    }
+
+    /**
+     * Checks whether a class has any defining axiom.
+     * <p>
+     * Disjointness axioms and explicit “SubClassOf owl:Thing” axioms are not
+     * considered as defining axioms. Axioms from the imports closure are taken into
+     * account.
+     * 
+     * @param ontology The ontology the class belongs to.
+     * @param klass    The class to check.
+     * @return {@code true} if the ontology contains at least one defining axiom for
+     *         the class, {@code false} otherwise.
+     */
+    public static boolean hasDefiningAxioms(OWLOntology ontology, OWLClass klass) {
         for ( OWLAxiom ax : ontology.getAxioms(klass, Imports.INCLUDED) ) {
             if ( ax instanceof OWLSubClassOfAxiom ) {
                 // Ignore any explicit "SubClassOf owl:Thing" axiom
                 if ( !((OWLSubClassOfAxiom) ax).getSuperClass().isTopEntity() ) {
-                    nAxioms += 1;
+                    return true;
                 }
             } else if ( !(ax instanceof OWLDisjointClassesAxiom) ) {
-                nAxioms += 1;
+                return true;
             }
         }
-        nAxioms += ontology.getAnnotationAssertionAxioms(klass.getIRI()).size();
-
-        return nAxioms == 0;
+        return false;
     }
 
     /**
@@ -68,7 +88,19 @@ public final class Util {
      * @return {@code true} if the class is obsolete, {@code false} otherwise.
      */
     public static boolean isObsolete(OWLOntology ontology, OWLClass klass) {
-        for ( OWLAnnotationAssertionAxiom ax : ontology.getAnnotationAssertionAxioms(klass.getIRI()) ) {
+        return isObsolete(ontology.getAnnotationAssertionAxioms(klass.getIRI()));
+    }
+
+    /**
+     * Checks whether a set of annotation assertion axioms marks its subject as
+     * obsolete.
+     * 
+     * @param annotations All the annotation assertion axioms about a given entity.
+     * @return {@code true} if any of the annotations marks the entity as obsolete,
+     *         {@code false} otherwise.
+     */
+    public static boolean isObsolete(Collection<OWLAnnotationAssertionAxiom> annotations) {
+        for ( OWLAnnotationAssertionAxiom ax : annotations ) {
             if ( ax.getProperty().isDeprecated() ) {
                 OWLAnnotationValue value = ax.getValue();
                 if ( value.isLiteral() ) {
@@ -81,4 +113,55 @@ public final class Util {
         }
         return false;
     }
+
+    /**
+     * Computes a fingerprint of the contents of an ontology.
+     * <p>
+     * The fingerprint only depends on the set of axioms in the ontology, not on
+     * the order in which they were loaded, so that two ontologies with the same
+     * axioms always get the same fingerprint. It is intended to detect whether an
+     * ontology has changed since a previous run (e.g., to invalidate cached
+     * results): each axiom is hashed with SHA-256, and the sorted list of all the
+     * axiom hashes is itself hashed with SHA-256.
+     * 
+     * @param ontology The ontology to fingerprint.
+     * @param imports  Whether axioms from the imports closure should be taken into
+     *                 account.
+     * @return The fingerprint, as a string of hexadecimal digits.
+     */
+    public static String getFingerprint(OWLOntology ontology, Imports imports) {
+        MessageDigest digest = getSHA256();
+        List<byte[]> hashes = new ArrayList<>();
+        for ( OWLAxiom ax : ontology.getAxioms(imports) ) {
+            hashes.add(digest.digest(ax.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        hashes.sort(Util::compareHashes);
+
+        for ( byte[] hash : hashes ) {
+            digest.update(hash);
+        }
+        StringBuilder sb = new StringBuilder();
+        for ( byte b : digest.digest() ) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest getSHA256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch ( NoSuchAlgorithmException e ) {
+            // Should not happen, all Java platforms are required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int compareHashes(byte[] a, byte[] b) {
+        for ( int i = 0; i < a.length; i++ ) {
+            if ( a[i] != b[i] ) {
+                return (a[i] & 0xff) - (b[i] & 0xff);
+            }
+        }
+        return 0;
+    }
 }
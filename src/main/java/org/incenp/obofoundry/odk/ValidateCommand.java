@@ -19,23 +19,30 @@
 package org.incenp.obofoundry.odk;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.commons.cli.CommandLine;
 import org.obolibrary.robot.CommandLineHelper;
 import org.obolibrary.robot.CommandState;
 import org.obolibrary.robot.MergeOperation;
+import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Suppliers;
+
 /**
  * A command to check the alignment of an ontology against another, upper-level
  * ontology. The ontology is said to be “aligned” if all its classes are
@@ -45,7 +52,7 @@ public class ValidateCommand extends BasePlugin {
 
     private static final Logger logger = LoggerFactory.getLogger(ValidateCommand.class);
 
-    private Set<String> basePrefixes = new HashSet<>();
+    private PrefixMatcher basePrefixes = new PrefixMatcher();
 
     public ValidateCommand() {
         super("validate", "validate alignment with an upper ontology",
@@ -58,6 +65,11 @@ public class ValidateCommand extends BasePlugin {
         options.addOption("d", "ignore-dangling", true, "if true, ignore dangling classes");
 
         options.addOption("r", "reasoner", true, "the reasoner to use");
+        options.addOption(null, "told-hierarchy", true,
+                "if true, use the asserted hierarchy of the ontology instead of a reasoner");
+        options.addOption(null, "hierarchy-cache", true, "cache inferred hierarchies in the specified directory");
+        options.addOption(null, "rebuild-hierarchy-cache", true,
+                "if true, ignore any cached hierarchies and classify the ontology again");
         options.addOption("O", "report-output", true, "write report to the specified file");
         options.addOption("x", "fail", true, "if true (default), fail if the ontology is misaligned");
     }
@@ -91,34 +103,24 @@ public class ValidateCommand extends BasePlugin {
         // way around, so that the current ontology remains unchanged and can be used
         // for further operations downstream in the ROBOT pipeline.
         MergeOperation.mergeInto(state.getOntology(), upperOntology, true, true);
-        OWLReasoner reasoner = CommandLineHelper.getReasonerFactory(line).createReasoner(upperOntology);
-
-        Set<OWLClass> unalignedClasses = new HashSet<>();
-        for ( OWLClass klass : upperOntology.getClassesInSignature(Imports.INCLUDED) ) {
-            if ( !klass.isTopEntity() && !upperClasses.contains(klass) && isInBase(klass.getIRI().toString()) ) {
-                if ( ignoreDangling && Util.isDangling(upperOntology, klass) ) {
-                    continue;
-                }
-                if ( Util.isObsolete(upperOntology, klass) ) {
-                    continue;
-                }
-
-                Set<OWLClass> ancestors = reasoner.getSuperClasses(klass, false).getFlattened();
-                boolean aligned = false;
-                for ( OWLClass upperClass : upperClasses ) {
-                    if ( ancestors.contains(upperClass) ) {
-                        aligned = true;
-                        break;
-                    }
-                }
-                if ( !aligned ) {
-                    // Report only top-level classes (whose only parent is owl:Thing)
-                    if ( ancestors.size() == 1 ) {
-                        unalignedClasses.add(klass);
-                    }
-                }
-            }
+        OWLReasonerFactory reasonerFactory = CommandLineHelper.getReasonerFactory(line);
+        OWLOntology mergedOntology = upperOntology;
+        Supplier<OWLReasoner> reasoner = Suppliers.memoize(() -> reasonerFactory.createReasoner(mergedOntology));
+        InferredHierarchies hierarchies;
+        if ( CommandLineHelper.getBooleanValue(line, "told-hierarchy", false) ) {
+            hierarchies = InferredHierarchies.fromAssertedAxioms(mergedOntology);
+        } else if ( line.hasOption("hierarchy-cache") ) {
+            FileCache cache = new FileCache(new File(line.getOptionValue("hierarchy-cache")));
+            String key = FileCache.makeKey("hierarchy", Util.getFingerprint(upperOntology, Imports.INCLUDED),
+                    line.getOptionValue("reasoner", "ELK").toUpperCase());
+            hierarchies = InferredHierarchies.fromCache(cache, key, upperOntology, reasoner,
+                    CommandLineHelper.getBooleanValue(line, "rebuild-hierarchy-cache", false));
+        } else {
+            hierarchies = InferredHierarchies.fromReasoner(reasoner);
         }
+        EntityHierarchy<OWLClass> hierarchy = hierarchies.getClassHierarchy();
+        Set<OWLClass> unalignedClasses = findUnalignedClasses(upperOntology, upperClasses, hierarchy, basePrefixes,
+                ignoreDangling);
 
         if ( line.hasOption("report-output") ) {
             // If a report has been requested, we always produce it, even if no unaligned
@@ -144,12 +146,78 @@ public class ValidateCommand extends BasePlugin {
         }
     }
 
-    private boolean isInBase(String iri) {
-        for ( String base : basePrefixes ) {
-            if ( iri.startsWith(base) ) {
-                return true;
+    /**
+     * Finds the top-level classes of an ontology that are not aligned with an
+     * upper ontology.
+     * 
+     * @param ontology       The ontology to check, merged with the upper ontology.
+     * @param upperClasses   The classes of the upper ontology (excluding
+     *                       owl:Thing).
+     * @param hierarchy      The inferred class hierarchy of the merged ontology.
+     * @param basePrefixes   If not empty, only classes in one of these namespaces
+     *                       are checked.
+     * @param ignoreDangling If {@code true}, dangling classes are not checked.
+     * @return The classes that are not aligned, and whose only parent is
+     *         owl:Thing.
+     */
+    public static Set<OWLClass> findUnalignedClasses(OWLOntology ontology, Set<OWLClass> upperClasses,
+            EntityHierarchy<OWLClass> hierarchy, PrefixMatcher basePrefixes, boolean ignoreDangling) {
+        ClassStatusCache statusCache = new ClassStatusCache(ontology);
+        Set<OWLClass> classes = ontology.getClassesInSignature(Imports.INCLUDED);
+
+        // Mark all the classes under the upper ontology in a single top-down pass
+        hierarchy.preload(classes);
+        BitSet alignedIds = hierarchy.getDescendants(hierarchy.getIndex().getIds(upperClasses));
+
+        Set<OWLClass> unalignedClasses = new HashSet<>();
+        for ( OWLClass klass : classes ) {
+            if ( !klass.isTopEntity() && !upperClasses.contains(klass) && isInBase(basePrefixes, klass.getIRI()) ) {
+                if ( ignoreDangling && statusCache.isDangling(klass) ) {
+                    continue;
+                }
+                if ( statusCache.isObsolete(klass) ) {
+                    continue;
+                }
+
+                int id = hierarchy.getIndex().getId(klass);
+                // Report only top-level classes (whose only parent is owl:Thing)
+                if ( !alignedIds.get(id) && hasSingleAncestor(hierarchy, id) ) {
+                    unalignedClasses.add(klass);
+                }
             }
         }
-        return basePrefixes.isEmpty();
+        logger.debug("class status cache: {} hits, {} misses", statusCache.getHits(), statusCache.getMisses());
+
+        return unalignedClasses;
+    }
+
+    /*
+     * Checks whether a class has exactly one ancestor, without computing the full
+     * set of its ancestors.
+     */
+    private static boolean hasSingleAncestor(EntityHierarchy<OWLClass> hierarchy, int id) {
+        int ancestor = -1;
+        for ( int parent : hierarchy.getParents(id) ) {
+            if ( parent != id ) {
+                if ( ancestor == -1 ) {
+                    ancestor = parent;
+                } else if ( parent != ancestor ) {
+                    return false;
+                }
+            }
+        }
+        if ( ancestor == -1 ) {
+            return false;
+        }
+        for ( int parent : hierarchy.getParents(ancestor) ) {
+            if ( parent != id && parent != ancestor ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInBase(PrefixMatcher basePrefixes, IRI iri) {
+        return basePrefixes.isEmpty() || basePrefixes.matches(iri);
     }
 }
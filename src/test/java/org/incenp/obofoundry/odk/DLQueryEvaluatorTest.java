@@ -0,0 +1,110 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+public class DLQueryEvaluatorTest {
+
+    private static final String PREFIX = "http://purl.obolibrary.org/obo/UBERON_";
+    private static final int N_CLASSES = 200;
+
+    @Test
+    public void testConcurrentQueriesMatchReasoner() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = createOntology(manager);
+        OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ontology);
+        OWLObjectProperty partOf = factory
+                .getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+
+        List<OWLClassExpression> queries = new ArrayList<>();
+        for ( int i = 1; i < N_CLASSES; i += 9 ) {
+            queries.add(getClass(factory, i));
+            queries.add(factory.getOWLObjectSomeValuesFrom(partOf, getClass(factory, i)));
+        }
+        queries.add(getClass(factory, 300));
+
+        DLQueryEvaluator evaluator = new DLQueryEvaluator(ontology, () -> reasoner,
+                InferredHierarchies.fromReasoner(() -> reasoner), 4);
+        evaluator.evaluate(queries, true);
+
+        for ( OWLClassExpression query : queries ) {
+            Set<OWLClass> expected = new HashSet<>(reasoner.getSubClasses(query, false).getFlattened());
+            expected.remove(factory.getOWLNothing());
+            assertEquals(query.toString(), expected, evaluator.getSubClasses(query));
+
+            expected = new HashSet<>(reasoner.getEquivalentClasses(query).getEntities());
+            expected.remove(factory.getOWLNothing());
+            expected.remove(factory.getOWLThing());
+            assertEquals(query.toString(), expected, evaluator.getEquivalentClasses(query));
+
+            expected = new HashSet<>(reasoner.getSuperClasses(query, false).getFlattened());
+            expected.remove(factory.getOWLThing());
+            assertEquals(query.toString(), expected, evaluator.getSuperClasses(query));
+        }
+        assertFalse(evaluator.getEquivalentClasses(getClass(factory, 300)).isEmpty());
+        reasoner.dispose();
+    }
+
+    /*
+     * Creates a test ontology with a hierarchy of classes, some existential
+     * restrictions between them, and a class equivalent to one of them.
+     */
+    private OWLOntology createOntology(OWLOntologyManager manager) throws Exception {
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://purl.obolibrary.org/obo/test.owl"));
+        OWLObjectProperty partOf = factory
+                .getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+
+        for ( int i = 1; i < N_CLASSES; i++ ) {
+            OWLClass klass = getClass(factory, i);
+            manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass, getClass(factory, (i - 1) / 2)));
+            if ( i % 7 == 0 ) {
+                manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass,
+                        factory.getOWLObjectSomeValuesFrom(partOf, getClass(factory, i / 7))));
+            }
+        }
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(getClass(factory, 300), getClass(factory, 10)));
+
+        return ontology;
+    }
+
+    private OWLClass getClass(OWLDataFactory factory, int i) {
+        return factory.getOWLClass(IRI.create(String.format("%s%07d", PREFIX, i)));
+    }
+}
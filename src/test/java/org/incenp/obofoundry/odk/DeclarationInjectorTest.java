@@ -0,0 +1,116 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+public class DeclarationInjectorTest {
+
+    private static final String OBO = "http://purl.obolibrary.org/obo/";
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    @Test
+    public void testIndexedScanMatchesFullScan() throws Exception {
+        Set<String> prefixes = Collections.singleton(OBO);
+
+        OWLOntology expected = createOntology();
+        DeclarationInjector full = new DeclarationInjector(prefixes, true, true);
+        full.setUseIndex(false);
+        new NormalizationPass().addStep(full).run(expected);
+
+        OWLOntology injected = createOntology();
+        new DeclarationInjector(prefixes, true, true).inject(injected);
+
+        // Same, from within a pass shared with another step
+        OWLOntology shared = createOntology();
+        new NormalizationPass().addStep(new AxiomMerger()).addStep(new DeclarationInjector(prefixes, true, true))
+                .run(shared, 2);
+
+        assertTrue(expected.containsAxiom(getSubsetDeclaration("SUBSET_0", Constants.SUBSET_PROPERTY)));
+        assertTrue(expected.containsAxiom(getSubsetDeclaration("SUBSET_1", Constants.SUBSET_PROPERTY)));
+        assertTrue(expected.containsAxiom(getSubsetDeclaration("SYNONYM", Constants.SYNONYM_TYPE_PROPERTY)));
+        assertFalse(expected.containsAxiom(factory.getOWLSubAnnotationPropertyOfAxiom(
+                factory.getOWLAnnotationProperty(IRI.create("http://example.org/SUBSET")),
+                factory.getOWLAnnotationProperty(Constants.SUBSET_PROPERTY))));
+        assertEquals(expected.getAxioms(), injected.getAxioms());
+        assertEquals(expected.getAxioms(), shared.getAxioms());
+    }
+
+    /*
+     * Creates a test ontology with subset and synonym type values found in
+     * annotation assertions and in axiom annotations, one of them outside of the
+     * injected namespace.
+     */
+    private OWLOntology createOntology() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create(OBO + "test.owl"));
+        OWLAnnotationProperty inSubset = factory.getOWLAnnotationProperty(Constants.IN_SUBSET);
+        OWLAnnotationProperty synonymType = factory.getOWLAnnotationProperty(Constants.HAS_SYNONYM_TYPE);
+        OWLAnnotationProperty exactSynonym = factory
+                .getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasExactSynonym"));
+
+        Set<OWLAxiom> axioms = new HashSet<>();
+        for ( int i = 1; i < 20; i++ ) {
+            OWLClass klass = factory.getOWLClass(IRI.create(String.format("%sUBERON_%07d", OBO, i)));
+            axioms.add(factory.getOWLDeclarationAxiom(klass));
+            axioms.add(factory.getOWLSubClassOfAxiom(klass, factory.getOWLThing()));
+            if ( i % 3 == 0 ) {
+                axioms.add(factory.getOWLAnnotationAssertionAxiom(inSubset, klass.getIRI(),
+                        IRI.create(OBO + "test#SUBSET_0")));
+            }
+            if ( i % 5 == 0 ) {
+                // A subset value found only in an axiom annotation
+                axioms.add(factory.getOWLSubClassOfAxiom(klass, factory.getOWLNothing(), Collections.singleton(
+                        factory.getOWLAnnotation(inSubset, IRI.create(OBO + "test#SUBSET_1")))));
+            }
+            if ( i % 7 == 0 ) {
+                axioms.add(factory.getOWLAnnotationAssertionAxiom(exactSynonym, klass.getIRI(),
+                        factory.getOWLLiteral("synonym " + i), Collections.singleton(
+                                factory.getOWLAnnotation(synonymType, IRI.create(OBO + "test#SYNONYM")))));
+            }
+        }
+        axioms.add(factory.getOWLAnnotationAssertionAxiom(inSubset, IRI.create(OBO + "UBERON_0000001"),
+                IRI.create("http://example.org/SUBSET")));
+        manager.addAxioms(ontology, axioms);
+        return ontology;
+    }
+
+    private OWLAxiom getSubsetDeclaration(String name, IRI parent) {
+        return factory.getOWLSubAnnotationPropertyOfAxiom(
+                factory.getOWLAnnotationProperty(IRI.create(OBO + "test#" + name)),
+                factory.getOWLAnnotationProperty(parent));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+public class EntityHierarchyTest {
+
+    private static final String PREFIX = "http://purl.obolibrary.org/obo/UBERON_";
+
+    @Test
+    public void testSameAncestorsAndDescendantsAsReasoner() throws Exception {
+        OWLOntology ontology = createOntology();
+        OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ontology);
+        EntityHierarchy<OWLClass> hierarchy = InferredHierarchies.fromReasoner(() -> reasoner).getClassHierarchy();
+
+        Set<OWLClass> classes = ontology.getClassesInSignature(Imports.INCLUDED);
+        hierarchy.preload(classes);
+        EntityIndex<OWLClass> index = hierarchy.getIndex();
+
+        // Query the leaves first, then everything again, so that we get both
+        // computed-on-demand and remembered results
+        for ( int pass = 0; pass < 2; pass++ ) {
+            for ( OWLClass klass : classes ) {
+                Set<OWLClass> expected = new HashSet<>(reasoner.getSuperClasses(klass, false).getFlattened());
+                assertEquals(klass.toString(), expected,
+                        index.getEntities(hierarchy.getAncestors(index.getId(klass))));
+
+                expected = new HashSet<>(reasoner.getSubClasses(klass, false).getFlattened());
+                expected.remove(ontology.getOWLOntologyManager().getOWLDataFactory().getOWLNothing());
+                assertEquals(klass.toString(), expected,
+                        index.getEntities(hierarchy.getDescendants(index.getId(klass))));
+            }
+        }
+        reasoner.dispose();
+    }
+
+    @Test
+    public void testAncestorsInCyclicHierarchy() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = manager.createOntology();
+
+        // 1 -> 2 -> 3 -> 1, 4 -> 2, 5 -> 4, 3 -> 6, 7 -> 6
+        int[][] edges = { { 1, 2 }, { 2, 3 }, { 3, 1 }, { 4, 2 }, { 5, 4 }, { 3, 6 }, { 7, 6 } };
+        for ( int[] edge : edges ) {
+            manager.addAxiom(ontology,
+                    factory.getOWLSubClassOfAxiom(getClass(factory, edge[0]), getClass(factory, edge[1])));
+        }
+
+        EntityHierarchy<OWLClass> hierarchy = InferredHierarchies.fromAssertedAxioms(ontology).getClassHierarchy();
+        EntityIndex<OWLClass> index = hierarchy.getIndex();
+        for ( int i = 1; i <= 7; i++ ) {
+            int id = index.getId(getClass(factory, i));
+            assertEquals(String.valueOf(i), naiveAncestors(hierarchy, id), hierarchy.getAncestors(id));
+        }
+    }
+
+    @Test
+    public void testDescendantsOfSeveralEntities() throws Exception {
+        OWLOntology ontology = createOntology();
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        EntityHierarchy<OWLClass> hierarchy = InferredHierarchies.fromAssertedAxioms(ontology).getClassHierarchy();
+        EntityIndex<OWLClass> index = hierarchy.getIndex();
+
+        BitSet roots = new BitSet();
+        BitSet expected = new BitSet();
+        for ( int i : new int[] { 2, 5, 9 } ) {
+            int id = index.getId(getClass(factory, i));
+            roots.set(id);
+            expected.or(hierarchy.getDescendants(id));
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, hierarchy.getDescendants(roots));
+    }
+
+    @Test
+    public void testFindUnalignedClasses() throws Exception {
+        OWLOntology ontology = createOntology();
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        OWLReasoner reasoner = new ElkReasonerFactory().createReasoner(ontology);
+        EntityHierarchy<OWLClass> hierarchy = InferredHierarchies.fromReasoner(() -> reasoner).getClassHierarchy();
+
+        Set<OWLClass> upperClasses = new HashSet<>();
+        upperClasses.add(getClass(factory, 1));
+        upperClasses.add(getClass(factory, 3));
+
+        Set<OWLClass> expected = new HashSet<>();
+        for ( OWLClass klass : ontology.getClassesInSignature(Imports.INCLUDED) ) {
+            if ( !klass.isTopEntity() && !upperClasses.contains(klass) ) {
+                Set<OWLClass> ancestors = reasoner.getSuperClasses(klass, false).getFlattened();
+                if ( ancestors.size() == 1 && !ancestors.removeAll(upperClasses) ) {
+                    expected.add(klass);
+                }
+            }
+        }
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, ValidateCommand.findUnalignedClasses(ontology, upperClasses, hierarchy,
+                new PrefixMatcher(), false));
+        reasoner.dispose();
+    }
+
+    /*
+     * Computes the ancestors of an entity by walking the parents graph, without
+     * relying on any remembered set.
+     */
+    private BitSet naiveAncestors(EntityHierarchy<OWLClass> hierarchy, int id) {
+        BitSet result = new BitSet();
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(id);
+        while ( !queue.isEmpty() ) {
+            for ( int parent : hierarchy.getParents(queue.poll()) ) {
+                if ( !result.get(parent) ) {
+                    result.set(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        result.clear(id);
+        return result;
+    }
+
+    /*
+     * Creates a test ontology with several roots, multiple inheritance,
+     * equivalent classes, and a defined class.
+     */
+    private OWLOntology createOntology() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://purl.obolibrary.org/obo/test.owl"));
+        OWLObjectProperty partOf = factory
+                .getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+
+        Map<Integer, int[]> parents = new HashMap<>();
+        parents.put(2, new int[] { 1 });
+        parents.put(4, new int[] { 3 });
+        parents.put(5, new int[] { 2, 4 });
+        parents.put(6, new int[] { 5 });
+        parents.put(7, new int[] { 5, 2 });
+        parents.put(8, new int[] { 6, 7 });
+        parents.put(9, new int[] { 1 });
+        parents.put(10, new int[] { 9 });
+        for ( Map.Entry<Integer, int[]> entry : parents.entrySet() ) {
+            for ( int parent : entry.getValue() ) {
+                manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(getClass(factory, entry.getKey()),
+                        getClass(factory, parent)));
+            }
+        }
+        for ( int i = 1; i <= 13; i++ ) {
+            manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(getClass(factory, i)));
+        }
+
+        // 11 is equivalent to 10, and 12 is defined as a 1 that is part of a 3
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(getClass(factory, 11), getClass(factory, 10)));
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(getClass(factory, 12), factory
+                .getOWLObjectIntersectionOf(getClass(factory, 1),
+                        factory.getOWLObjectSomeValuesFrom(partOf, getClass(factory, 3)))));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(getClass(factory, 6),
+                factory.getOWLObjectSomeValuesFrom(partOf, getClass(factory, 4))));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(getClass(factory, 13), getClass(factory, 13)));
+
+        return ontology;
+    }
+
+    private OWLClass getClass(OWLDataFactory factory, int i) {
+        return factory.getOWLClass(IRI.create(String.format("%s%07d", PREFIX, i)));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.obolibrary.robot.QuotedEntityChecker;
+import org.obolibrary.robot.providers.CURIEShortFormProvider;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+public class LabelIndexTest {
+
+    private static final String PREFIX = "http://purl.obolibrary.org/obo/UBERON_";
+
+    @Test
+    public void testSameNamesAsEntityChecker() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+
+        // main imports first, which imports second; other is not imported at all
+        List<OWLOntology> ontologies = new ArrayList<>();
+        List<OWLClass> classes = new ArrayList<>();
+        for ( String name : new String[] { "main", "first", "second", "other" } ) {
+            OWLOntology ontology = manager
+                    .createOntology(IRI.create("http://purl.obolibrary.org/obo/" + name + ".owl"));
+            for ( int i = 0; i < 5; i++ ) {
+                OWLClass klass = factory
+                        .getOWLClass(IRI.create(String.format("%s%07d", PREFIX, ontologies.size() * 10 + i)));
+                manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(klass));
+                manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(),
+                        klass.getIRI(), factory.getOWLLiteral(name + " class " + i)));
+                classes.add(klass);
+            }
+            ontologies.add(ontology);
+        }
+        for ( int i = 0; i < 2; i++ ) {
+            manager.applyChange(new AddImport(ontologies.get(i),
+                    factory.getOWLImportsDeclaration(ontologies.get(i + 1).getOntologyID().getOntologyIRI().get())));
+        }
+        // A label for an imported class, asserted in the main ontology
+        manager.addAxiom(ontologies.get(0), factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(),
+                classes.get(10).getIRI(), factory.getOWLLiteral("relabelled class")));
+
+        Map<String, String> prefixes = new HashMap<>();
+        prefixes.put("UBERON", PREFIX);
+        CURIEShortFormProvider provider = new CURIEShortFormProvider(prefixes);
+
+        QuotedEntityChecker expected = new QuotedEntityChecker();
+        expected.addProperty(factory.getRDFSLabel());
+        expected.addProvider(provider);
+        expected.addAll(ontologies.get(0));
+
+        QuotedEntityChecker actual = new QuotedEntityChecker();
+        actual.addProperty(factory.getRDFSLabel());
+        actual.addProvider(provider);
+        LabelIndex.fromOntology(ontologies.get(0), factory.getRDFSLabel(), provider).addTo(actual);
+
+        assertNotNull(expected.getOWLClass("'relabelled class'"));
+        assertEquals(expected.getOWLClass("'relabelled class'"), actual.getOWLClass("'relabelled class'"));
+        for ( OWLClass klass : classes ) {
+            String curie = provider.getShortForm(klass);
+            assertEquals(curie, expected.getOWLClass(curie), actual.getOWLClass(curie));
+            assertEquals(curie, expected.getLabel(klass.getIRI()), actual.getLabel(klass.getIRI()));
+            for ( String name : new String[] { "main", "first", "second", "other" } ) {
+                String label = String.format("'%s class %d'", name, classes.indexOf(klass) % 10);
+                assertEquals(label, expected.getOWLClass(label), actual.getOWLClass(label));
+            }
+        }
+    }
+}
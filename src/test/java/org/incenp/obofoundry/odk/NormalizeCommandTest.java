@@ -0,0 +1,209 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.obolibrary.robot.CommandState;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import com.google.common.base.Optional;
+
+public class NormalizeCommandTest {
+
+    private static final String OBO = "http://purl.obolibrary.org/obo/";
+    private static final int N_CLASSES = 2500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStreamingMatchesInMemory() throws Exception {
+        File input = createOntology();
+        String[] args = { "--all", "--add-source", "true" };
+
+        OWLOntology expected = runNormalize(input, "normal.ofn", args);
+        OWLOntology actual = runNormalize(input, "streamed.ofn", withStreaming(args));
+
+        // Enough axioms for several batches
+        assertTrue(expected.getAxiomCount() > N_CLASSES);
+        assertSameOntology(expected, actual);
+    }
+
+    @Test
+    public void testStreamingWithoutMergingMatchesInMemory() throws Exception {
+        File input = createOntology();
+        File compressed = new File(folder.getRoot(), "test.ofn.gz");
+        try ( OutputStream stream = new GZIPOutputStream(new FileOutputStream(compressed)) ) {
+            Files.copy(input.toPath(), stream);
+        }
+        String[] args = { "--subset-decls", "true", "--synonym-decls", "true" };
+
+        OWLOntology expected = runNormalize(input, "normal.ofn", args);
+        OWLOntology actual = runNormalize(compressed, "streamed.ofn", withStreaming(args));
+
+        assertTrue(expected.getAxiomCount() > N_CLASSES);
+        assertSameOntology(expected, actual);
+    }
+
+    @Test
+    public void testMergeMatchesBaseline() throws Exception {
+        assertMatchesBaseline("merge", "--merge-axioms", "true");
+    }
+
+    @Test
+    public void testParallelMergeMatchesBaseline() throws Exception {
+        assertMatchesBaseline("merge", "--merge-axioms", "true", "--merge-threads", "1");
+        assertMatchesBaseline("merge", "--merge-axioms", "true", "--merge-threads", "4");
+    }
+
+    @Test
+    public void testAllOperationsMatchBaseline() throws Exception {
+        assertMatchesBaseline("all", "--all", "--add-source", "true");
+    }
+
+    @Test
+    public void testDeclarationsMatchBaseline() throws Exception {
+        assertMatchesBaseline("decls", "--subset-decls", "true", "--synonym-decls", "true");
+    }
+
+    /*
+     * Normalizes the fixture ontology, and checks that the result is the same as
+     * the ontology normalized with the same options by the original, unoptimized
+     * version of the command.
+     */
+    private void assertMatchesBaseline(String name, String... args) throws Exception {
+        File fixture = new File(getClass().getResource("normalize-fixture.ofn").toURI());
+        OWLOntology actual = runNormalize(fixture, name + ".ofn", args);
+
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology expected = manager.loadOntologyFromOntologyDocument(
+                new File(getClass().getResource("normalize-baseline/" + name + ".ofn").toURI()));
+        assertSameOntology(expected, actual);
+    }
+
+    private void assertSameOntology(OWLOntology expected, OWLOntology actual) {
+        assertTrue(expected.getAxiomCount() > 0);
+        assertEquals(expected.getOntologyID(), actual.getOntologyID());
+        assertEquals(expected.getAnnotations(), actual.getAnnotations());
+        assertEquals(expected.getImportsDeclarations(), actual.getImportsDeclarations());
+        assertEquals(expected.getAxioms(), actual.getAxioms());
+    }
+
+    private String[] withStreaming(String[] args) {
+        List<String> list = new ArrayList<>(Arrays.asList(args));
+        list.add("--streaming");
+        list.add("true");
+        return list.toArray(new String[0]);
+    }
+
+    /*
+     * Normalizes the given file, and loads the result.
+     */
+    private OWLOntology runNormalize(File input, String output, String... extraArgs) throws Exception {
+        File outputFile = new File(folder.getRoot(), output);
+        List<String> args = new ArrayList<>();
+        args.addAll(Arrays.asList("--input", input.getPath(), "--output", outputFile.getPath()));
+        args.addAll(Arrays.asList(extraArgs));
+        new NormalizeCommand().execute(new CommandState(), args.toArray(new String[0]));
+
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        return manager.loadOntologyFromOntologyDocument(outputFile);
+    }
+
+    /*
+     * Creates a test ontology with enough axioms to need several parsing batches,
+     * axioms that differ only by their annotations, subset and synonym type
+     * annotations, and labels that contain characters that are special in the
+     * functional syntax.
+     */
+    private File createOntology() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = manager.createOntology(new OWLOntologyID(Optional.of(IRI.create(OBO + "test.owl")),
+                Optional.of(IRI.create(OBO + "test/2025-01-01/test.owl"))));
+        manager.applyChange(new AddOntologyAnnotation(ontology, factory.getOWLAnnotation(
+                factory.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/terms/title")),
+                factory.getOWLLiteral("Test (ontology)"))));
+
+        OWLAnnotationProperty comment = factory.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_COMMENT.getIRI());
+        OWLAnnotationProperty inSubset = factory.getOWLAnnotationProperty(Constants.IN_SUBSET);
+        OWLAnnotationProperty synonymType = factory.getOWLAnnotationProperty(Constants.HAS_SYNONYM_TYPE);
+        OWLAnnotationProperty exactSynonym = factory
+                .getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasExactSynonym"));
+
+        for ( int i = 1; i < N_CLASSES; i++ ) {
+            OWLClass klass = getClass(factory, i);
+            manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(klass));
+            manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), klass.getIRI(),
+                    factory.getOWLLiteral(String.format("class %d (a \"quoted\\\" (label)", i))));
+            manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass, getClass(factory, (i - 1) / 2)));
+            if ( i % 5 == 0 ) {
+                for ( String source : new String[] { "source A)", "# source B" } ) {
+                    OWLAnnotation annotation = factory.getOWLAnnotation(comment, factory.getOWLLiteral(source));
+                    manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass, getClass(factory, i / 5),
+                            Collections.singleton(annotation)));
+                }
+            }
+            if ( i % 11 == 0 ) {
+                manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(inSubset, klass.getIRI(),
+                        IRI.create(OBO + "test#SUBSET_" + i % 3)));
+            }
+            if ( i % 13 == 0 ) {
+                OWLAnnotation annotation = factory.getOWLAnnotation(synonymType,
+                        IRI.create(OBO + "test#SYNONYM_" + i % 2));
+                manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(exactSynonym, klass.getIRI(),
+                        factory.getOWLLiteral("synonym <" + i + ">"), Collections.singleton(annotation)));
+            }
+        }
+
+        File file = folder.newFile("test.ofn");
+        manager.saveOntology(ontology, new FunctionalSyntaxDocumentFormat(), IRI.create(file));
+        return file;
+    }
+
+    private OWLClass getClass(OWLDataFactory factory, int i) {
+        return factory.getOWLClass(IRI.create(String.format("%sUBERON_%07d", OBO, i)));
+    }
+}
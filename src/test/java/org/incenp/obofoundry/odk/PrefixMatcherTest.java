@@ -0,0 +1,63 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.model.IRI;
+
+public class PrefixMatcherTest {
+
+    @Test
+    public void testMatchesLikeStartsWith() {
+        String[] prefixes = { "http://purl.obolibrary.org/obo/UBERON_", "http://purl.obolibrary.org/obo/CL_",
+                "http://purl.obolibrary.org/obo/UBERON_00" };
+        String[] values = { "http://purl.obolibrary.org/obo/UBERON_0000955",
+                "http://purl.obolibrary.org/obo/CL_0000000", "http://purl.obolibrary.org/obo/GO_0005634",
+                "http://purl.obolibrary.org/obo/UBERON", "http://purl.obolibrary.org/obo/CL_", "",
+                "http://example.org/" };
+        PrefixMatcher matcher = new PrefixMatcher(Arrays.asList(prefixes));
+
+        for ( String value : values ) {
+            boolean expected = false;
+            for ( String prefix : prefixes ) {
+                expected |= value.startsWith(prefix);
+            }
+            assertEquals(value, expected, matcher.matches(value));
+            assertEquals(value, expected, matcher.matches(IRI.create(value)));
+        }
+        assertEquals(3, matcher.size());
+    }
+
+    @Test
+    public void testEmptyPrefixMatchesEverything() {
+        PrefixMatcher matcher = new PrefixMatcher();
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches("http://example.org/"));
+
+        matcher.add("");
+        assertTrue(matcher.matches("http://example.org/"));
+        assertTrue(matcher.matches(""));
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.obolibrary.robot.CommandState;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+public class SubsetCommandTest {
+
+    private static final String PREFIX = "http://purl.obolibrary.org/obo/UBERON_";
+    private static final int N_CLASSES = 200;
+
+    private static final String[] BATCH = {
+            "# Several subsets, two of them with the same ontology IRI",
+            "--term UBERON:0000010 --term UBERON:0000150 --fill-gaps true --write-to subset1.ofn",
+            "--subset TEST_SUBSET --write-to subset2.ofn --ontology-iri http://example.org/subset.owl",
+            "--subset TEST_SUBSET --fill-gaps true --write-to subset3.ofn --ontology-iri http://example.org/subset.owl",
+            "--query UBERON:0000003 --write-to subset4.ofn",
+            "--query UBERON:0000005 --ancestors true --fill-gaps true --write-to subset5.ofn",
+            "--term UBERON:0000199 --fill-gaps true --no-dangling false --write-to subset6.ofn" };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParallelBatchMatchesSequentialBatch() throws Exception {
+        File input = createOntology();
+
+        File sequential = runBatch(input, 1);
+        File parallel = runBatch(input, 4);
+
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        for ( int i = 1; i <= 6; i++ ) {
+            String name = String.format("subset%d.ofn", i);
+            OWLOntology expected = manager.loadOntologyFromOntologyDocument(new File(sequential, name));
+            manager.removeOntology(expected);
+            OWLOntology actual = manager.loadOntologyFromOntologyDocument(new File(parallel, name));
+            manager.removeOntology(actual);
+
+            assertTrue(name + " is empty", expected.getAxiomCount() > 0);
+            assertEquals(name, expected.getOntologyID().getOntologyIRI(),
+                    actual.getOntologyID().getOntologyIRI());
+            assertEquals(name, expected.getAxioms(), actual.getAxioms());
+        }
+    }
+
+    @Test
+    public void testCachedRunMatchesColdRun() throws Exception {
+        File input = createOntology();
+        File caches = folder.newFolder("caches");
+        String[] cacheArgs = { "--closure-cache", caches.getPath(), "--hierarchy-cache", caches.getPath() };
+
+        Set<OWLAxiom> expected = runSubset(input, "cold.ofn");
+        Set<OWLAxiom> populating = runSubset(input, "populating.ofn", cacheArgs);
+        assertEquals(2, caches.listFiles().length);
+        Set<OWLAxiom> cached = runSubset(input, "cached.ofn", cacheArgs);
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, populating);
+        assertEquals(expected, cached);
+    }
+
+    @Test
+    public void testInvalidCachesAreIgnored() throws Exception {
+        File input = createOntology();
+        File caches = folder.newFolder("caches");
+        String[] cacheArgs = { "--closure-cache", caches.getPath(), "--hierarchy-cache", caches.getPath() };
+
+        Set<OWLAxiom> expected = runSubset(input, "cold.ofn");
+        runSubset(input, "populating.ofn", cacheArgs);
+        File[] cachedFiles = caches.listFiles();
+        assertEquals(2, cachedFiles.length);
+
+        Random random = new Random(42);
+        for ( int i = 0; i < 10; i++ ) {
+            for ( File cachedFile : cachedFiles ) {
+                byte[] contents = Files.readAllBytes(cachedFile.toPath());
+                if ( i % 2 == 0 ) {
+                    // Truncated file
+                    contents = Arrays.copyOf(contents, random.nextInt(contents.length));
+                } else {
+                    // Valid header followed by garbage
+                    byte[] garbage = new byte[contents.length - 8];
+                    random.nextBytes(garbage);
+                    System.arraycopy(garbage, 0, contents, 8, garbage.length);
+                }
+                Files.write(cachedFile.toPath(), contents);
+            }
+
+            assertEquals(expected, runSubset(input, "recovered" + i + ".ofn", cacheArgs));
+        }
+    }
+
+    @Test
+    public void testIncrementalRunMatchesColdRun() throws Exception {
+        File input = createOntology();
+        File closure = new File(folder.getRoot(), "subset.closure");
+        runSubset(input, "previous.ofn", "--save-closure", closure.getPath());
+
+        // Modify the ontology, and save the changes separately
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = manager.loadOntologyFromOntologyDocument(input);
+        OWLAxiom change = factory.getOWLSubClassOfAxiom(getClass(factory, 10), getClass(factory, 170));
+        manager.addAxiom(ontology, change);
+        File modified = new File(folder.getRoot(), "modified.ofn");
+        manager.saveOntology(ontology, new FunctionalSyntaxDocumentFormat(), IRI.create(modified));
+        OWLOntology changes = manager.createOntology(Collections.singleton(change));
+        File added = new File(folder.getRoot(), "added.ofn");
+        manager.saveOntology(changes, new FunctionalSyntaxDocumentFormat(), IRI.create(added));
+
+        Set<OWLAxiom> expected = runSubset(modified, "cold.ofn");
+        Set<OWLAxiom> incremental = runSubset(modified, "incremental.ofn", "--previous-closure", closure.getPath(),
+                "--added-axioms", added.getPath());
+
+        assertTrue(expected.contains(change));
+        assertEquals(expected, incremental);
+    }
+
+    @Test
+    public void testClosureMatchesBaseline() throws Exception {
+        assertMatchesBaseline("terms", "--term", "UBERON:0000010", "--term", "UBERON:0000150");
+        assertMatchesBaseline("terms-fill-gaps", "--term", "UBERON:0000010", "--term", "UBERON:0000150",
+                "--fill-gaps", "true");
+        assertMatchesBaseline("query-ancestors", "--query", "UBERON:0000003", "--ancestors", "true", "--fill-gaps",
+                "true", "--no-dangling", "false");
+        assertMatchesBaseline("subset-tag", "--subset", "TEST_SUBSET", "--fill-gaps", "true");
+    }
+
+    @Test
+    public void testGeneralClassAxiomsMatchBaseline() throws Exception {
+        assertMatchesBaseline("gci", "--term", "UBERON:0000030", "--term", "UBERON:0000077", "--term", "CL:0000004",
+                "--fill-gaps", "true");
+        assertMatchesBaseline("gci-dangling", "--term", "UBERON:0000040", "--term", "UBERON:0000121", "--term",
+                "UBERON:0000025", "--fill-gaps", "true", "--no-dangling", "false");
+    }
+
+    @Test
+    public void testPropertyChainsMatchBaseline() throws Exception {
+        assertMatchesBaseline("chains", "--term", "UBERON:0000063", "--term", "CL:0000006", "--fill-gaps", "true",
+                "--follow-property", "BFO:0000050", "--follow-property", "RO:0002202");
+        assertMatchesBaseline("chains-all", "--term", "UBERON:0000153", "--term", "UBERON:0000034", "--fill-gaps",
+                "true");
+    }
+
+    @Test
+    public void testPrefixFiltersMatchBaseline() throws Exception {
+        assertMatchesBaseline("follow-in", "--term", "UBERON:0000140", "--term", "CL:0000011", "--fill-gaps", "true",
+                "--follow-in", "http://purl.obolibrary.org/obo/UBERON_");
+        assertMatchesBaseline("not-follow-in", "--term", "UBERON:0000140", "--term", "CL:0000011", "--fill-gaps",
+                "true", "--not-follow-in", "http://purl.obolibrary.org/obo/CL_", "--no-dangling", "false");
+    }
+
+    @Test
+    public void testStreamedOutputMatchesInMemoryOutput() throws Exception {
+        String[][] cases = { { "--term", "UBERON:0000010", "--term", "UBERON:0000150" },
+                { "--subset", "TEST_SUBSET", "--fill-gaps", "true", "--ontology-iri", "http://example.org/subset.owl" },
+                { "--term", "UBERON:0000030", "--term", "CL:0000004", "--fill-gaps", "true", "--no-dangling",
+                        "false" } };
+
+        for ( int i = 0; i < cases.length; i++ ) {
+            OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+            OWLOntology expected = manager.loadOntologyFromOntologyDocument(
+                    extractFromFixture("in-memory" + i + ".ofn", cases[i]));
+            manager.removeOntology(expected);
+            List<String> args = new ArrayList<>(Arrays.asList(cases[i]));
+            args.addAll(Arrays.asList("--streaming-output", "true"));
+            OWLOntology actual = manager.loadOntologyFromOntologyDocument(
+                    extractFromFixture("streamed" + i + ".ofn", args.toArray(new String[0])));
+
+            String name = String.join(" ", cases[i]);
+            assertTrue(name, expected.getAxiomCount() > 0);
+            assertEquals(name, expected.getOntologyID().getOntologyIRI(), actual.getOntologyID().getOntologyIRI());
+            assertEquals(name, expected.getAxioms(), actual.getAxioms());
+        }
+    }
+
+    /*
+     * Extracts a subset of the fixture ontology, and checks that it contains the
+     * same axioms as the subset extracted with the same options by the original,
+     * unoptimized version of the command.
+     */
+    private void assertMatchesBaseline(String name, String... args) throws Exception {
+        File output = extractFromFixture(name + ".ofn", args);
+
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology expected = manager
+                .loadOntologyFromOntologyDocument(getResource("subset-baseline/" + name + ".ofn"));
+        manager.removeOntology(expected);
+        OWLOntology actual = manager.loadOntologyFromOntologyDocument(output);
+
+        assertTrue(name + " is empty", expected.getAxiomCount() > 0);
+        assertEquals(name, expected.getAxioms(), actual.getAxioms());
+    }
+
+    /*
+     * Extracts a subset of the fixture ontology to the given file.
+     */
+    private File extractFromFixture(String output, String... args) throws Exception {
+        File outputFile = new File(folder.getRoot(), output);
+        List<String> allArgs = new ArrayList<>();
+        allArgs.addAll(Arrays.asList("--input", getResource("subset-fixture.ofn").getPath(), "--write-to",
+                outputFile.getPath()));
+        allArgs.addAll(Arrays.asList(args));
+        new SubsetCommand().execute(new CommandState(), allArgs.toArray(new String[0]));
+        return outputFile;
+    }
+
+    private File getResource(String name) throws Exception {
+        return new File(getClass().getResource(name).toURI());
+    }
+
+    /*
+     * Extracts a subset of the test ontology to the given file, and returns the
+     * axioms of the subset.
+     */
+    private Set<OWLAxiom> runSubset(File input, String output, String... extraArgs) throws Exception {
+        File outputFile = new File(folder.getRoot(), output);
+        List<String> args = new ArrayList<>();
+        args.addAll(Arrays.asList("--input", input.getPath(), "--term", "UBERON:0000010", "--term",
+                "UBERON:0000150", "--fill-gaps", "true", "--write-to", outputFile.getPath()));
+        args.addAll(Arrays.asList(extraArgs));
+        new SubsetCommand().execute(new CommandState(), args.toArray(new String[0]));
+
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        return manager.loadOntologyFromOntologyDocument(outputFile).getAxioms();
+    }
+
+    /*
+     * Runs the batch in a new directory with the given number of threads.
+     */
+    private File runBatch(File input, int nThreads) throws Exception {
+        File dir = folder.newFolder("batch-" + nThreads);
+        File batch = new File(dir, "batch.txt");
+        PrintWriter writer = new PrintWriter(new FileWriter(batch));
+        for ( String line : BATCH ) {
+            writer.println(line.replaceAll("(subset\\d\\.ofn)", new File(dir, "$1").getPath()));
+        }
+        writer.close();
+
+        new SubsetCommand().execute(new CommandState(), new String[] { "--input", input.getPath(), "--batch",
+                batch.getPath(), "--batch-threads", String.valueOf(nThreads) });
+        return dir;
+    }
+
+    /*
+     * Creates a test ontology with a hierarchy of classes, some existential
+     * restrictions between them, and some classes tagged with a subset.
+     */
+    private File createOntology() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://purl.obolibrary.org/obo/test.owl"));
+
+        OWLObjectProperty partOf = factory
+                .getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+        IRI inSubset = IRI.create("http://www.geneontology.org/formats/oboInOwl#inSubset");
+        IRI subsetIRI = IRI.create("http://purl.obolibrary.org/obo/test#TEST_SUBSET");
+
+        for ( int i = 1; i < N_CLASSES; i++ ) {
+            OWLClass klass = getClass(factory, i);
+            manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(klass));
+            manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass, getClass(factory, (i - 1) / 2)));
+            if ( i % 7 == 0 ) {
+                manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass,
+                        factory.getOWLObjectSomeValuesFrom(partOf, getClass(factory, i / 7))));
+            }
+            if ( i % 11 == 0 ) {
+                manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(
+                        factory.getOWLAnnotationProperty(inSubset), klass.getIRI(), subsetIRI));
+            }
+        }
+
+        File file = folder.newFile("test.ofn");
+        manager.saveOntology(ontology, new FunctionalSyntaxDocumentFormat(), IRI.create(file));
+        return file;
+    }
+
+    private OWLClass getClass(OWLDataFactory factory, int i) {
+        return factory.getOWLClass(IRI.create(String.format("%s%07d", PREFIX, i)));
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+public class SubsetExtractorTest {
+
+    private static final String PREFIX = "http://purl.obolibrary.org/obo/UBERON_";
+    private static final int N_CLASSES = 200;
+
+    private OWLDataFactory factory = OWLManager.getOWLDataFactory();
+    private OWLObjectProperty partOf = factory
+            .getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+    private List<OWLReasoner> reasoners = new ArrayList<>();
+
+    @After
+    public void disposeReasoners() {
+        reasoners.forEach(OWLReasoner::dispose);
+        reasoners.clear();
+    }
+
+    @Test
+    public void testUpdateAfterLogicalChangeMatchesFullExtraction() throws Exception {
+        List<OWLAxiom> changes = new ArrayList<>();
+        // Moves a class of the subset to another branch
+        changes.add(factory.getOWLSubClassOfAxiom(getClass(10), getClass(150)));
+        // Brings a class into the subset through an equivalence
+        changes.add(factory.getOWLEquivalentClassesAxiom(getClass(15), getClass(160)));
+        // Makes a dangling class no longer dangling
+        changes.add(factory.getOWLSubClassOfAxiom(getClass(300), getClass(1)));
+        // Refers to a class outside of the subset
+        changes.add(factory.getOWLSubClassOfAxiom(getClass(10),
+                factory.getOWLObjectSomeValuesFrom(partOf, getClass(199))));
+
+        for ( OWLAxiom change : changes ) {
+            Set<OWLAxiom> changed = Collections.singleton(change);
+            assertUpdateMatchesFullExtraction(changed, Collections.emptySet(), true);
+        }
+        for ( OWLAxiom removed : new OWLAxiom[] { factory.getOWLSubClassOfAxiom(getClass(21), getClass(10)),
+                factory.getOWLSubClassOfAxiom(getClass(42), factory.getOWLObjectSomeValuesFrom(partOf, getClass(6))),
+                factory.getOWLSubClassOfAxiom(getClass(20),
+                        factory.getOWLObjectSomeValuesFrom(partOf, getClass(300))) } ) {
+            assertUpdateMatchesFullExtraction(Collections.emptySet(), Collections.singleton(removed), true);
+        }
+        assertUpdateMatchesFullExtraction(new HashSet<>(changes),
+                Collections.singleton(factory.getOWLSubClassOfAxiom(getClass(21), getClass(10))), true);
+    }
+
+    @Test
+    public void testUpdateAfterAnnotationChangeMatchesFullExtraction() throws Exception {
+        Set<OWLAxiom> added = new HashSet<>();
+        added.add(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), getClass(10).getIRI(),
+                factory.getOWLLiteral("new label")));
+        added.add(factory.getOWLAnnotationAssertionAxiom(factory.getOWLDeprecated(), getClass(21).getIRI(),
+                factory.getOWLLiteral(true)));
+        added.add(factory.getOWLAnnotationAssertionAxiom(
+                factory.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_COMMENT.getIRI()), getClass(190).getIRI(),
+                factory.getOWLLiteral("outside of the subset")));
+        Set<OWLAxiom> removed = Collections.singleton(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(),
+                getClass(10).getIRI(), factory.getOWLLiteral("class 10")));
+
+        // The reasoner must not be needed at all
+        assertUpdateMatchesFullExtraction(added, removed, false);
+    }
+
+    @Test
+    public void testUpdateWithDifferentSeedsMatchesFullExtraction() throws Exception {
+        OWLOntology ontology = createOntology();
+        SubsetClosure previous = newExtractor(ontology, true).makeSubset(getClasses(10, 150), ax -> {
+        });
+
+        Set<OWLClass> subset = getClasses(10, 77);
+        Set<OWLAxiom> expected = new HashSet<>();
+        newExtractor(ontology, true).makeSubset(subset, expected::add);
+        Set<OWLAxiom> actual = new HashSet<>();
+        newExtractor(ontology, true).updateSubset(previous, subset, Collections.emptySet(), Collections.emptySet(),
+                actual::add);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testExceedingBudgetAbortsExtraction() throws Exception {
+        OWLOntology ontology = createOntology();
+        SubsetClosure full = newExtractor(ontology, true).makeSubset(getClasses(10, 77), ax -> {
+        });
+        assertTrue(full.getRoundCount() > 1);
+
+        SubsetExtractor extractor = newExtractor(ontology, true);
+        extractor.setMaxRounds(1);
+        BudgetExceededException e = assertBudgetExceeded(extractor, "maximum number of rounds (1) reached");
+        assertEquals(1, e.getPartialClosure().getRoundCount());
+        assertEquals(full.getClasses(0), e.getPartialClosure().getClasses(0));
+
+        extractor = newExtractor(ontology, true);
+        extractor.setMaxClasses(5);
+        assertBudgetExceeded(extractor, "maximum number of classes (5) reached");
+
+        extractor = newExtractor(ontology, true);
+        extractor.setMaxAxioms(10);
+        assertBudgetExceeded(extractor, "maximum number of axioms (10) reached");
+
+        // A reasoner slow enough for any limit to be reached
+        extractor = new SubsetExtractor(ontology, () -> {
+            try {
+                Thread.sleep(50);
+            } catch ( InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+            }
+            OWLReasoner r = new ElkReasonerFactory().createReasoner(ontology);
+            reasoners.add(r);
+            return r;
+        });
+        extractor.setFillGaps(true);
+        extractor.setTimeLimit(1);
+        assertBudgetExceeded(extractor, "time limit (1 ms) reached");
+    }
+
+    /*
+     * Extracts a subset with an extractor whose limits are too low, and checks
+     * the diagnostic of the exception that aborts the extraction.
+     */
+    private BudgetExceededException assertBudgetExceeded(SubsetExtractor extractor, String reason) {
+        try {
+            extractor.makeSubset(getClasses(10, 77), ax -> {
+            });
+        } catch ( BudgetExceededException e ) {
+            String[] lines = e.getMessage().split("\n");
+            assertTrue(e.getMessage(), lines[0].startsWith("Subset extraction aborted: " + reason + " after "));
+            assertTrue(e.getMessage(), lines[0].matches(".* ms, with \\d+ classes and \\d+ axioms"));
+            assertFalse(e.getTopContributors().isEmpty());
+            assertTrue(e.getTopContributors().size() <= 10);
+            assertEquals("Biggest contributors to the growth of the subset:", lines[1]);
+            for ( int i = 0; i < e.getTopContributors().size(); i++ ) {
+                String contributor = e.getTopContributors().get(i);
+                assertTrue(contributor, contributor.matches("http://\\S+ \\((Class|ObjectProperty)\\): \\d+ classes"));
+                assertEquals("  " + contributor, lines[i + 2]);
+            }
+            return e;
+        }
+        fail("Expected extraction to exceed its budget: " + reason);
+        return null;
+    }
+
+    /*
+     * Extracts a subset from the test ontology, then applies the given changes,
+     * and checks that updating the previous closure yields the same axioms and
+     * the same closure as a full extraction from the modified ontology.
+     */
+    private void assertUpdateMatchesFullExtraction(Set<OWLAxiom> added, Set<OWLAxiom> removed,
+            boolean needsReasoner) throws Exception {
+        Set<OWLClass> subset = getClasses(10, 150);
+        OWLOntology ontology = createOntology();
+        SubsetClosure previous = newExtractor(ontology, true).makeSubset(subset, ax -> {
+        });
+
+        OWLOntologyManager manager = ontology.getOWLOntologyManager();
+        manager.addAxioms(ontology, added);
+        manager.removeAxioms(ontology, removed);
+
+        Set<OWLAxiom> expected = new HashSet<>();
+        SubsetExtractor full = newExtractor(ontology, true);
+        SubsetClosure expectedClosure = full.makeSubset(subset, expected::add);
+        Set<OWLAxiom> actual = new HashSet<>();
+        SubsetExtractor incremental = newExtractor(ontology, needsReasoner);
+        SubsetClosure actualClosure = incremental.updateSubset(previous, subset, added, removed, actual::add);
+
+        String message = "Changes: " + added + " " + removed;
+        assertTrue(expected.size() > 0);
+        assertEquals(message, expected, actual);
+        assertEquals(message, expectedClosure.getRoundCount(), actualClosure.getRoundCount());
+        for ( int i = 0; i < expectedClosure.getRoundCount(); i++ ) {
+            assertEquals(message, expectedClosure.getClasses(i), actualClosure.getClasses(i));
+        }
+        assertTrue(message, incremental.getMetrics().getExpansions() < full.getMetrics().getExpansions());
+    }
+
+    private SubsetExtractor newExtractor(OWLOntology ontology, boolean withReasoner) {
+        Supplier<OWLReasoner> reasoner;
+        if ( withReasoner ) {
+            reasoner = () -> {
+                OWLReasoner r = new ElkReasonerFactory().createReasoner(ontology);
+                reasoners.add(r);
+                return r;
+            };
+        } else {
+            reasoner = () -> {
+                throw new IllegalStateException("Unexpected use of the reasoner");
+            };
+        }
+        SubsetExtractor extractor = new SubsetExtractor(ontology, reasoner);
+        extractor.setFillGaps(true);
+        return extractor;
+    }
+
+    /*
+     * Creates a test ontology with a hierarchy of classes, some existential
+     * restrictions between them, a range restriction (so that the extraction
+     * needs more than one round), and a dangling class.
+     */
+    private OWLOntology createOntology() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://purl.obolibrary.org/obo/test.owl"));
+
+        for ( int i = 1; i < N_CLASSES; i++ ) {
+            OWLClass klass = getClass(i);
+            manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(klass));
+            manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(factory.getRDFSLabel(), klass.getIRI(),
+                    factory.getOWLLiteral("class " + i)));
+            manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass, getClass((i - 1) / 2)));
+            if ( i % 7 == 0 ) {
+                manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(klass,
+                        factory.getOWLObjectSomeValuesFrom(partOf, getClass(i / 7))));
+            }
+        }
+        manager.addAxiom(ontology, factory.getOWLObjectPropertyRangeAxiom(partOf, getClass(130)));
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(getClass(300)));
+        manager.addAxiom(ontology,
+                factory.getOWLSubClassOfAxiom(getClass(20), factory.getOWLObjectSomeValuesFrom(partOf, getClass(300))));
+
+        return ontology;
+    }
+
+    private Set<OWLClass> getClasses(int... ids) {
+        Set<OWLClass> classes = new HashSet<>();
+        for ( int id : ids ) {
+            classes.add(getClass(id));
+        }
+        return classes;
+    }
+
+    private OWLClass getClass(int i) {
+        return factory.getOWLClass(IRI.create(String.format("%s%07d", PREFIX, i)));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * ODK ROBOT Plugin
+ * Copyright © 2025 Damien Goutte-Gattat
+ * 
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.incenp.obofoundry.odk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+public class UtilTest {
+
+    @Test
+    public void testFingerprintDependsOnlyOnAxioms() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        List<OWLAxiom> axioms = new ArrayList<>();
+        for ( int i = 1; i < 100; i++ ) {
+            axioms.add(factory.getOWLSubClassOfAxiom(getClass(factory, i), getClass(factory, i / 2)));
+        }
+
+        OWLOntology ontology = manager.createOntology();
+        manager.addAxioms(ontology, new HashSet<>(axioms));
+        String fingerprint = Util.getFingerprint(ontology, Imports.INCLUDED);
+        assertEquals(64, fingerprint.length());
+
+        Collections.reverse(axioms);
+        OWLOntology reversed = manager.createOntology();
+        for ( OWLAxiom ax : axioms ) {
+            manager.addAxiom(reversed, ax);
+        }
+        assertEquals(fingerprint, Util.getFingerprint(reversed, Imports.INCLUDED));
+
+        // Swapping the sides of an axiom must change the fingerprint
+        manager.removeAxiom(reversed, axioms.get(0));
+        manager.addAxiom(reversed, factory.getOWLSubClassOfAxiom(getClass(factory, 49), getClass(factory, 99)));
+        assertNotEquals(fingerprint, Util.getFingerprint(reversed, Imports.INCLUDED));
+
+        manager.removeAxiom(ontology, axioms.get(0));
+        assertNotEquals(fingerprint, Util.getFingerprint(ontology, Imports.INCLUDED));
+    }
+
+    private OWLClass getClass(OWLDataFactory factory, int i) {
+        return factory.getOWLClass(IRI.create(String.format("http://purl.obolibrary.org/obo/UBERON_%07d", i)));
+    }
+}